@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gate.Corpus;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.util.GateException;
+
+
+/**
+ * The same stages as TermbankBenchmark for the PMIBank, whose
+ * documents are processed by addData.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PMIBankBenchmark {
+
+  @Param({"1000", "20000"})
+  public int vocabularySize;
+
+  @Param({"1.0"})
+  public double zipfExponent;
+
+  @Param({"200"})
+  public int documents;
+
+  @Param({"10"})
+  public int sentences;
+
+  @Param({"2"})
+  public int outerAnnotationWindow;
+
+  private Corpus corpus;
+  private PMIBank bank;
+  private File csvFile;
+
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    SyntheticCorpus.initGate();
+    corpus = new SyntheticCorpus(vocabularySize, zipfExponent, 42L).makeCorpus(documents, sentences);
+
+    FeatureMap parameters = Factory.newFeatureMap();
+    parameters.put("corpora", new HashSet<Corpus>(Collections.singleton(corpus)));
+    parameters.put("innerAnnotationTypes", new HashSet<String>(Arrays.asList("SingleWord", "MultiWord")));
+    parameters.put("outerAnnotationWindow", outerAnnotationWindow);
+    bank = (PMIBank) Factory.createResource(PMIBank.class.getName(), parameters);
+    csvFile = File.createTempFile("pairbank", ".csv");
+  }
+
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Factory.deleteResource(bank);
+    Factory.deleteResource(corpus);
+    csvFile.delete();
+  }
+
+
+  @Benchmark
+  public PMIBank addData() {
+    bank.resetScores();
+    for (int i = 0 ; i < corpus.size() ; i++) {
+      bank.addData(corpus.get(i), i);
+    }
+    return bank;
+  }
+
+
+  @Benchmark
+  public PMIBank calculateScores() {
+    bank.calculateScores();
+    return bank;
+  }
+
+
+  @Benchmark
+  public File saveAsCsv() throws GateException {
+    bank.saveAsCsv(csvFile, false);
+    return csvFile;
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import gate.AnnotationSet;
+import gate.Corpus;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.Gate;
+import gate.Resource;
+import gate.creole.Plugin;
+import gate.creole.ResourceInstantiationException;
+import gate.util.GateException;
+import gate.util.InvalidOffsetException;
+
+import org.jdom.Element;
+
+
+/**
+ * Generates repeatable GATE documents annotated the way the
+ * TermRaider applications leave them: Sentence annotations, and
+ * SingleWord and MultiWord term candidates with canonical, head,
+ * lang and localAugTfIdf features.  The words are drawn from a
+ * random vocabulary with a Zipf distribution.
+ */
+public class SyntheticCorpus {
+
+  private static final String[] LANGUAGES = {"en", "de", ""};
+
+  private static boolean gateInitialized = false;
+
+  private Random random;
+  private String[] vocabulary;
+  private double[] cumulative;
+
+
+  /**
+   * @param vocabularySize number of distinct words
+   * @param zipfExponent the exponent s in P(rank r) ~ 1 / r^s
+   * @param seed random seed, so that runs can be compared
+   */
+  public SyntheticCorpus(int vocabularySize, double zipfExponent, long seed) {
+    this.random = new Random(seed);
+    this.vocabulary = new String[vocabularySize];
+    for (int i = 0 ; i < vocabularySize ; i++) {
+      StringBuilder word = new StringBuilder();
+      int length = 3 + random.nextInt(8);
+      for (int k = 0 ; k < length ; k++) {
+        word.append((char) ('a' + random.nextInt(26)));
+      }
+      vocabulary[i] = word.toString();
+    }
+
+    this.cumulative = new double[vocabularySize];
+    double total = 0.0;
+    for (int rank = 1 ; rank <= vocabularySize ; rank++) {
+      total += 1.0 / Math.pow(rank, zipfExponent);
+      cumulative[rank - 1] = total;
+    }
+    for (int i = 0 ; i < vocabularySize ; i++) {
+      cumulative[i] /= total;
+    }
+  }
+
+
+  /**
+   * Initialize GATE (once) and register the termbanks.
+   */
+  public static synchronized void initGate() throws GateException {
+    if (gateInitialized) {
+      return;
+    }
+    Gate.runInSandbox(true);
+    Gate.init();
+    try {
+      Gate.getCreoleRegister().registerPlugin(new TermbankComponents());
+    }
+    catch (MalformedURLException e) {
+      throw new GateException(e);
+    }
+    gateInitialized = true;
+  }
+
+
+  public Corpus makeCorpus(int documents, int sentencesPerDocument)
+          throws ResourceInstantiationException, InvalidOffsetException {
+    Corpus corpus = Factory.newCorpus("synthetic");
+    for (int i = 0 ; i < documents ; i++) {
+      corpus.add(makeDocument("doc" + i, sentencesPerDocument));
+    }
+    return corpus;
+  }
+
+
+  public Document makeDocument(String name, int sentences)
+          throws ResourceInstantiationException, InvalidOffsetException {
+    StringBuilder text = new StringBuilder();
+    List<long[]> sentenceSpans = new ArrayList<long[]>();
+    List<List<long[]>> wordSpans = new ArrayList<List<long[]>>();
+    List<List<String>> sentenceWords = new ArrayList<List<String>>();
+
+    for (int s = 0 ; s < sentences ; s++) {
+      long start = text.length();
+      List<long[]> spans = new ArrayList<long[]>();
+      List<String> words = new ArrayList<String>();
+      int length = 5 + random.nextInt(15);
+      for (int w = 0 ; w < length ; w++) {
+        String word = nextWord();
+        spans.add(new long[] {text.length(), text.length() + word.length()});
+        words.add(word);
+        text.append(word).append(' ');
+      }
+      text.append(". ");
+      sentenceSpans.add(new long[] {start, text.length() - 1});
+      wordSpans.add(spans);
+      sentenceWords.add(words);
+    }
+
+    Document document = Factory.newDocument(text.toString());
+    document.setName(name);
+    AnnotationSet annotations = document.getAnnotations();
+    for (int s = 0 ; s < sentences ; s++) {
+      FeatureMap sentenceFeatures = Factory.newFeatureMap();
+      sentenceFeatures.put("lang", LANGUAGES[random.nextInt(LANGUAGES.length)]);
+      annotations.add(sentenceSpans.get(s)[0], sentenceSpans.get(s)[1], "Sentence", sentenceFeatures);
+
+      List<long[]> spans = wordSpans.get(s);
+      List<String> words = sentenceWords.get(s);
+      for (int w = 0 ; w < spans.size() ; w++) {
+        String word = words.get(w);
+        annotations.add(spans.get(w)[0], spans.get(w)[1], "SingleWord",
+                termFeatures(word, word.substring(Math.max(0, word.length() - 4))));
+
+        if ( (w + 1 < spans.size()) && (random.nextInt(3) == 0) ) {
+          String nextWord = words.get(w + 1);
+          annotations.add(spans.get(w)[0], spans.get(w + 1)[1], "MultiWord",
+                  termFeatures(word + " " + nextWord, nextWord));
+        }
+      }
+    }
+    return document;
+  }
+
+
+  private FeatureMap termFeatures(String canonical, String head) {
+    FeatureMap features = Factory.newFeatureMap();
+    features.put("canonical", canonical);
+    features.put("head", head);
+    features.put("localAugTfIdf", random.nextDouble() * 10.0);
+    if (random.nextInt(4) > 0) {
+      features.put("lang", LANGUAGES[random.nextInt(2)]);
+    }
+    return features;
+  }
+
+
+  private String nextWord() {
+    int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+    if (rank < 0) {
+      rank = -(rank + 1);
+    }
+    return vocabulary[Math.min(rank, vocabulary.length - 1)];
+  }
+
+}
+
+
+/**
+ * Registers all the banks at once: separate Plugin.Components
+ * would share a base URL, so GATE would only load the first.
+ */
+class TermbankComponents extends Plugin.Component {
+
+  private static final List<Class<? extends Resource>> BANKS = Arrays.<Class<? extends Resource>>asList(
+          DocumentFrequencyBank.class, TfIdfTermbank.class, AnnotationTermbank.class,
+          HyponymyTermbank.class, PMIBank.class);
+
+  TermbankComponents() throws MalformedURLException {
+    super(DocumentFrequencyBank.class);
+  }
+
+  public String getName() {
+    return "TermRaider benchmark termbanks";
+  }
+
+  public org.jdom.Document getCreoleXML() {
+    Element creole = new Element("CREOLE");
+    for (Class<? extends Resource> bank : BANKS) {
+      Element resource = new Element("RESOURCE");
+      Element className = new Element("CLASS");
+      className.setText(bank.getName());
+      resource.addContent(className);
+      creole.addContent(resource);
+    }
+    Element directory = new Element("CREOLE-DIRECTORY");
+    directory.addContent(creole);
+    return new org.jdom.Document(directory);
+  }
+}
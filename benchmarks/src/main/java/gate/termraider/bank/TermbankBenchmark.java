@@ -0,0 +1,127 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import gate.Corpus;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.termraider.util.Term;
+import gate.util.GateException;
+
+
+/**
+ * Times the stages of building a termbank from a synthetic corpus:
+ * processing the documents into a partial, calculating the scores,
+ * sorting the terms and saving the CSV.  The bank is built once per
+ * trial, and each benchmark repeats one stage on it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TermbankBenchmark {
+
+  @Param({"TfIdfTermbank", "AnnotationTermbank", "HyponymyTermbank", "DocumentFrequencyBank"})
+  public String termbank;
+
+  @Param({"1000", "20000"})
+  public int vocabularySize;
+
+  @Param({"1.0"})
+  public double zipfExponent;
+
+  @Param({"200"})
+  public int documents;
+
+  @Param({"10"})
+  public int sentences;
+
+  private Corpus corpus;
+  private AbstractTermbank bank;
+  private File csvFile;
+
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    SyntheticCorpus.initGate();
+    corpus = new SyntheticCorpus(vocabularySize, zipfExponent, 42L).makeCorpus(documents, sentences);
+
+    FeatureMap parameters = Factory.newFeatureMap();
+    parameters.put("corpora", new HashSet<Corpus>(Collections.singleton(corpus)));
+    if (termbank.equals("HyponymyTermbank")) {
+      parameters.put("inputHeadFeatures", Arrays.asList("head"));
+    }
+    bank = (AbstractTermbank) Factory.createResource("gate.termraider.bank." + termbank, parameters);
+    csvFile = File.createTempFile("termbank", ".csv");
+  }
+
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Factory.deleteResource(bank);
+    Factory.deleteResource(corpus);
+    csvFile.delete();
+  }
+
+
+  @Benchmark
+  public TermbankPartial processDocument() {
+    TermbankPartial partial = bank.createPartial();
+    for (int i = 0 ; i < corpus.size() ; i++) {
+      bank.processDocument(corpus.get(i), i, partial);
+    }
+    return partial;
+  }
+
+
+  @Benchmark
+  public AbstractTermbank calculateScores() {
+    bank.calculateScores();
+    return bank;
+  }
+
+
+  @Benchmark
+  public List<Term> getTermsByDescendingScore() {
+    bank.scoresChanged();
+    return bank.getTermsByDescendingScore();
+  }
+
+
+  @Benchmark
+  public File saveAsCsv() throws GateException {
+    bank.saveAsCsv(csvFile, false);
+    return csvFile;
+  }
+
+}
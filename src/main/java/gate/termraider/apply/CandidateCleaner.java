@@ -0,0 +1,271 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.apply;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.creole.AbstractLanguageAnalyser;
+import gate.creole.ExecutionException;
+import gate.creole.ExecutionInterruptedException;
+import gate.creole.metadata.CreoleParameter;
+import gate.creole.metadata.CreoleResource;
+import gate.creole.metadata.RunTime;
+import gate.util.OffsetComparator;
+
+
+/**
+ * Does the work of DeduplicateMultiWord.groovy with sorted offset
+ * arrays instead of a query per candidate.  Of each group of
+ * annotations with exactly the same span (for each deduplicated type)
+ * only the last in offset order is kept.  Then each term candidate
+ * covered by an annotation of one of the exclusion types, or
+ * containing a stop annotation, is renamed deleted_NE_(type) or
+ * deleted_SS_(type) respectively.
+ */
+@CreoleResource(name = "Term Candidate Cleaner",
+    icon = "termbank-lr.png",
+    comment = "Remove duplicate term candidates and those overlapping named entities or stop annotations",
+    helpURL = "http://gate.ac.uk/userguide/sec:creole:termraider")
+public class CandidateCleaner extends AbstractLanguageAnalyser {
+
+  private static final long serialVersionUID = -2390583178604512337L;
+
+  private static final String EXCLUDED_PREFIX = "deleted_NE_";
+  private static final String STOPPED_PREFIX = "deleted_SS_";
+
+  /* CREOLE PARAMETERS */
+  private String annotationSetName;
+  private Set<String> deduplicationTypes, inputAnnotationTypes, exclusionTypes;
+  private String stopAnnotationType;
+
+  public void execute() throws ExecutionException {
+    interrupted = false;
+    long startTime = System.currentTimeMillis();
+    if(document == null) { throw new ExecutionException(
+        "No document to process!"); }
+    fireStatusChanged("Running " + this.getName() + " on " + document.getName());
+    fireProgressChanged(0);
+
+    AnnotationSet inputAS = document.getAnnotations(annotationSetName);
+
+    for (String type : deduplicationTypes) {
+      deduplicate(inputAS, type);
+      checkInterruption();
+    }
+
+    AnnotationSet candidates = inputAS.get(inputAnnotationTypes);
+    OffsetIndex excluded = new OffsetIndex(inputAS.get(exclusionTypes));
+    OffsetIndex stops = new OffsetIndex(inputAS.get(stopAnnotationType));
+
+    for (Annotation candidate : candidates) {
+      long start = candidate.getStartNode().getOffset();
+      long end = candidate.getEndNode().getOffset();
+      if (excluded.hasCovering(start, end)) {
+        rename(inputAS, candidate, EXCLUDED_PREFIX);
+      }
+      else if (stops.hasContained(start, end)) {
+        rename(inputAS, candidate, STOPPED_PREFIX);
+      }
+      checkInterruption();
+    }
+
+    fireProcessFinished();
+    fireStatusChanged("Finished " + this.getName() + " on "
+        + document.getName() + " in "
+        + NumberFormat.getInstance().format(
+            (double)(System.currentTimeMillis() - startTime) / 1000)
+        + " seconds!");
+  } // end execute()
+
+
+  /**
+   * Sorted by offsets, annotations with the same span are next to each
+   * other; remove all but the last of each run.
+   */
+  private void deduplicate(AnnotationSet inputAS, String type) {
+    List<Annotation> sorted = new ArrayList<Annotation>(inputAS.get(type));
+    Collections.sort(sorted, new OffsetComparator());
+    for (int i = 0 ; i < sorted.size() - 1 ; i++) {
+      Annotation annotation = sorted.get(i);
+      Annotation next = sorted.get(i + 1);
+      if (annotation.getStartNode().getOffset().equals(next.getStartNode().getOffset())
+              && annotation.getEndNode().getOffset().equals(next.getEndNode().getOffset())) {
+        inputAS.remove(annotation);
+      }
+    }
+  }
+
+
+  private void rename(AnnotationSet inputAS, Annotation candidate, String prefix) {
+    FeatureMap newf = Factory.newFeatureMap();
+    newf.putAll(candidate.getFeatures());
+    inputAS.add(candidate.getStartNode(), candidate.getEndNode(), prefix + candidate.getType(), newf);
+    inputAS.remove(candidate);
+  }
+
+
+  private void checkInterruption() throws ExecutionInterruptedException {
+    if(isInterrupted()) { throw new ExecutionInterruptedException(
+        "Execution of " + this.getName() + " has been abruptly interrupted!"); }
+  }
+
+
+  /* CREOLE METHODS */
+
+  @RunTime
+  @CreoleParameter(comment = "AnnotationSet name",
+          defaultValue = "")
+  public void setAnnotationSetName(String name) {
+    this.annotationSetName = name;
+  }
+
+  public String getAnnotationSetName() {
+    return this.annotationSetName;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "types in which annotations with the same span are removed",
+          defaultValue = "MultiWord")
+  public void setDeduplicationTypes(Set<String> types) {
+    this.deduplicationTypes = types;
+  }
+
+  public Set<String> getDeduplicationTypes() {
+    return this.deduplicationTypes;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "term candidate annotation types",
+          defaultValue = "SingleWord;MultiWord")
+  public void setInputAnnotationTypes(Set<String> types) {
+    this.inputAnnotationTypes = types;
+  }
+
+  public Set<String> getInputAnnotationTypes() {
+    return this.inputAnnotationTypes;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "types of annotation that rule out any term candidate they cover",
+          defaultValue = "Person;Organization;Location;Date;Money;Percent;Address;UserID;Number")
+  public void setExclusionTypes(Set<String> types) {
+    this.exclusionTypes = types;
+  }
+
+  public Set<String> getExclusionTypes() {
+    return this.exclusionTypes;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "type of annotation that rules out any term candidate containing it",
+          defaultValue = "StrongStop")
+  public void setStopAnnotationType(String type) {
+    this.stopAnnotationType = type;
+  }
+
+  public String getStopAnnotationType() {
+    return this.stopAnnotationType;
+  }
+
+}
+
+
+/**
+ * The offsets of a set of annotations, sorted by start offset, for
+ * the covering and containment tests that AnnotationSet.getCovering
+ * and getContained make.
+ */
+class OffsetIndex {
+
+  private long[] starts, ends;
+  // the largest end offset of the annotations up to each index
+  private long[] maxEnds;
+
+  public OffsetIndex(AnnotationSet annotations) {
+    int n = annotations.size();
+    long[][] spans = new long[n][];
+    int i = 0;
+    for (Annotation annotation : annotations) {
+      spans[i++] = new long[] {annotation.getStartNode().getOffset(), annotation.getEndNode().getOffset()};
+    }
+    Arrays.sort(spans, new Comparator<long[]>() {
+      public int compare(long[] s0, long[] s1) {
+        return Long.compare(s0[0], s1[0]);
+      }
+    });
+
+    starts = new long[n];
+    ends = new long[n];
+    maxEnds = new long[n];
+    for (i = 0 ; i < n ; i++) {
+      starts[i] = spans[i][0];
+      ends[i] = spans[i][1];
+      maxEnds[i] = (i == 0) ? ends[i] : Math.max(maxEnds[i - 1], ends[i]);
+    }
+  }
+
+
+  /**
+   * @return true if an annotation starts at or before start and ends
+   * at or after end
+   */
+  public boolean hasCovering(long start, long end) {
+    int last = firstStartAfter(start) - 1;
+    return (last >= 0) && (maxEnds[last] >= end);
+  }
+
+
+  /**
+   * @return true if an annotation starts in [start, end) and ends at
+   * or before end
+   */
+  public boolean hasContained(long start, long end) {
+    for (int i = firstStartAfter(start - 1) ; (i < starts.length) && (starts[i] < end) ; i++) {
+      if (ends[i] <= end) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * @return the index of the first annotation starting after offset
+   */
+  private int firstStartAfter(long offset) {
+    int low = 0;
+    int high = starts.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (starts[middle] <= offset) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+}
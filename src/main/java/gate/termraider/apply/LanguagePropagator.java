@@ -0,0 +1,201 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.apply;
+
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.creole.AbstractLanguageAnalyser;
+import gate.creole.ExecutionException;
+import gate.creole.ExecutionInterruptedException;
+import gate.creole.metadata.CreoleParameter;
+import gate.creole.metadata.CreoleResource;
+import gate.creole.metadata.RunTime;
+
+
+/**
+ * Does the work of ApplyLanguage.groovy by walking through the
+ * sentences and the candidates together in offset order, instead of
+ * looking up the covering sentences of each candidate: each candidate
+ * gets the language of the sentence covering it.  If more than one
+ * covering sentence has a language, the innermost one wins: the one
+ * that starts last, then the one that ends first, then the one with
+ * the highest id.  (The script took whichever came last in the
+ * covering set's hash order, which was not defined.)
+ */
+@CreoleResource(name = "Term Language Propagator",
+    icon = "termbank-lr.png",
+    comment = "Copy the language feature from sentences to the term candidates they cover",
+    helpURL = "http://gate.ac.uk/userguide/sec:creole:termraider")
+public class LanguagePropagator extends AbstractLanguageAnalyser {
+
+  private static final long serialVersionUID = 6270938811454802776L;
+
+  /* CREOLE PARAMETERS */
+  private String annotationSetName;
+  private String sourceAnnotationType;
+  private Set<String> targetAnnotationTypes;
+  private String languageFeature;
+
+  public void execute() throws ExecutionException {
+    interrupted = false;
+    long startTime = System.currentTimeMillis();
+    if(document == null) { throw new ExecutionException(
+        "No document to process!"); }
+    fireStatusChanged("Running " + this.getName() + " on " + document.getName());
+    fireProgressChanged(0);
+
+    AnnotationSet inputAS = document.getAnnotations(annotationSetName);
+    Annotation[] sources = inDocumentOrder(inputAS.get(sourceAnnotationType));
+    Annotation[] targets = inDocumentOrder(inputAS.get(targetAnnotationTypes));
+    checkInterruption();
+
+    // sources that start at or before the current target and have not
+    // ended before it, in offset order
+    Annotation[] active = new Annotation[Math.max(1, sources.length)];
+    int activeSize = 0;
+    int nextSource = 0;
+
+    for (Annotation target : targets) {
+      long start = target.getStartNode().getOffset();
+      long end = target.getEndNode().getOffset();
+
+      int activeEnd = activeSize;
+      activeSize = 0;
+      for (int a = 0 ; a < activeEnd ; a++) {
+        if (active[a].getEndNode().getOffset() >= start) {
+          active[activeSize++] = active[a];
+        }
+      }
+      while ( (nextSource < sources.length)
+              && (sources[nextSource].getStartNode().getOffset() <= start) ) {
+        if (sources[nextSource].getEndNode().getOffset() >= start) {
+          active[activeSize++] = sources[nextSource];
+        }
+        nextSource++;
+      }
+
+      Annotation covering = null;
+      for (int a = 0 ; a < activeSize ; a++) {
+        if ( (active[a].getEndNode().getOffset() >= end)
+                && active[a].getFeatures().containsKey(languageFeature)
+                && ( (covering == null) || isInside(active[a], covering) ) ) {
+          covering = active[a];
+        }
+      }
+
+      if (covering != null) {
+        String language = covering.getFeatures().get(languageFeature).toString();
+        target.getFeatures().put(languageFeature, language);
+      }
+      checkInterruption();
+    }
+
+    fireProcessFinished();
+    fireStatusChanged("Finished " + this.getName() + " on "
+        + document.getName() + " in "
+        + NumberFormat.getInstance().format(
+            (double)(System.currentTimeMillis() - startTime) / 1000)
+        + " seconds!");
+  } // end execute()
+
+
+  /**
+   * @return true if the source should win over the other one: it
+   * starts later, or starts at the same offset and ends earlier, or
+   * has the same span and a higher id
+   */
+  private static boolean isInside(Annotation source, Annotation other) {
+    int result = source.getStartNode().getOffset().compareTo(other.getStartNode().getOffset());
+    if (result == 0) {
+      result = other.getEndNode().getOffset().compareTo(source.getEndNode().getOffset());
+    }
+    if (result == 0) {
+      result = source.getId().compareTo(other.getId());
+    }
+    return result > 0;
+  }
+
+
+  private static Annotation[] inDocumentOrder(AnnotationSet annotations) {
+    Annotation[] sorted = annotations.toArray(new Annotation[annotations.size()]);
+    Arrays.sort(sorted, new Comparator<Annotation>() {
+      public int compare(Annotation a0, Annotation a1) {
+        int result = a0.getStartNode().getOffset().compareTo(a1.getStartNode().getOffset());
+        if (result == 0) {
+          result = a0.getId().compareTo(a1.getId());
+        }
+        return result;
+      }
+    });
+    return sorted;
+  }
+
+
+  private void checkInterruption() throws ExecutionInterruptedException {
+    if(isInterrupted()) { throw new ExecutionInterruptedException(
+        "Execution of " + this.getName() + " has been abruptly interrupted!"); }
+  }
+
+
+  /* CREOLE METHODS */
+
+  @RunTime
+  @CreoleParameter(comment = "AnnotationSet name",
+          defaultValue = "")
+  public void setAnnotationSetName(String name) {
+    this.annotationSetName = name;
+  }
+
+  public String getAnnotationSetName() {
+    return this.annotationSetName;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "type of the annotations to copy the language from",
+          defaultValue = "Sentence")
+  public void setSourceAnnotationType(String type) {
+    this.sourceAnnotationType = type;
+  }
+
+  public String getSourceAnnotationType() {
+    return this.sourceAnnotationType;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "types of the annotations to copy the language to",
+          defaultValue = "Entity;Verb;VG;SingleWord;MultiWord")
+  public void setTargetAnnotationTypes(Set<String> types) {
+    this.targetAnnotationTypes = types;
+  }
+
+  public Set<String> getTargetAnnotationTypes() {
+    return this.targetAnnotationTypes;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "language feature on both types of annotation",
+          defaultValue = "lang")
+  public void setLanguageFeature(String feature) {
+    this.languageFeature = feature;
+  }
+
+  public String getLanguageFeature() {
+    return this.languageFeature;
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.apply;
+
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.FeatureMap;
+import gate.creole.AbstractLanguageAnalyser;
+import gate.creole.ExecutionException;
+import gate.creole.ExecutionInterruptedException;
+import gate.creole.metadata.CreoleParameter;
+import gate.creole.metadata.CreoleResource;
+import gate.creole.metadata.RunTime;
+
+
+/**
+ * Does the work of augmentation.jape in one sweep over the candidates
+ * in offset order: each candidate's augmented score is its own raw
+ * score plus the raw scores of the longer candidates that cover it
+ * and have the same head.  The covering scores are added in offset
+ * order, then id order.  The JAPE added them in the undefined order
+ * of a HashSet, so where a candidate has more than one covering score
+ * the result can differ from the JAPE's in the last bit.
+ */
+@CreoleResource(name = "Term Score Augmenter",
+    icon = "termbank-lr.png",
+    comment = "Add the scores of longer term candidates with the same head to each candidate's score",
+    helpURL = "http://gate.ac.uk/userguide/sec:creole:termraider")
+public class ScoreAugmenter extends AbstractLanguageAnalyser {
+
+  private static final long serialVersionUID = 3517020961258764302L;
+
+  /* CREOLE PARAMETERS */
+  private String annotationSetName;
+  private List<String> annotationTypes;
+  private String headFeature, inputScoreFeature, outputScoreFeature;
+
+  public void execute() throws ExecutionException {
+    interrupted = false;
+    long startTime = System.currentTimeMillis();
+    if(document == null) { throw new ExecutionException(
+        "No document to process!"); }
+    fireStatusChanged("Running " + this.getName() + " on " + document.getName());
+    fireProgressChanged(0);
+
+    AnnotationSet inputAS = document.getAnnotations(annotationSetName);
+    AnnotationSet candidateSet = inputAS.get(new HashSet<String>(annotationTypes));
+    checkInterruption();
+
+    Annotation[] candidates = candidateSet.toArray(new Annotation[candidateSet.size()]);
+    Arrays.sort(candidates, new Comparator<Annotation>() {
+      public int compare(Annotation a0, Annotation a1) {
+        int result = a0.getStartNode().getOffset().compareTo(a1.getStartNode().getOffset());
+        if (result == 0) {
+          result = a0.getId().compareTo(a1.getId());
+        }
+        return result;
+      }
+    });
+
+    int n = candidates.length;
+    long[] starts = new long[n];
+    long[] ends = new long[n];
+    Object[] heads = new Object[n];
+    double[] rawScores = new double[n];
+    boolean[] scored = new boolean[n];
+    for (int i = 0 ; i < n ; i++) {
+      FeatureMap fm = candidates[i].getFeatures();
+      starts[i] = candidates[i].getStartNode().getOffset();
+      ends[i] = candidates[i].getEndNode().getOffset();
+      heads[i] = fm.get(headFeature);
+      scored[i] = fm.containsKey(inputScoreFeature);
+      if (scored[i]) {
+        rawScores[i] = ((Number) fm.get(inputScoreFeature)).doubleValue();
+      }
+    }
+
+    // candidates that start at or before the current offset and have
+    // not ended before it, in offset order
+    int[] active = new int[Math.max(1, n)];
+    int activeSize = 0;
+    int next = 0;
+
+    while (next < n) {
+      long offset = starts[next];
+      int activeEnd = activeSize;
+      activeSize = 0;
+      for (int a = 0 ; a < activeEnd ; a++) {
+        if (ends[active[a]] >= offset) {
+          active[activeSize++] = active[a];
+        }
+      }
+      int first = next;
+      while ( (next < n) && (starts[next] == offset) ) {
+        active[activeSize++] = next++;
+      }
+
+      for (int inner = first ; inner < next ; inner++) {
+        long innerLength = ends[inner] - starts[inner];
+        double score = scored[inner] ? rawScores[inner] : 0.0;
+
+        // every candidate in the active list starts at or before
+        // this one, so it covers this one if it ends at or after it;
+        // the list is in offset then id order
+        for (int a = 0 ; a < activeSize ; a++) {
+          int outer = active[a];
+          if ( (ends[outer] >= ends[inner]) && (ends[outer] - starts[outer] > innerLength)
+                  && (heads[outer] != null) && (heads[inner] != null)
+                  && heads[outer].equals(heads[inner].toString()) && scored[outer] ) {
+            score += rawScores[outer];
+          }
+        }
+
+        candidates[inner].getFeatures().put(outputScoreFeature, score);
+      }
+      checkInterruption();
+    }
+
+    fireProcessFinished();
+    fireStatusChanged("Finished " + this.getName() + " on "
+        + document.getName() + " in "
+        + NumberFormat.getInstance().format(
+            (double)(System.currentTimeMillis() - startTime) / 1000)
+        + " seconds!");
+  } // end execute()
+
+
+  private void checkInterruption() throws ExecutionInterruptedException {
+    if(isInterrupted()) { throw new ExecutionInterruptedException(
+        "Execution of " + this.getName() + " has been abruptly interrupted!"); }
+  }
+
+
+  /* CREOLE METHODS */
+
+  @RunTime
+  @CreoleParameter(comment = "AnnotationSet name",
+          defaultValue = "")
+  public void setAnnotationSetName(String name) {
+    this.annotationSetName = name;
+  }
+
+  public String getAnnotationSetName() {
+    return this.annotationSetName;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "term candidate annotation types",
+          defaultValue = "SingleWord;MultiWord")
+  public void setAnnotationTypes(List<String> types) {
+    this.annotationTypes = types;
+  }
+
+  public List<String> getAnnotationTypes() {
+    return this.annotationTypes;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "annotation feature for the head",
+          defaultValue = "head")
+  public void setHeadFeature(String feature) {
+    this.headFeature = feature;
+  }
+
+  public String getHeadFeature() {
+    return this.headFeature;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "annotation feature containing the score to augment",
+          defaultValue = "tfIdf.raw")
+  public void setInputScoreFeature(String feature) {
+    this.inputScoreFeature = feature;
+  }
+
+  public String getInputScoreFeature() {
+    return this.inputScoreFeature;
+  }
+
+
+  @RunTime
+  @CreoleParameter(comment = "annotation feature for the augmented score",
+          defaultValue = "localAugTfIdf")
+  public void setOutputScoreFeature(String feature) {
+    this.outputScoreFeature = feature;
+  }
+
+  public String getOutputScoreFeature() {
+    return this.outputScoreFeature;
+  }
+
+}
@@ -27,6 +27,7 @@ import gate.creole.metadata.RunTime;
 import gate.termraider.bank.AbstractTermbank;
 import gate.termraider.util.ScoreType;
 import gate.termraider.util.Term;
+import gate.termraider.util.TermScoreTable;
 
 
 
@@ -42,6 +43,7 @@ public class TermScoreCopier extends AbstractLanguageAnalyser {
   private AbstractTermbank termbank;
   private String annotationSetName;
   private String frequencyFeature, docFrequencyFeature;  
+  private Boolean useScoreTable;
   
   public void execute() throws ExecutionException {
     interrupted = false;
@@ -62,19 +64,30 @@ public class TermScoreCopier extends AbstractLanguageAnalyser {
     AnnotationSet candidates = document.getAnnotations(annotationSetName).get(annotationTypes);
     checkInterruption();
     
-    for (Annotation candidate : candidates) {
-      Term term = new Term(candidate, document, languageFeature, termFeature);
-      FeatureMap fm = candidate.getFeatures();
-
-      // What the heck, slap them all on the annotation features.
-      // You can't put too many features in a nuclear reactor.
-      Map<ScoreType, Number> scoreMap = termbank.getScoreMap(term);
-      for (Map.Entry<ScoreType,Number> entry : scoreMap.entrySet()) {
-        fm.put(entry.getKey().toString(), entry.getValue());
+    if (useScoreTable) {
+      // built once and shared by all the copiers using this termbank
+      TermScoreTable table = termbank.getScoreTable();
+      for (Annotation candidate : candidates) {
+        int id = table.getTermId(candidate, document, languageFeature, termFeature);
+        table.copyScores(id, candidate.getFeatures());
+        checkInterruption();
       }
+    }
+    else {
+      for (Annotation candidate : candidates) {
+        Term term = new Term(candidate, document, languageFeature, termFeature);
+        FeatureMap fm = candidate.getFeatures();
+
+        // What the heck, slap them all on the annotation features.
+        // You can't put too many features in a nuclear reactor.
+        Map<ScoreType, Number> scoreMap = termbank.getScoreMap(term);
+        for (Map.Entry<ScoreType,Number> entry : scoreMap.entrySet()) {
+          fm.put(entry.getKey().toString(), entry.getValue());
+        }
       
-      checkInterruption();
-    } // end for candidates loop
+        checkInterruption();
+      } // end for candidates loop
+    }
     
     fireProcessFinished();
     fireStatusChanged("Finished " + this.getName() + " on "
@@ -128,6 +141,18 @@ public class TermScoreCopier extends AbstractLanguageAnalyser {
   }
   
   
+  @RunTime
+  @CreoleParameter(comment = "look the scores up in a table built once per termbank instead of term by term",
+      defaultValue = "true")
+  public void setUseScoreTable(Boolean useScoreTable) {
+    this.useScoreTable = useScoreTable;
+  }
+  
+  public Boolean getUseScoreTable() {
+    return this.useScoreTable;
+  }
+  
+  
   @RunTime
   @CreoleParameter(comment = "AnnotationSet name",
           defaultValue = "")
@@ -17,10 +17,16 @@ import gate.Corpus;
 import gate.Document;
 import gate.creole.AbstractLanguageResource;
 import gate.creole.metadata.CreoleParameter;
+import gate.creole.metadata.Optional;
+import gate.event.ProgressListener;
+import gate.event.StatusListener;
 import gate.termraider.util.Term;
+import gate.termraider.util.TermDictionary;
 import gate.util.GateException;
 import java.io.File;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -35,6 +41,11 @@ public abstract class AbstractBank extends AbstractLanguageResource {
   protected Set<String> languages, types;
   protected int documentCount;
   
+  // Factory.createResource() adds the GUI's listeners through the
+  // add...Listener() methods; transient to allow serialization
+  private transient volatile List<StatusListener> statusListeners;
+  private transient volatile List<ProgressListener> progressListeners;
+  
   public abstract Number getMinScore();
   
   public abstract Number getMaxScore();
@@ -43,6 +54,60 @@ public abstract class AbstractBank extends AbstractLanguageResource {
     return this.documentCount;
   }
   
+  public synchronized void addStatusListener(StatusListener listener) {
+    if (statusListeners == null) {
+      statusListeners = new CopyOnWriteArrayList<StatusListener>();
+    }
+    statusListeners.add(listener);
+  }
+  
+  public synchronized void removeStatusListener(StatusListener listener) {
+    if (statusListeners != null) {
+      statusListeners.remove(listener);
+    }
+  }
+  
+  public synchronized void addProgressListener(ProgressListener listener) {
+    if (progressListeners == null) {
+      progressListeners = new CopyOnWriteArrayList<ProgressListener>();
+    }
+    progressListeners.add(listener);
+  }
+  
+  public synchronized void removeProgressListener(ProgressListener listener) {
+    if (progressListeners != null) {
+      progressListeners.remove(listener);
+    }
+  }
+  
+  /* These can be called from worker threads.  */
+  protected void fireStatusChanged(String text) {
+    List<StatusListener> listeners = statusListeners;
+    if (listeners != null) {
+      for (StatusListener listener : listeners) {
+        listener.statusChanged(text);
+      }
+    }
+  }
+  
+  protected void fireProgressChanged(int percent) {
+    List<ProgressListener> listeners = progressListeners;
+    if (listeners != null) {
+      for (ProgressListener listener : listeners) {
+        listener.progressChanged(percent);
+      }
+    }
+  }
+  
+  protected void fireProcessFinished() {
+    List<ProgressListener> listeners = progressListeners;
+    if (listeners != null) {
+      for (ProgressListener listener : listeners) {
+        listener.processFinished();
+      }
+    }
+  }
+  
   public abstract void saveAsCsv(Number threshold, File file, boolean documentDetail)
     throws GateException;
 
@@ -61,6 +126,15 @@ public abstract class AbstractBank extends AbstractLanguageResource {
     return new Term(annotation, document, 
             this.languageFeature, this.inputAnnotationFeature);
   }
+  
+  /**
+   * Like makeTerm, but interns the term and returns its id
+   * instead of creating a new Term every time.
+   */
+  public int makeTermId(Annotation annotation, Document document, TermDictionary dictionary) {
+    return dictionary.intern(annotation, document, 
+            this.languageFeature, this.inputAnnotationFeature);
+  }
 
   
   /* CREOLE */
@@ -106,7 +180,8 @@ public abstract class AbstractBank extends AbstractLanguageResource {
     return this.inputAnnotationFeature;
   }
   
-  @CreoleParameter(comment = "Processed corpora to analyse")
+  @Optional
+  @CreoleParameter(comment = "Processed corpora to analyse (not needed when loading a snapshot)")
   public void setCorpora(Set<Corpus> corpora) {
     this.corpora = corpora;
   }
@@ -12,15 +12,24 @@
 package gate.termraider.bank;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import javax.swing.Action;
 
@@ -32,13 +41,26 @@ import gate.Factory;
 import gate.Resource;
 import gate.creole.ResourceInstantiationException;
 import gate.creole.metadata.CreoleParameter;
+import gate.creole.metadata.Optional;
 import gate.gui.ActionsPublisher;
 import gate.termraider.gui.ActionSaveCsv;
+import gate.termraider.gui.ActionSaveSnapshot;
 import gate.termraider.output.CsvGenerator;
+import gate.termraider.output.CsvOutput;
 import gate.termraider.util.DocumentIdentifier;
+import gate.termraider.util.DocumentTable;
+import gate.termraider.util.PostingList;
+import gate.termraider.util.PostingSet;
+import gate.termraider.util.ScoreBuffer;
+import gate.termraider.util.ScoreStore;
 import gate.termraider.util.ScoreType;
 import gate.termraider.util.Term;
-import gate.termraider.util.TermComparatorByDescendingScore;
+import gate.termraider.util.TermDictionary;
+import gate.termraider.util.TermDocumentsMap;
+import gate.termraider.util.TermIdMap;
+import gate.termraider.util.TermRanking;
+import gate.termraider.util.TermScoreTable;
+import gate.util.Files;
 import gate.util.GateException;
 
 
@@ -48,25 +70,65 @@ public abstract class AbstractTermbank extends AbstractBank
 
   private static final long serialVersionUID = -1044054380153036770L;
   
+  // term ids per partition for calculateScores(TermScoreCalculator)
+  private static final int SCORE_PARTITION_SIZE = 4096;
+  
   // additional CREOLE init parameters
   protected Set<String> inputAnnotationTypes;
   protected String idDocumentFeature;
+  protected int numberOfThreads;
+  protected boolean offHeapStorage;
+  protected URL snapshotURL;
 
   // transient to allow serialization
   protected transient List<Action> actionsList;
   
-  protected Map<ScoreType, Map<Term, Number>> scores;
-  protected Map<Term, Set<DocumentIdentifier>>  termDocuments;
+  protected TermDictionary dictionary;
+  protected ScoreStore scores;
+  protected DocumentTable documentTable;
+  protected TermIdMap<PostingList> termPostings;
   public static final String RAW_SUFFIX = ".raw";
   
-  private List<Term> termsByDescendingScore;
-  protected boolean  descendingScoresDone = false;
+  // ranked term ids for each score type, sorted lazily
+  private transient Map<ScoreType, int[]> rankings;
+  // all the scores for copying onto annotations, built lazily
+  private transient TermScoreTable scoreTable;
+  // build progress and sizes, also registered as an MBean
+  private transient TermbankMetrics metrics;
   
   protected List<ScoreType> scoreTypes;
   private Number minDefaultScore, maxDefaultScore;
 
 
   public Resource init() throws ResourceInstantiationException {
+    TermbankMetrics termbankMetrics = getMetrics();
+    termbankMetrics.register();
+    try {
+      if (snapshotURL != null) {
+        startPhase(TermbankMetrics.Phase.LOAD_SNAPSHOT);
+        initFromSnapshot();
+      }
+      else {
+        build();
+      }
+      startPhase(TermbankMetrics.Phase.READY);
+      termbankMetrics.measureSizes(scores, termPostings);
+    }
+    catch (ResourceInstantiationException | RuntimeException e) {
+      termbankMetrics.unregister();
+      throw e;
+    }
+    return this;
+  }
+  
+  
+  /**
+   * The steps of init() when the termbank is not loaded from a 
+   * snapshot.  Call startPhase() before each stage so that it is
+   * timed in the metrics.
+   */
+  protected void build() throws ResourceInstantiationException {
+    startPhase(TermbankMetrics.Phase.PREPARE);
     prepare();
     initializeScoreTypes();
     // Above method must be set in each subclass;
@@ -75,26 +137,93 @@ public abstract class AbstractTermbank extends AbstractBank
       throw new ResourceInstantiationException("No score types found in " + this.toString());
     }
     resetScores();
+    startPhase(TermbankMetrics.Phase.PROCESS_CORPORA);
     processCorpora();
+    startPhase(TermbankMetrics.Phase.CALCULATE_SCORES);
     calculateScores();
-    return this;
   }
   
 
   public void cleanup() {
+    getMetrics().unregister();
     super.cleanup();
   }
   
   
+  /**
+   * @return the progress, timing and size figures, which are also
+   * published through JMX between init() and cleanup()
+   */
+  public synchronized TermbankMetrics getMetrics() {
+    if (metrics == null) {
+      metrics = new TermbankMetrics(this);
+    }
+    return metrics;
+  }
+  
+  
+  protected void startPhase(TermbankMetrics.Phase phase) {
+    getMetrics().startPhase(phase);
+    fireStatusChanged("Termbank " + this.getName() + ": " + phase.getDescription());
+  }
+  
+  
+  /**
+   * Load the dictionary, scores and postings from the snapshot
+   * instead of processing the corpora.
+   */
+  protected void initFromSnapshot() throws ResourceInstantiationException {
+    initializeScoreTypes();
+    resetScores();
+    this.types = new TreeSet<String>();
+    this.languages = new TreeSet<String>();
+    try {
+      TermbankSnapshot.load(this, Files.fileFromURL(snapshotURL));
+    }
+    catch (IOException e) {
+      throw new ResourceInstantiationException(e);
+    }
+    snapshotLoaded();
+  }
+  
+  
+  /**
+   * Override this to rebuild anything derived from the scores after
+   * a snapshot has been loaded.
+   */
+  protected void snapshotLoaded() {
+    // nothing to do here
+  }
+  
+  
+  /**
+   * Save the dictionary, scores and postings in a binary file 
+   * that can be loaded quickly (see the snapshotURL parameter).
+   */
+  public void saveSnapshot(File file) throws IOException {
+    TermbankSnapshot.save(this, file);
+  }
+  
+  
   public List<ScoreType> getScoreTypes() {
     return this.scoreTypes;
   }
   
+  
+  /**
+   * @return the scores by term id, for reading a lot of them without
+   * making Terms (as the viewer's table does); change them only 
+   * through the termbank
+   */
+  public ScoreStore getScoreStore() {
+    return this.scores;
+  }
+  
 
   public Number getScore(ScoreType type, Term term) {
-    Map<Term, Number> ss = this.getScores(type);
-    if (ss.containsKey(term)) {
-      return ss.get(term);
+    Number score = this.scores.getScore(type, term);
+    if (score != null) {
+      return score;
     }
     
     // implied else
@@ -113,7 +242,7 @@ public abstract class AbstractTermbank extends AbstractBank
   
   
   public Map<Term, Number> getDefaultScores() {
-    return this.scores.get(getDefaultScoreType());
+    return this.scores.getScoreMap(getDefaultScoreType());
   }
   
   
@@ -121,38 +250,153 @@ public abstract class AbstractTermbank extends AbstractBank
   
   
   public List<Term> getTermsByDescendingScore() {
-    // lazy computation
-    if (! descendingScoresDone) {
-      termsByDescendingScore = new ArrayList<Term>(this.getTerms());
-      Collections.sort(termsByDescendingScore, new TermComparatorByDescendingScore(scores.get(this.getDefaultScoreType())));
-      descendingScoresDone = true;
+    return getTermsByDescendingScore(getDefaultScoreType());
+  }
+  
+  
+  /**
+   * @return a read-only list of the terms with scores of this type,
+   * highest first (equal scores in the order the terms were added);
+   * the order is cached until the scores change
+   */
+  public List<Term> getTermsByDescendingScore(ScoreType type) {
+    return termList(getRanking(type), Integer.MAX_VALUE);
+  }
+  
+  
+  public List<Term> getTopTerms(int k) {
+    return getTopTerms(getDefaultScoreType(), k);
+  }
+  
+  
+  /**
+   * @return the k highest-scoring terms (or all of them if there are
+   * fewer), in the same order as getTermsByDescendingScore; this uses
+   * a bounded heap rather than a full sort unless the order is
+   * already cached
+   */
+  public List<Term> getTopTerms(ScoreType type, int k) {
+    int[] ranking = getCachedRanking(type);
+    if (ranking != null) {
+      return termList(ranking, k);
+    }
+    return termList(TermRanking.rankTop(this.scores, type, k), k);
+  }
+  
+  
+  public List<Term> getTermsAboveThreshold(Number threshold) {
+    return getTermsAboveThreshold(getDefaultScoreType(), threshold);
+  }
+  
+  
+  /**
+   * @return the terms with scores &gt;= threshold, in the same order
+   * as getTermsByDescendingScore; only these terms are sorted unless
+   * the order is already cached
+   */
+  public List<Term> getTermsAboveThreshold(ScoreType type, Number threshold) {
+    double thresholdValue = threshold.doubleValue();
+    int[] ranking = getCachedRanking(type);
+    if (ranking != null) {
+      // binary search for the end of the prefix >= threshold
+      int low = 0, high = ranking.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (this.scores.getDouble(type, ranking[middle]) >= thresholdValue) {
+          low = middle + 1;
+        }
+        else {
+          high = middle;
+        }
+      }
+      return termList(ranking, low);
+    }
+
+    // implied else
+    ranking = TermRanking.rankAbove(this.scores, type, thresholdValue);
+    if (ranking.length == this.scores.getScoreMap(type).size()) {
+      // nothing was filtered out, so this is the full order
+      setCachedRanking(type, ranking);
+    }
+    return termList(ranking, Integer.MAX_VALUE);
+  }
+  
+  
+  private int[] getRanking(ScoreType type) {
+    int[] ranking = getCachedRanking(type);
+    if (ranking == null) {
+      ranking = TermRanking.rankAll(this.scores, type);
+      setCachedRanking(type, ranking);
+    }
+    return ranking;
+  }
+  
+  
+  private synchronized int[] getCachedRanking(ScoreType type) {
+    if (this.rankings == null) {
+      return null;
+    }
+    return this.rankings.get(type);
+  }
+  
+  
+  private synchronized void setCachedRanking(ScoreType type, int[] ranking) {
+    if (this.rankings == null) {
+      this.rankings = new HashMap<ScoreType, int[]>();
     }
-    return this.termsByDescendingScore;
+    this.rankings.put(type, ranking);
+  }
+  
+  
+  /**
+   * @return a read-only view of the first (up to) length terms
+   */
+  private List<Term> termList(int[] ids, int length) {
+    return TermRanking.asTerms(this.scores, ids, Math.min(ids.length, Math.max(0, length)));
   }
   
 
+  /**
+   * @return a read-only view of the documents for each term
+   */
   public Map<Term, Set<DocumentIdentifier>> getTermDocuments() {
-    return this.termDocuments;
+    return new TermDocumentsMap(this.termPostings, this.documentTable);
   }
   
   
   public Map<ScoreType, Number> getScoreMap(Term term) {
     Map<ScoreType, Number> result = new HashMap<ScoreType, Number>();
     for (ScoreType st : this.scoreTypes) {
-      result.put(st, this.scores.get(st).get(term));
+      result.put(st, this.scores.getScore(st, term));
     }
     return result;
   }
   
   
+  /**
+   * @return an immutable table of all the scores, built once (until
+   * the scores change) and shared by all the threads that use it
+   */
+  public synchronized TermScoreTable getScoreTable() {
+    if (this.scoreTable == null) {
+      this.scoreTable = new TermScoreTable(this.scores, this.scoreTypes);
+    }
+    return this.scoreTable;
+  }
+  
+  
+  /**
+   * @return a read-only view of one column of scores
+   */
   public Map<Term, Number> getScores(ScoreType st) {
-    return this.scores.get(st);
+    return this.scores.getScoreMap(st);
   }
   
   
   public Set<DocumentIdentifier> getDocumentsForTerm(Term term) {
-    if (this.termDocuments.containsKey(term)) {
-      return this.termDocuments.get(term);
+    PostingList postings = this.termPostings.get(term);
+    if (postings != null) {
+      return new PostingSet(postings, this.documentTable);
     }
     
     // implied else: empty set
@@ -160,6 +404,162 @@ public abstract class AbstractTermbank extends AbstractBank
   }
   
   
+  /**
+   * @return the number of local documents containing the term
+   */
+  protected int getLocalDocumentFrequency(int termId) {
+    PostingList postings = this.termPostings.get(termId);
+    if (postings == null) {
+      return 0;
+    }
+    return postings.size();
+  }
+  
+  
+  /**
+   * @return a new empty dictionary, off the heap if the bank was
+   * configured that way
+   */
+  protected TermDictionary newDictionary() {
+    if (offHeapStorage) {
+      return TermDictionary.offHeap();
+    }
+    return new TermDictionary();
+  }
+  
+  
+  /**
+   * @return a new empty score store for the dictionary, off the heap
+   * if the bank was configured that way
+   */
+  protected ScoreStore newScoreStore(TermDictionary termDictionary) {
+    if (offHeapStorage) {
+      return ScoreStore.offHeap(termDictionary, this.scoreTypes);
+    }
+    return new ScoreStore(termDictionary, this.scoreTypes);
+  }
+  
+  
+  /**
+   * Run the calculator on every term id, in partitions of the id 
+   * space, on a fork-join pool of numberOfThreads workers.  Each 
+   * partition's scores go into its own buffer and the buffers are 
+   * copied into the store in id order, so the result is the same 
+   * as with one thread.
+   */
+  protected void calculateScores(TermScoreCalculator calculator) {
+    int partitions = (scores.size() + SCORE_PARTITION_SIZE - 1) / SCORE_PARTITION_SIZE;
+    if ( (numberOfThreads <= 1) || (partitions <= 1) ) {
+      for (int p = 0 ; p < partitions ; p++) {
+        commitScores(calculatePartition(calculator, p));
+      }
+      return;
+    }
+    
+    ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+    try {
+      // a few partitions per thread at a time, so that not all the
+      // scores are buffered at once
+      int round = numberOfThreads * 4;
+      for (int first = 0 ; first < partitions ; first += round) {
+        ScoreBuffer[] buffers = new ScoreBuffer[Math.min(round, partitions - first)];
+        pool.invoke(new PartitionTask(calculator, buffers, first, 0, buffers.length));
+        for (ScoreBuffer buffer : buffers) {
+          commitScores(buffer);
+        }
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+  
+  
+  /**
+   * Run the calculator on one term, in this thread, e.g. after
+   * documents have been added or removed.
+   */
+  protected void calculateScores(TermScoreCalculator calculator, int termId) {
+    if (calculator.includes(termId)) {
+      ScoreBuffer buffer = new ScoreBuffer(scoreTypes, termId, termId + 1);
+      Term term = scores.getTerm(termId);
+      buffer.addTerm(term);
+      calculator.calculate(termId, term, buffer);
+      commitScores(buffer);
+    }
+  }
+  
+  
+  private ScoreBuffer calculatePartition(TermScoreCalculator calculator, int partition) {
+    int from = partition * SCORE_PARTITION_SIZE;
+    int to = Math.min(from + SCORE_PARTITION_SIZE, scores.size());
+    ScoreBuffer buffer = new ScoreBuffer(scoreTypes, from, to);
+    for (int id = from ; id < to ; id++) {
+      if (calculator.includes(id)) {
+        Term term = scores.getTerm(id);
+        buffer.addTerm(term);
+        calculator.calculate(id, term, buffer);
+      }
+    }
+    return buffer;
+  }
+  
+  
+  private void commitScores(ScoreBuffer buffer) {
+    buffer.copyTo(scores);
+    this.languages.addAll(buffer.getLanguages());
+    this.types.addAll(buffer.getTypes());
+  }
+  
+  
+  /**
+   * Calculates the partitions first + start .. first + end - 1 into
+   * buffers[start .. end - 1], splitting the range in half until it
+   * is one partition.
+   */
+  private class PartitionTask extends RecursiveAction {
+    private static final long serialVersionUID = 5093432853719946218L;
+    
+    private TermScoreCalculator calculator;
+    private ScoreBuffer[] buffers;
+    private int first, start, end;
+    
+    PartitionTask(TermScoreCalculator calculator, ScoreBuffer[] buffers, int first, int start, int end) {
+      this.calculator = calculator;
+      this.buffers = buffers;
+      this.first = first;
+      this.start = start;
+      this.end = end;
+    }
+    
+    protected void compute() {
+      if (end - start == 1) {
+        buffers[start] = calculatePartition(calculator, first + start);
+        return;
+      }
+      int middle = (start + end) >>> 1;
+      invokeAll(new PartitionTask(calculator, buffers, first, start, middle),
+              new PartitionTask(calculator, buffers, first, middle, end));
+    }
+  }
+  
+  
+  /**
+   * Forget the cached sort order and minimum and maximum scores
+   * after the scores have been changed, and update the sizes in
+   * the metrics.
+   */
+  protected void scoresChanged() {
+    synchronized (this) {
+      this.rankings = null;
+      this.scoreTable = null;
+    }
+    this.minDefaultScore = null;
+    this.maxDefaultScore = null;
+    getMetrics().measureSizes(scores, termPostings);
+  }
+  
+  
   private void findMinAndMaxDefaultScores() {
     Collection<Number> values = this.getDefaultScores().values();
     if (values.isEmpty()) {
@@ -212,41 +612,260 @@ public abstract class AbstractTermbank extends AbstractBank
   protected void createActions() {
     actionsList = new ArrayList<Action>();
     actionsList.add(new ActionSaveCsv("Save as CSV...", this));
+    actionsList.add(new ActionSaveSnapshot("Save snapshot...", this));
   }
   
   
-  protected void processCorpora() {
+  protected void processCorpora() throws ResourceInstantiationException {
+    TermbankMetrics termbankMetrics = getMetrics();
+    for (Corpus corpus : corpora) {
+      termbankMetrics.addDocumentsTotal(corpus.size());
+    }
+    
     for (Corpus corpus : corpora) {
       processCorpus(corpus);
+      termbankMetrics.setDistinctTerms(dictionary.size());
       if (debugMode) {
         System.out.println("Termbank " + this.getName() + ": added corpus " + corpus.getName() + " with " + corpus.size() + " documents");
       }
     }
+    
+    for (PostingList postings : termPostings.values()) {
+      postings.trimToSize();
+    }
+    termbankMetrics.measureTermGrowth(termPostings, dictionary.size());
+    fireProcessFinished();
   }
   
   
-  protected void processCorpus(Corpus corpus) {
-    for (int i=0 ; i < corpus.size() ; i++) {
-      boolean wasLoaded = corpus.isDocumentLoaded(i);
-      Document document = corpus.get(i);
-      
-      processDocument(document, i);
+  protected void processCorpus(Corpus corpus) throws ResourceInstantiationException {
+    if ( (numberOfThreads > 1) && (corpus.size() > 1) ) {
+      processCorpusInParallel(corpus);
+      return;
+    }
 
-      // datastore safety
+    TermbankPartial partial = createPartial();
+    for (int i=0 ; i < corpus.size() ; i++) {
+      processCorpusDocument(corpus, i, partial);
+    }
+    mergePartial(partial);
+  }
+  
+  
+  /**
+   * Each worker processes a fixed, contiguous range of document
+   * indexes into its own partial, and the partials are merged in
+   * range order once every document has been processed.  The terms
+   * and documents therefore reach the termbank in the same order as
+   * in sequential processing, so the term ids and document numbers
+   * are the same however the work is timed.  So are the scores, except
+   * that a mean of merged partial sums can differ in the last bit (see
+   * AnnotationTermbank.mergePartialTerm).
+   */
+  private void processCorpusInParallel(final Corpus corpus) throws ResourceInstantiationException {
+    final int size = corpus.size();
+    int threads = Math.min(numberOfThreads, size);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<TermbankPartial>> results = new ArrayList<Future<TermbankPartial>>();
+    
+    for (int t=0 ; t < threads ; t++) {
+      final int from = (int) ((long) size * t / threads);
+      final int to = (int) ((long) size * (t + 1) / threads);
+      results.add(executor.submit(new Callable<TermbankPartial>() {
+        @Override
+        public TermbankPartial call() {
+          TermbankPartial partial = createPartial();
+          for (int i = from ; i < to ; i++) {
+            processCorpusDocument(corpus, i, partial);
+          }
+          return partial;
+        }
+      }));
+    }
+    executor.shutdown();
+    
+    try {
+      for (Future<TermbankPartial> result : results) {
+        mergePartial(result.get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ResourceInstantiationException("Interrupted while processing corpus " + corpus.getName(), e);
+    }
+    catch (ExecutionException e) {
+      throw new ResourceInstantiationException("Error processing corpus " + corpus.getName(), e);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+  
+  
+  private void processCorpusDocument(Corpus corpus, int i, TermbankPartial partial) {
+    // the corpus itself is not thread-safe, so only the processing
+    // of the loaded document can run alongside the other workers
+    boolean wasLoaded;
+    Document document;
+    synchronized (corpus) {
+      wasLoaded = corpus.isDocumentLoaded(i);
+      document = corpus.get(i);
+    }
+    
+    try {
+      processDocument(document, i, partial);
+      documentProcessed();
+    }
+    finally {
+      // datastore safety, even if the document could not be processed
       if (! wasLoaded) {
-        corpus.unloadDocument(document);
-        Factory.deleteResource(document);
+        synchronized (corpus) {
+          corpus.unloadDocument(document);
+          Factory.deleteResource(document);
+        }
       }
     }
   }
   
   
+  /**
+   * Count the document in the metrics and, every so often, tell the
+   * listeners how far the corpora have got.
+   */
+  private void documentProcessed() {
+    TermbankMetrics termbankMetrics = getMetrics();
+    if (termbankMetrics.documentProcessed()) {
+      fireProgressChanged(termbankMetrics.getPercentDone());
+      fireStatusChanged(String.format("Termbank %s: %d of %d documents (%.1f per second)", 
+              this.getName(), termbankMetrics.getDocumentsProcessed(), 
+              termbankMetrics.getDocumentsTotal(), termbankMetrics.getDocumentsPerSecond()));
+    }
+  }
+  
+  
+  /**
+   * Process more documents (not necessarily in the corpora) and
+   * merge them into this termbank, without recalculating the scores.
+   * @param documents the documents to add
+   * @param firstIndex the index to give the first document's
+   * identifier (the others follow it)
+   * @return the ids of the terms found in the documents
+   */
+  protected BitSet processDocuments(Collection<Document> documents, int firstIndex) {
+    TermbankPartial partial = createPartial();
+    int index = firstIndex;
+    for (Document document : documents) {
+      processDocument(document, index, partial);
+      index++;
+    }
+    mergePartial(partial);
+    
+    BitSet termIds = new BitSet();
+    TermDictionary partialTerms = partial.getDictionary();
+    for (int partialId = 0 ; partialId < partialTerms.size() ; partialId++) {
+      termIds.set(dictionary.getId(partialTerms.getTerm(partialId)));
+    }
+    return termIds;
+  }
+  
+  
+  /**
+   * Remove some documents from the postings and the DocumentTable,
+   * without recalculating the scores.  This checks every term's
+   * postings.
+   * @param documentNumbers the documents' numbers in the DocumentTable
+   * @return the ids of the terms that were in the documents
+   */
+  protected BitSet removeDocumentPostings(BitSet documentNumbers) {
+    BitSet termIds = new BitSet();
+    for (int id = 0 ; id < dictionary.size() ; id++) {
+      PostingList postings = termPostings.get(id);
+      if (postings == null) {
+        continue;
+      }
+      
+      boolean changed = false;
+      for (int n = documentNumbers.nextSetBit(0) ; n >= 0 ; n = documentNumbers.nextSetBit(n + 1)) {
+        changed |= postings.remove(n);
+      }
+      if (changed) {
+        termIds.set(id);
+        // put it back in case it came from a snapshot
+        termPostings.put(id, (postings.size() == 0) ? null : postings);
+      }
+    }
+    
+    for (int n = documentNumbers.nextSetBit(0) ; n >= 0 ; n = documentNumbers.nextSetBit(n + 1)) {
+      documentTable.remove(n);
+    }
+    return termIds;
+  }
+  
+  
+  /**
+   * Override this if the subclass collects more data per document
+   * than the term frequencies and documents.
+   */
+  protected TermbankPartial createPartial() {
+    return new TermbankPartial();
+  }
+  
+  
+  /**
+   * Add a partial's document count and terms to this termbank.
+   * Subclasses merge their own per-term data in mergePartialTerm.
+   */
+  protected void mergePartial(TermbankPartial partial) {
+    this.documentCount += partial.getDocumentCount();
+    
+    // The first partial into an empty bank keeps its numbering
+    boolean renumber = (documentTable.size() > 0);
+    int[] renumbering = documentTable.addAll(partial.getDocumentTable());
+    
+    TermDictionary partialTerms = partial.getDictionary();
+    for (int partialId = 0 ; partialId < partialTerms.size() ; partialId++) {
+      int termId = dictionary.intern(partialTerms.getTerm(partialId));
+      PostingList partialPostings = partial.getPostings(partialId);
+      if (partialPostings != null) {
+        PostingList postings = termPostings.get(termId);
+        if (postings == null && ! renumber) {
+          termPostings.put(termId, partialPostings);
+        }
+        else {
+          if (postings == null) {
+            postings = new PostingList();
+          }
+          postings.addAll(partialPostings, renumber ? renumbering : null);
+          termPostings.put(termId, postings);
+        }
+      }
+      mergePartialTerm(partial, partialId, termId);
+    }
+  }
+  
+  
+  /**
+   * Merge anything else a subclass collected for one term (the
+   * documents have already been merged).
+   * @param partial the partial being merged
+   * @param partialId the term's id in the partial's dictionary
+   * @param termId the term's id in this termbank's dictionary
+   */
+  protected void mergePartialTerm(TermbankPartial partial, int partialId, int termId) {
+    // nothing to do here
+  }
+  
+  
 
   /* BEHOLD THE GUBBINS to distinguish the various types of Termbanks */
 
   protected abstract void resetScores();
 
-  protected abstract void processDocument(Document document, int index);
+  /**
+   * This is called from the worker threads when documents are 
+   * processed in parallel, so it must only write to the partial.
+   */
+  protected abstract void processDocument(Document document, int index, TermbankPartial partial);
   
   /**
    * This also needs to fill types and languages
@@ -334,7 +953,7 @@ public abstract class AbstractTermbank extends AbstractBank
   
 public void writeCSVTermDocumentData(ICSVWriter csvWriter, Term term) {
 	  
-	  for (DocumentIdentifier docID : getTermDocuments().get(term)) {
+	  for (DocumentIdentifier docID : getDocumentsForTerm(term)) {
 	  
 		  List<String> row = new ArrayList<String>();
 		  
@@ -354,6 +973,56 @@ public void writeCSVTermDocumentData(ICSVWriter csvWriter, Term term) {
 	  }
   }
 
+  /**
+   * Write the same rows as writeCSVTermData (or, with documentDetails,
+   * writeCSVTermDocumentData) straight from the score columns and 
+   * postings, without boxing the scores or building a String[] per row.
+   * @param row a buffer to reuse from one term to the next
+   */
+  public void writeCsvRows(CsvOutput output, Term term, boolean documentDetails, StringBuilder row) 
+          throws IOException {
+    int id = scores.getTermId(term);
+    row.setLength(0);
+    CsvOutput.append(row, term.getTermString());
+    row.append(',');
+    CsvOutput.append(row, term.getLanguageCode());
+    row.append(',');
+    CsvOutput.append(row, term.getType());
+    for (ScoreType type : this.scoreTypes) {
+      row.append(',');
+      // as in getScore(), a missing score is written as (int) 0
+      if ( (id < 0) || (! scores.hasScore(type, id)) ) {
+        row.append(0);
+      }
+      else if (scores.isDouble(type)) {
+        row.append(scores.getDouble(type, id));
+      }
+      else {
+        row.append(scores.getInt(type, id));
+      }
+    }
+    
+    if (! documentDetails) {
+      output.raw(row).endRow();
+      return;
+    }
+
+    PostingList postings = (id < 0) ? null : this.termPostings.get(id);
+    if (postings == null) {
+      return;
+    }
+    PostingList.Cursor cursor = postings.cursor();
+    while (cursor.hasNext()) {
+      DocumentIdentifier docID = this.documentTable.get(cursor.next());
+      output.raw(row);
+      output.field(docID.getURL() == null ? "" : docID.getURL().toString());
+      output.field(docID.getIdentifier());
+      output.field(docID.getIndex());
+      output.endRow();
+    }
+  }
+  
+
   @CreoleParameter(comment = "input annotation types",
           defaultValue = "SingleWord;MultiWord")
   public void setInputAnnotationTypes(Set<String> names) {
@@ -376,5 +1045,36 @@ public void writeCSVTermDocumentData(ICSVWriter csvWriter, Term term) {
   }
 
   
+  @CreoleParameter(comment = "number of threads for processing documents (1 = sequential)",
+          defaultValue = "1")
+  public void setNumberOfThreads(Integer threads) {
+    this.numberOfThreads = threads;
+  }
+  
+  public Integer getNumberOfThreads() {
+    return this.numberOfThreads;
+  }
+  
+  @CreoleParameter(comment = "keep the term strings, their hash index and the scores in direct memory outside the heap (see -XX:MaxDirectMemorySize)",
+          defaultValue = "false")
+  public void setOffHeapStorage(Boolean offHeapStorage) {
+    this.offHeapStorage = offHeapStorage;
+  }
+  
+  public Boolean getOffHeapStorage() {
+    return this.offHeapStorage;
+  }
+  
+  @Optional
+  @CreoleParameter(comment = "termbank snapshot to load instead of processing the corpora")
+  public void setSnapshotURL(URL snapshotURL) {
+    this.snapshotURL = snapshotURL;
+  }
+  
+  public URL getSnapshotURL() {
+    return this.snapshotURL;
+  }
+
+  
   
 }
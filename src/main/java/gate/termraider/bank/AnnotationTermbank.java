@@ -16,7 +16,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import gate.Annotation;
 import gate.AnnotationSet;
@@ -27,8 +26,12 @@ import gate.creole.metadata.CreoleResource;
 import gate.termraider.modes.MergingMode;
 import gate.termraider.modes.Normalization;
 import gate.termraider.util.DocumentIdentifier;
+import gate.termraider.util.DocumentTable;
+import gate.termraider.util.PostingList;
+import gate.termraider.util.ScoreBuffer;
 import gate.termraider.util.ScoreType;
 import gate.termraider.util.Term;
+import gate.termraider.util.TermIdMap;
 import gate.termraider.util.Utilities;
 
 
@@ -46,65 +49,108 @@ public class AnnotationTermbank extends AbstractTermbank {
   private Normalization normalization;
 
   /* EXTRA DATA FOR ANALYSIS */
-  private Map<Term, List<Double>>  termIndividualScores;
+  private TermIdMap<MergingMode.Accumulator> termMergedScores;
+  // every individual score, kept only in debug mode
+  private TermIdMap<List<Double>>  termIndividualScores;
   private ScoreType rawScoreST, termFrequencyST, localDocFrequencyST;
   
   
-  protected void processDocument(Document document, int index) {
-    documentCount++;
+  protected void processDocument(Document document, int index, TermbankPartial partial) {
+    partial.incrementDocumentCount();
     DocumentIdentifier documentSource = Utilities.docIdentifier(document, idDocumentFeature, index);
+    int documentNumber = partial.addDocumentIdentifier(documentSource);
     AnnotationSet candidates = document.getAnnotations(inputASName).get(inputAnnotationTypes);
+    AnnotationTermbankPartial annotationPartial = (AnnotationTermbankPartial) partial;
 
     for (Annotation candidate : candidates) {
-      Term term = makeTerm(candidate, document);
       FeatureMap fm = candidate.getFeatures();
       if (fm.containsKey(inputScoreFeature)) {
-        Utilities.incrementScoreTermValue(scores, termFrequencyST, term, 1);
-        
         double score = ((Number) fm.get(inputScoreFeature)).doubleValue();
-        Utilities.addToMapSet(termDocuments, term, documentSource);
-        
-        if (termIndividualScores.containsKey(term)) {
-          List<Double> scoreList = termIndividualScores.get(term);
-          scoreList.add(score);
-        }
-        else {
-          List<Double> scoreList = new ArrayList<Double>();
-          scoreList.add(score);
-          termIndividualScores.put(term, scoreList);
-        }
+        int termId = makeTermId(candidate, document, partial.getDictionary());
+        partial.addOccurrence(termId, documentNumber);
+        annotationPartial.addScore(termId, score);
       }
     }
   }
 
 
-  public void calculateScores() {
-	for (Map.Entry<Term, Set<DocumentIdentifier>> entry : termDocuments.entrySet()) {
-	  Term term = entry.getKey();
-      languages.add(term.getLanguageCode());
-      types.add(term.getType());
-      
-      Double rawScore = MergingMode.calculate(mergingMode, termIndividualScores.get(term));
-      Utilities.setScoreTermValue(scores, rawScoreST, term, rawScore);
-      int localDF = entry.getValue().size();
-      Utilities.setScoreTermValue(scores, localDocFrequencyST, term, localDF);
-      double normalized = Normalization.calculate(normalization, rawScore);
-      Utilities.setScoreTermValue(scores, getDefaultScoreType(), term, normalized);
+  protected TermbankPartial createPartial() {
+    return new AnnotationTermbankPartial(debugMode);
+  }
+  
+  
+  /**
+   * Each term keeps only running totals, and a partial's totals are
+   * added to the termbank's in one step.  With more than one thread
+   * the MEAN's sum is therefore grouped by partial rather than added up
+   * one score at a time.  The sums are compensated, but the mean can
+   * still differ from the sequential mean in the last bit.  MINIMUM and
+   * MAXIMUM are the same either way.
+   */
+  protected void mergePartialTerm(TermbankPartial partial, int partialId, int termId) {
+    super.mergePartialTerm(partial, partialId, termId);
+    scores.incrementInt(termFrequencyST, termId, partial.getTermFrequency(partialId));
+    
+    AnnotationTermbankPartial annotationPartial = (AnnotationTermbankPartial) partial;
+    MergingMode.Accumulator partialScores = annotationPartial.getTermMergedScores().get(partialId);
+    MergingMode.Accumulator merged = termMergedScores.get(termId);
+    if (merged == null) {
+      termMergedScores.put(termId, partialScores);
+    }
+    else {
+      merged.addAll(partialScores);
+    }
+    
+    if (debugMode) {
+      List<Double> partialList = annotationPartial.getTermIndividualScores().get(partialId);
+      List<Double> scoreList = termIndividualScores.get(termId);
+      if (scoreList == null) {
+        termIndividualScores.put(termId, partialList);
+      }
+      else {
+        scoreList.addAll(partialList);
+      }
+    }
+  }
+
+
+  /**
+   * @return every score found for the term, or null if the termbank
+   * was not built in debug mode
+   */
+  public List<Double> getIndividualScores(Term term) {
+    if (termIndividualScores == null) {
+      return null;
     }
+    return termIndividualScores.get(term);
+  }
+
+
+  public void calculateScores() {
+    calculateScores(new TermScoreCalculator() {
+      protected void calculate(int id, Term term, ScoreBuffer buffer) {
+        double rawScore = termMergedScores.get(id).get(mergingMode);
+        buffer.setDouble(rawScoreST, id, rawScore);
+        int localDF = getLocalDocumentFrequency(id);
+        buffer.setInt(localDocFrequencyST, id, localDF);
+        double normalized = Normalization.calculate(normalization, rawScore);
+        buffer.setDouble(getDefaultScoreType(), id, normalized);
+      }
+    });
     
     if (debugMode) {
-      System.out.println("Termbank: nbr of terms = " + termDocuments.size());
+      System.out.println("Termbank: nbr of terms = " + termPostings.size());
     }
   }
 
   
   protected void resetScores() {
-    scores = new HashMap<ScoreType, Map<Term,Number>>();
-    for (ScoreType st : scoreTypes) {
-      scores.put(st, new HashMap<Term, Number>());
-    }
-    termIndividualScores = new HashMap<Term, List<Double>>();
-    termDocuments        = new HashMap<Term, Set<DocumentIdentifier>>();
+    dictionary = newDictionary();
+    scores = newScoreStore(dictionary);
+    termMergedScores = new TermIdMap<MergingMode.Accumulator>(dictionary);
+    termIndividualScores = debugMode ? new TermIdMap<List<Double>>(dictionary) : null;
+    documentTable        = new DocumentTable();
+    termPostings         = new TermIdMap<PostingList>(dictionary);
     languages = new HashSet<String>();
     types = new HashSet<String>();
   }
@@ -167,3 +213,52 @@ public class AnnotationTermbank extends AbstractTermbank {
   }
 
 }
+
+
+class AnnotationTermbankPartial extends TermbankPartial {
+  
+  private TermIdMap<MergingMode.Accumulator> termMergedScores;
+  private TermIdMap<List<Double>> termIndividualScores;
+  
+  /**
+   * @param keepIndividualScores keep every score as well as the
+   * running totals (for debugging)
+   */
+  public AnnotationTermbankPartial(boolean keepIndividualScores) {
+    super();
+    this.termMergedScores = new TermIdMap<MergingMode.Accumulator>(dictionary);
+    if (keepIndividualScores) {
+      this.termIndividualScores = new TermIdMap<List<Double>>(dictionary);
+    }
+  }
+  
+  public void addScore(int termId, double score) {
+    MergingMode.Accumulator merged = termMergedScores.get(termId);
+    if (merged == null) {
+      merged = new MergingMode.Accumulator();
+      termMergedScores.put(termId, merged);
+    }
+    merged.add(score);
+    
+    if (termIndividualScores != null) {
+      List<Double> scoreList = termIndividualScores.get(termId);
+      if (scoreList == null) {
+        scoreList = new ArrayList<Double>();
+        termIndividualScores.put(termId, scoreList);
+      }
+      scoreList.add(score);
+    }
+  }
+  
+  public TermIdMap<MergingMode.Accumulator> getTermMergedScores() {
+    return this.termMergedScores;
+  }
+  
+  /**
+   * @return the individual scores, or null if they are not kept
+   */
+  public TermIdMap<List<Double>> getTermIndividualScores() {
+    return this.termIndividualScores;
+  }
+  
+}
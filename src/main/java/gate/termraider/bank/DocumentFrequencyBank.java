@@ -11,9 +11,16 @@
  */
 package gate.termraider.bank;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -21,14 +28,22 @@ import gate.Annotation;
 import gate.AnnotationSet;
 import gate.Corpus;
 import gate.Document;
-import gate.Resource;
 import gate.creole.ResourceInstantiationException;
 import gate.creole.metadata.CreoleParameter;
 import gate.creole.metadata.CreoleResource;
+import gate.creole.metadata.Optional;
 import gate.termraider.util.DocumentIdentifier;
+import gate.termraider.util.DocumentTable;
+import gate.termraider.util.LongSet;
+import gate.termraider.util.PostingList;
+import gate.termraider.util.ScoreBuffer;
+import gate.termraider.util.ScoreStore;
 import gate.termraider.util.ScoreType;
 import gate.termraider.util.Term;
+import gate.termraider.util.TermDictionary;
+import gate.termraider.util.TermIdMap;
 import gate.termraider.util.Utilities;
+import gate.util.Files;
 
 
 @CreoleResource(name = "DocumentFrequencyBank",
@@ -41,8 +56,11 @@ public class DocumentFrequencyBank extends AbstractTermbank {
 
   // Note: corpora parameter inherited from AbstractBank
   private Set<DocumentFrequencyBank> inputBanks;
+  private List<URL> inputFrequencyFiles;
   
-  private Map<String, Set<Term>> stringLookupTable;
+  // built when it is first needed, and dropped when the scores change;
+  // volatile so that lookups need no lock once it is built
+  private transient volatile LaxFrequencyIndex laxIndex;
   
   /* CREOLE */
   protected String segmentAnnotationType; 
@@ -56,14 +74,17 @@ public class DocumentFrequencyBank extends AbstractTermbank {
     return this.segmentAnnotationType;
   }
 
-  public Resource init() throws ResourceInstantiationException {
+  protected void build() throws ResourceInstantiationException {
+    startPhase(TermbankMetrics.Phase.PREPARE);
     prepare();
     initializeScoreTypes();
     resetScores();
+    startPhase(TermbankMetrics.Phase.PROCESS_CORPORA);
     processInputBanks();
+    processInputFrequencyFiles();
     processCorpora();
+    startPhase(TermbankMetrics.Phase.CALCULATE_SCORES);
     calculateScores();
-    return this;
   }
   
 
@@ -80,89 +101,156 @@ public class DocumentFrequencyBank extends AbstractTermbank {
     if (inputBanks == null) {
       inputBanks = new HashSet<DocumentFrequencyBank>();
     }
+    if (inputFrequencyFiles == null) {
+      inputFrequencyFiles = new ArrayList<URL>();
+    }
   }
 
   
   protected void resetScores() {
-    scores = new HashMap<ScoreType, Map<Term,Number>>();
-    for (ScoreType st : scoreTypes) {
-      scores.put(st, new HashMap<Term, Number>());
-    }
+    dictionary = newDictionary();
+    scores = newScoreStore(dictionary);
     
     documentCount = 0;
     languages = new HashSet<String>();
     types = new HashSet<String>();
-    stringLookupTable = new HashMap<String, Set<Term>>();
-    termDocuments = new HashMap<Term, Set<DocumentIdentifier>>();
+    laxIndex = null;
+    documentTable = new DocumentTable();
+    termPostings  = new TermIdMap<PostingList>(dictionary);
   }  
   
   protected void processInputBanks() {
     for (DocumentFrequencyBank bank : inputBanks) {
       this.documentCount += bank.documentCount;
       for (Term term : bank.getTerms()) {
-        Utilities.incrementMap(getDefaultScores(), term, bank.getFrequencyStrict(term));
+        scores.incrementScore(getDefaultScoreType(), term, bank.getFrequencyStrict(term));
+      }
+    }
+  }
+  
+  
+  /**
+   * Merge the document frequency files with a k-way merge, reading
+   * one term at a time from each.
+   */
+  protected void processInputFrequencyFiles() throws ResourceInstantiationException {
+    if (inputFrequencyFiles.isEmpty()) {
+      return;
+    }
+    
+    List<File> files = new ArrayList<File>();
+    for (URL url : inputFrequencyFiles) {
+      files.add(Files.fileFromURL(url));
+    }
+
+    try {
+      DocumentFrequencyFile.Reader reader = DocumentFrequencyFile.open(files);
+      try {
+        this.documentCount += reader.getDocumentCount();
+        while (reader.next()) {
+          Term term = reader.getTerm();
+          scores.incrementScore(getDefaultScoreType(), term, reader.getFrequency());
+          this.types.add(term.getType());
+          this.languages.add(term.getLanguageCode());
+        }
       }
+      finally {
+        reader.close();
+      }
+    }
+    catch (IOException e) {
+      throw new ResourceInstantiationException("Error reading document frequency files", e);
     }
   }
   
   
-  protected void processDocument(Document document, int index) {
-    if (this.segmentAnnotationType.isEmpty() || (this.segmentAnnotationType == null)) {
-      processWholeDocument(document, index);
+  /**
+   * Save the document count and frequencies in a file that can be
+   * merged with others (see the inputFrequencyFiles parameter and
+   * DocumentFrequencyBatch).
+   */
+  public void saveDocumentFrequencies(File file) throws IOException {
+    DocumentFrequencyFile.write(this, file);
+  }
+  
+  
+  protected void processDocument(Document document, int index, TermbankPartial partial) {
+    if (isSegmented()) {
+      processDocumentSegments(document, index, partial);
     }
     else {
-      processDocumentSegments(document, index);
+      processWholeDocument(document, index, partial);
     }
   }
 
   
-  protected void processDocumentSegments(Document document, int index) {
+  /**
+   * Sweep through the segments and candidates in document order.
+   * The candidates contained in a segment (as in 
+   * AnnotationSet.getContained()) start at or after its start and 
+   * before its end, so the first one to check only moves forward;
+   * overlapping segments only rescan the overlap.  Each 
+   * candidate is interned at most once, and a reused set of term ids
+   * skips the postings for repeats within a segment.
+   */
+  protected void processDocumentSegments(Document document, int index, TermbankPartial partial) {
     DocumentIdentifier documentSource = Utilities.docIdentifier(document, idDocumentFeature, index);
-    AnnotationSet segments = document.getAnnotations(inputASName).get(segmentAnnotationType);
-    AnnotationSet candidates = document.getAnnotations(inputASName).get(inputAnnotationTypes);
+    List<Annotation> segments = gate.Utils.inDocumentOrder(document.getAnnotations(inputASName).get(segmentAnnotationType));
+    List<Annotation> candidates = gate.Utils.inDocumentOrder(document.getAnnotations(inputASName).get(inputAnnotationTypes));
 
+    int nbrCandidates = candidates.size();
+    long[] starts = new long[nbrCandidates];
+    long[] ends = new long[nbrCandidates];
+    int[] termIds = new int[nbrCandidates];
+    for (int c = 0 ; c < nbrCandidates ; c++) {
+      starts[c] = candidates.get(c).getStartNode().getOffset();
+      ends[c] = candidates.get(c).getEndNode().getOffset();
+      termIds[c] = -1;
+    }
+    
+    LongSet segmentTerms = new LongSet();
+    int first = 0;
     for (Annotation segment : segments) {
-      documentCount++;
+      partial.incrementDocumentCount();
       DocumentIdentifier documentSegmentSource = new DocumentIdentifier(documentSource.getURL(), documentSource.toString(), segment.getId());
-      AnnotationSet localCandidates = gate.Utils.getContainedAnnotations(candidates, segment);
-
-      Set<Term> documentTerms = new HashSet<Term>();
-      for (Annotation candidate : localCandidates) {
-        documentTerms.add(makeTerm(candidate, document));
-      }
+      int documentNumber = partial.addDocumentIdentifier(documentSegmentSource);
+      long segmentStart = segment.getStartNode().getOffset();
+      long segmentEnd = segment.getEndNode().getOffset();
       
-      for (Term term : documentTerms) {
-        Utilities.addToMapSet(termDocuments, term, documentSegmentSource);
+      while ( (first < nbrCandidates) && (starts[first] < segmentStart) ) {
+        first++;
+      }
+      segmentTerms.clear();
+      for (int c = first ; (c < nbrCandidates) && (starts[c] < segmentEnd) ; c++) {
+        if (ends[c] > segmentEnd) {
+          continue;
+        }
+        if (termIds[c] < 0) {
+          termIds[c] = makeTermId(candidates.get(c), document, partial.getDictionary());
+        }
+        if (segmentTerms.add(termIds[c])) {
+          partial.addDocument(termIds[c], documentNumber);
+        }
       }
     }
   }
 
   
-  protected void processWholeDocument(Document document, int index) {
-    documentCount++;
+  protected void processWholeDocument(Document document, int index, TermbankPartial partial) {
+    partial.incrementDocumentCount();
     DocumentIdentifier documentSource = Utilities.docIdentifier(document, idDocumentFeature, index);
+    int documentNumber = partial.addDocumentIdentifier(documentSource);
     AnnotationSet candidates = document.getAnnotations(inputASName).get(inputAnnotationTypes);
 
-    Set<Term> documentTerms = new HashSet<Term>();
+    // the postings take care of repeated terms
     for (Annotation candidate : candidates) {
-      documentTerms.add(makeTerm(candidate, document));
-    }
-    
-    for (Term term : documentTerms) {
-      Utilities.addToMapSet(termDocuments, term, documentSource);
+      partial.addDocument(makeTermId(candidate, document, partial.getDictionary()), documentNumber);
     }
   }
 
   
   protected void calculateScores() {
-	for (Map.Entry<Term, Set<DocumentIdentifier>> entry : termDocuments.entrySet()) {
-	  Term term = entry.getKey();
-      this.types.add(term.getType());
-      this.languages.add(term.getLanguageCode());
-      int df = entry.getValue().size();
-      Utilities.setScoreTermValue(scores, getDefaultScoreType(), term, df);
-      storeStringLookup(term);
-    }
+    calculateScores(scoreCalculator());
 
     if (debugMode) {
       System.out.println("Termbank: nbr of terms = " + this.getTerms().size());
@@ -170,6 +258,99 @@ public class DocumentFrequencyBank extends AbstractTermbank {
   }
   
   
+  private void calculateTermScores(int id) {
+    calculateScores(scoreCalculator(), id);
+  }
+  
+  
+  private TermScoreCalculator scoreCalculator() {
+    return new TermScoreCalculator() {
+      protected boolean includes(int id) {
+        return termPostings.get(id) != null;
+      }
+
+      protected void calculate(int id, Term term, ScoreBuffer buffer) {
+        buffer.setInt(getDefaultScoreType(), id, getLocalDocumentFrequency(id));
+      }
+    };
+  }
+  
+  
+  /**
+   * Recalculate the scores of the given terms only, after documents
+   * have been added or removed.
+   */
+  private void recalculateScores(BitSet termIds) {
+    for (int id = termIds.nextSetBit(0) ; id >= 0 ; id = termIds.nextSetBit(id + 1)) {
+      if (termPostings.get(id) == null) {
+        // no documents left
+        scores.clearScores(id);
+      }
+      else {
+        calculateTermScores(id);
+      }
+    }
+    scoresChanged();
+  }
+  
+  
+  /**
+   * Add documents to this bank and update the frequencies of the
+   * terms in them, without reprocessing the corpora.  The documents
+   * are indexed from the size of the document table (which counts
+   * removed documents too), as if they had been appended to a corpus.
+   */
+  public void addDocuments(Collection<Document> documents) {
+    addDocuments(documents, documentTable.size());
+  }
+  
+  
+  void addDocuments(Collection<Document> documents, int firstIndex) {
+    recalculateScores(processDocuments(documents, firstIndex));
+  }
+  
+  
+  /**
+   * Remove a document (in a segmented bank, all its segments) and
+   * update the frequencies of the terms in it.  This has to check
+   * every term's postings.
+   * @param document the document's identifier, as in the CSV output
+   * @return false if the document was not in this bank
+   */
+  public boolean removeDocument(DocumentIdentifier document) {
+    BitSet documentNumbers = new BitSet();
+    if (isSegmented()) {
+      // the segments are identified by the document's toString()
+      String documentString = document.toString();
+      for (int n = 0 ; n < documentTable.size() ; n++) {
+        DocumentIdentifier segment = documentTable.get(n);
+        if ( (segment != null) && documentString.equals(segment.getIdentifier()) ) {
+          documentNumbers.set(n);
+        }
+      }
+    }
+    else {
+      int n = documentTable.getNumber(document);
+      if (n >= 0) {
+        documentNumbers.set(n);
+      }
+    }
+    
+    if (documentNumbers.isEmpty()) {
+      return false;
+    }
+    
+    this.documentCount -= documentNumbers.cardinality();
+    recalculateScores(removeDocumentPostings(documentNumbers));
+    return true;
+  }
+  
+  
+  private boolean isSegmented() {
+    return (this.segmentAnnotationType != null) && (! this.segmentAnnotationType.isEmpty());
+  }
+  
+  
   public int getFrequencyStrict(Term term) {
     if (getDefaultScores().containsKey(term)) {
       return getDefaultScores().get(term).intValue();
@@ -179,23 +360,28 @@ public class DocumentFrequencyBank extends AbstractTermbank {
   }
   
   
+  /**
+   * @return the frequency of the term or, if there is none, of the
+   * same string and type with a blank language code (or, for a term
+   * with a blank language code, with the first language found)
+   */
   public int getFrequencyLax(Term term) {
-    // Try for an exact match first
-    if (getDefaultScores().containsKey(term)) {
-      return getDefaultScores().get(term).intValue();
-    }
-    
-    // Now see if there's one with a blank language code
-    String termString = term.getTermString();
-    if (stringLookupTable.containsKey(termString)) {
-      for (Term testTerm : stringLookupTable.get(termString)) {
-        if (testTerm.closeMatch(term)) {
-          return getDefaultScores().get(testTerm).intValue();
-        }
-      }
+    return getLaxIndex().getFrequency(term.getTermString(), term.getLanguageCode(), term.getType());
+  }
+  
+  
+  /**
+   * @return the lax frequencies of the terms, in iteration order,
+   * all looked up in the same index
+   */
+  public int[] getFrequenciesLax(Collection<Term> terms) {
+    LaxFrequencyIndex index = getLaxIndex();
+    int[] result = new int[terms.size()];
+    int i = 0;
+    for (Term term : terms) {
+      result[i++] = index.getFrequency(term.getTermString(), term.getLanguageCode(), term.getType());
     }
-    
-    return 0;
+    return result;
   }
   
   
@@ -207,18 +393,44 @@ public class DocumentFrequencyBank extends AbstractTermbank {
   public Set<DocumentFrequencyBank> getInputBanks() {
     return this.inputBanks;
   }
+  
+  @Optional
+  @CreoleParameter(comment = "Document frequency files (saved from other DFBs) to compile into the new one")
+  public void setInputFrequencyFiles(List<URL> files) {
+    this.inputFrequencyFiles = files;
+  }
+  
+  public List<URL> getInputFrequencyFiles() {
+    return this.inputFrequencyFiles;
+  }
 
-  private void storeStringLookup(Term term) {
-    String termString = term.getTermString();
-    Set<Term> terms;
-    if (stringLookupTable.containsKey(termString)) {
-      terms = stringLookupTable.get(termString);
+  private LaxFrequencyIndex getLaxIndex() {
+    LaxFrequencyIndex index = laxIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = laxIndex;
+        if (index == null) {
+          index = new LaxFrequencyIndex(scores, getDefaultScoreType(), newDictionary());
+          laxIndex = index;
+        }
+      }
     }
-    else {
-      terms = new HashSet<Term>();
+    return index;
+  }
+  
+  
+  protected void scoresChanged() {
+    super.scoresChanged();
+    synchronized (this) {
+      laxIndex = null;
+    }
+  }
+  
+  
+  protected void snapshotLoaded() {
+    synchronized (this) {
+      laxIndex = null;
     }
-    terms.add(term);
-    stringLookupTable.put(termString, terms);
   }
   
 
@@ -242,7 +454,111 @@ public class DocumentFrequencyBank extends AbstractTermbank {
     Map<String, String> result = new HashMap<String, String>();
     result.put("nbr of documents", String.valueOf(this.documentCount));
     result.put("nbr of terms", String.valueOf(this.getDefaultScores().size()));
-    result.put("nbr of distinct term strings", String.valueOf(this.stringLookupTable.size()));
+    result.put("nbr of distinct term strings", String.valueOf(this.getLaxIndex().countTermStrings()));
     return result;
   }
 }
+
+
+
+/**
+ * Index for lax document frequency lookups.  Each distinct
+ * (term string, type) key has the languages and frequencies of its
+ * terms and the two fallback frequencies precomputed, so a lookup is
+ * one hash probe followed by a scan of a few languages.  The keys are
+ * interned in a TermDictionary with blank language codes.  It is not
+ * changed once it is built.
+ */
+class LaxFrequencyIndex {
+
+  private TermDictionary keys;
+  // the terms with key k are at keyStart[k] .. keyStart[k+1]-1
+  private int[] keyStart;
+  private String[] languages;
+  private int[] frequencies;
+  // frequency of the key's blank-language term, for other languages
+  private int[] blankFrequency;
+  // frequency of the key's first term with a language, for blank ones
+  private int[] languageFrequency;
+
+
+  LaxFrequencyIndex(ScoreStore scores, ScoreType type, TermDictionary keys) {
+    this.keys = keys;
+    int[] keyOf = new int[scores.size()];
+    int count = 0;
+    for (int id = 0 ; id < scores.size() ; id++) {
+      if (scores.hasScore(type, id)) {
+        Term term = scores.getTerm(id);
+        keyOf[id] = keys.intern(term.getTermString(), "", term.getType());
+        count++;
+      }
+      else {
+        keyOf[id] = -1;
+      }
+    }
+
+    int nbrKeys = keys.size();
+    this.keyStart = new int[nbrKeys + 1];
+    for (int id = 0 ; id < keyOf.length ; id++) {
+      if (keyOf[id] >= 0) {
+        keyStart[keyOf[id] + 1]++;
+      }
+    }
+    for (int k = 0 ; k < nbrKeys ; k++) {
+      keyStart[k + 1] += keyStart[k];
+    }
+
+    this.languages = new String[count];
+    this.frequencies = new int[count];
+    this.blankFrequency = new int[nbrKeys];
+    this.languageFrequency = new int[nbrKeys];
+    boolean[] languageFound = new boolean[nbrKeys];
+    int[] next = Arrays.copyOf(keyStart, nbrKeys);
+    for (int id = 0 ; id < keyOf.length ; id++) {
+      int k = keyOf[id];
+      if (k < 0) {
+        continue;
+      }
+      String language = scores.getTerm(id).getLanguageCode();
+      int frequency = scores.getInt(type, id);
+      languages[next[k]] = language;
+      frequencies[next[k]] = frequency;
+      next[k]++;
+      if (language.isEmpty()) {
+        blankFrequency[k] = frequency;
+      }
+      else if (! languageFound[k]) {
+        languageFrequency[k] = frequency;
+        languageFound[k] = true;
+      }
+    }
+  }
+
+
+  int getFrequency(String termString, String languageCode, String type) {
+    int k = keys.getId(termString, "", type);
+    if (k < 0) {
+      return 0;
+    }
+    if (languageCode == null) {
+      languageCode = "";
+    }
+
+    for (int i = keyStart[k] ; i < keyStart[k + 1] ; i++) {
+      if (languages[i].equals(languageCode)) {
+        return frequencies[i];
+      }
+    }
+    return languageCode.isEmpty() ? languageFrequency[k] : blankFrequency[k];
+  }
+
+
+  int countTermStrings() {
+    Set<String> strings = new HashSet<String>();
+    for (int k = 0 ; k < keys.size() ; k++) {
+      strings.add(keys.getTerm(k).getTermString());
+    }
+    return strings.size();
+  }
+
+}
@@ -0,0 +1,308 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import gate.Corpus;
+import gate.DataStore;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.Gate;
+import gate.creole.Plugin;
+import gate.util.GateException;
+
+
+/**
+ * Headless commands for building reference document frequencies
+ * over collections too large for one DocumentFrequencyBank.
+ *
+ * <pre>
+ * build [options] output-file (directory | datastore-URL [corpus-ID])
+ *     Process one slice of the (already annotated) documents in a
+ *     directory or a serial datastore and save the frequencies.
+ *     Options (defaults as in the DFB):
+ *       -shard k/n                 the k-th of n slices (from 0)
+ *       -inputAnnotationTypes a,b  -inputASName name
+ *       -segmentAnnotationType t   -languageFeature f
+ *       -inputAnnotationFeature f  -idDocumentFeature f
+ *       -batchSize n               documents loaded at once
+ *
+ * merge [-snapshot] output-file input-file...
+ *     Merge the frequency files with a streaming k-way merge, into
+ *     another frequency file or (with -snapshot) a DFB snapshot that
+ *     can be loaded with the snapshotURL parameter.
+ * </pre>
+ *
+ * The slices are contiguous, and each document keeps its index in
+ * the whole collection, so the result does not depend on the
+ * number of slices.
+ */
+public class DocumentFrequencyBatch {
+
+  private static final int DEFAULT_BATCH_SIZE = 100;
+
+
+  public static void main(String[] args) {
+    if (args.length == 0) {
+      usage();
+    }
+
+    try {
+      Gate.init();
+      Gate.getCreoleRegister().registerPlugin(new Plugin.Component(DocumentFrequencyBank.class));
+      List<String> arguments = new ArrayList<String>(Arrays.asList(args).subList(1, args.length));
+      if (args[0].equals("build")) {
+        build(arguments);
+      }
+      else if (args[0].equals("merge")) {
+        merge(arguments);
+      }
+      else {
+        usage();
+      }
+    }
+    catch (GateException | IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+
+  private static void build(List<String> arguments) throws GateException, IOException {
+    FeatureMap parameters = Factory.newFeatureMap();
+    int shard = 0, shards = 1;
+    int batchSize = DEFAULT_BATCH_SIZE;
+
+    while ( (! arguments.isEmpty()) && arguments.get(0).startsWith("-") ) {
+      String option = arguments.remove(0).substring(1);
+      if (arguments.isEmpty()) {
+        usage();
+      }
+      String value = arguments.remove(0);
+      if (option.equals("shard")) {
+        String[] parts = value.split("/");
+        shard = Integer.parseInt(parts[0]);
+        shards = Integer.parseInt(parts[1]);
+        if ( (shards < 1) || (shard < 0) || (shard >= shards) ) {
+          usage();
+        }
+      }
+      else if (option.equals("batchSize")) {
+        batchSize = Math.max(1, Integer.parseInt(value));
+      }
+      else if (option.equals("inputAnnotationTypes")) {
+        parameters.put(option, new HashSet<String>(Arrays.asList(value.split(","))));
+      }
+      else {
+        parameters.put(option, value);
+      }
+    }
+    if ( (arguments.size() < 2) || (arguments.size() > 3) ) {
+      usage();
+    }
+    File output = new File(arguments.get(0));
+    DocumentSource source = DocumentSource.open(arguments.get(1),
+            (arguments.size() > 2) ? arguments.get(2) : null);
+
+    int first = (int) ((long) source.size() * shard / shards);
+    int end = (int) ((long) source.size() * (shard + 1) / shards);
+
+    DocumentFrequencyBank bank = (DocumentFrequencyBank)
+            Factory.createResource(DocumentFrequencyBank.class.getName(), parameters);
+    try {
+      for (int start = first ; start < end ; start += batchSize) {
+        List<Document> batch = new ArrayList<Document>();
+        for (int i = start ; i < Math.min(start + batchSize, end) ; i++) {
+          batch.add(source.get(i));
+        }
+        bank.addDocuments(batch, start);
+        for (Document document : batch) {
+          source.release(document);
+        }
+      }
+
+      bank.saveDocumentFrequencies(output);
+      System.out.println("Saved " + bank.getTerms().size() + " terms from "
+              + bank.getDocumentCount() + " documents (" + first + " to " + (end - 1) + ") in " + output);
+    }
+    finally {
+      Factory.deleteResource(bank);
+      source.close();
+    }
+  }
+
+
+  private static void merge(List<String> arguments) throws GateException, IOException {
+    boolean snapshot = false;
+    if ( (! arguments.isEmpty()) && arguments.get(0).equals("-snapshot") ) {
+      arguments.remove(0);
+      snapshot = true;
+    }
+    if (arguments.size() < 2) {
+      usage();
+    }
+    File output = new File(arguments.get(0));
+    List<File> inputs = new ArrayList<File>();
+    for (String input : arguments.subList(1, arguments.size())) {
+      inputs.add(new File(input));
+    }
+
+    if (! snapshot) {
+      DocumentFrequencyFile.Reader reader = DocumentFrequencyFile.open(inputs);
+      try {
+        int count = DocumentFrequencyFile.write(reader, output);
+        System.out.println("Saved " + count + " terms from " + reader.getDocumentCount() + " documents in " + output);
+      }
+      finally {
+        reader.close();
+      }
+      return;
+    }
+
+    List<URL> urls = new ArrayList<URL>();
+    for (File input : inputs) {
+      urls.add(input.toURI().toURL());
+    }
+    FeatureMap parameters = Factory.newFeatureMap();
+    parameters.put("inputFrequencyFiles", urls);
+    DocumentFrequencyBank bank = (DocumentFrequencyBank)
+            Factory.createResource(DocumentFrequencyBank.class.getName(), parameters);
+    try {
+      bank.saveSnapshot(output);
+      System.out.println("Saved " + bank.getTerms().size() + " terms from "
+              + bank.getDocumentCount() + " documents in " + output);
+    }
+    finally {
+      Factory.deleteResource(bank);
+    }
+  }
+
+
+  private static void usage() {
+    System.err.println("Usage: DocumentFrequencyBatch build [-shard k/n] [-param value]... output (directory | datastore-URL [corpus-ID])");
+    System.err.println("       DocumentFrequencyBatch merge [-snapshot] output input...");
+    System.exit(2);
+  }
+
+}
+
+
+/**
+ * The documents to process, from a directory (in file name order)
+ * or from a corpus in a serial datastore.
+ */
+abstract class DocumentSource {
+
+  abstract int size();
+
+  abstract Document get(int index) throws GateException;
+
+  abstract void release(Document document);
+
+  abstract void close() throws GateException;
+
+
+  static DocumentSource open(String location, String corpusId) throws GateException, IOException {
+    File directory = new File(location);
+    if (directory.isDirectory()) {
+      return new DirectorySource(directory);
+    }
+    return new DatastoreSource(new URL(location), corpusId);
+  }
+}
+
+
+class DirectorySource extends DocumentSource {
+  private File[] files;
+
+  DirectorySource(File directory) throws IOException {
+    this.files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Cannot list " + directory);
+    }
+    List<File> documentFiles = new ArrayList<File>();
+    for (File file : files) {
+      if (file.isFile() && (! file.isHidden())) {
+        documentFiles.add(file);
+      }
+    }
+    this.files = documentFiles.toArray(new File[documentFiles.size()]);
+    Arrays.sort(this.files);
+  }
+
+  int size() {
+    return files.length;
+  }
+
+  Document get(int index) throws GateException {
+    try {
+      return Factory.newDocument(files[index].toURI().toURL());
+    }
+    catch (IOException e) {
+      throw new GateException("Cannot load " + files[index], e);
+    }
+  }
+
+  void release(Document document) {
+    Factory.deleteResource(document);
+  }
+
+  void close() {
+    // nothing to do here
+  }
+}
+
+
+class DatastoreSource extends DocumentSource {
+  private DataStore datastore;
+  private Corpus corpus;
+
+  DatastoreSource(URL url, String corpusId) throws GateException {
+    this.datastore = Factory.openDataStore("gate.persist.SerialDataStore", url.toExternalForm());
+    if (corpusId == null) {
+      List<?> ids = datastore.getLrIds("gate.corpora.SerialCorpusImpl");
+      if (ids.isEmpty()) {
+        throw new GateException("No corpus in " + url);
+      }
+      corpusId = ids.get(0).toString();
+    }
+    FeatureMap parameters = Factory.newFeatureMap();
+    parameters.put(DataStore.DATASTORE_FEATURE_NAME, datastore);
+    parameters.put(DataStore.LR_ID_FEATURE_NAME, corpusId);
+    this.corpus = (Corpus) Factory.createResource("gate.corpora.SerialCorpusImpl", parameters);
+  }
+
+  int size() {
+    return corpus.size();
+  }
+
+  Document get(int index) {
+    return corpus.get(index);
+  }
+
+  void release(Document document) {
+    corpus.unloadDocument(document);
+    Factory.deleteResource(document);
+  }
+
+  void close() throws GateException {
+    Factory.deleteResource(corpus);
+    datastore.close();
+  }
+}
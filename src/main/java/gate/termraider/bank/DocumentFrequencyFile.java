@@ -0,0 +1,330 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import gate.termraider.util.Term;
+
+
+/**
+ * The document frequencies of a DocumentFrequencyBank as a stream
+ * of terms in ascending order, so that the files from banks built
+ * separately (e.g., on different machines, from slices of a large
+ * collection) can be merged with a k-way merge without holding
+ * more than one term per file in memory.
+ *
+ * The layout is the magic string, the document count, and then
+ * the terms (string, language code, type and frequency), each
+ * preceded by a 1 byte and the last followed by a 0 byte.  Files
+ * whose names end in .gz are compressed.
+ */
+public class DocumentFrequencyFile {
+
+  private static final byte[] MAGIC = "TRDFRQ01".getBytes(StandardCharsets.US_ASCII);
+
+
+  /**
+   * Save the bank's terms and document frequencies.
+   */
+  public static void write(DocumentFrequencyBank bank, File file) throws IOException {
+    List<Term> terms = new ArrayList<Term>(bank.getTerms());
+    Collections.sort(terms);
+    DataOutputStream output = openOutput(file);
+    try {
+      writeHeader(output, bank.getDocumentCount());
+      for (Term term : terms) {
+        writeTerm(output, term, bank.getFrequencyStrict(term));
+      }
+      output.writeByte(0);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+
+  /**
+   * Copy everything from the reader (e.g., several merged files)
+   * into a new file.
+   * @return the number of terms written
+   */
+  public static int write(Reader reader, File file) throws IOException {
+    int count = 0;
+    DataOutputStream output = openOutput(file);
+    try {
+      writeHeader(output, reader.getDocumentCount());
+      while (reader.next()) {
+        writeTerm(output, reader.getTerm(), reader.getFrequency());
+        count++;
+      }
+      output.writeByte(0);
+    }
+    finally {
+      output.close();
+    }
+    return count;
+  }
+
+
+  /**
+   * @return a reader for one file, or for the sums of the document
+   * counts and frequencies in several files
+   */
+  public static Reader open(List<File> files) throws IOException {
+    List<Reader> readers = new ArrayList<Reader>();
+    try {
+      for (File file : files) {
+        readers.add(new FileReader(file));
+      }
+    }
+    catch (IOException e) {
+      for (Reader reader : readers) {
+        reader.close();
+      }
+      throw e;
+    }
+
+    if (readers.size() == 1) {
+      return readers.get(0);
+    }
+    return new MergingReader(readers);
+  }
+
+
+  public static Reader open(File... files) throws IOException {
+    return open(Arrays.asList(files));
+  }
+
+
+  private static DataOutputStream openOutput(File file) throws IOException {
+    OutputStream stream = new FileOutputStream(file);
+    if (file.getName().endsWith(".gz")) {
+      stream = new GZIPOutputStream(stream, 65536);
+    }
+    return new DataOutputStream(new BufferedOutputStream(stream, 65536));
+  }
+
+
+  private static void writeHeader(DataOutputStream output, int documentCount) throws IOException {
+    output.write(MAGIC);
+    output.writeInt(documentCount);
+  }
+
+
+  private static void writeTerm(DataOutputStream output, Term term, int frequency) throws IOException {
+    output.writeByte(1);
+    writeString(output, term.getTermString());
+    writeString(output, term.getLanguageCode());
+    writeString(output, term.getType());
+    output.writeInt(frequency);
+  }
+
+
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+
+  /**
+   * Reads the terms one at a time, in ascending order.
+   */
+  public static abstract class Reader implements Closeable {
+
+    public abstract int getDocumentCount();
+
+    /**
+     * Move to the next term.
+     * @return false at the end
+     */
+    public abstract boolean next() throws IOException;
+
+    public abstract Term getTerm();
+
+    public abstract int getFrequency();
+  }
+
+
+  private static class FileReader extends Reader {
+    private File file;
+    private DataInputStream input;
+    private int documentCount;
+    private Term term;
+    private int frequency;
+
+    FileReader(File file) throws IOException {
+      this.file = file;
+      InputStream stream = new FileInputStream(file);
+      try {
+        if (file.getName().endsWith(".gz")) {
+          stream = new GZIPInputStream(stream, 65536);
+        }
+        this.input = new DataInputStream(new BufferedInputStream(stream, 65536));
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        if (! Arrays.equals(magic, MAGIC)) {
+          throw new IOException(file + " is not a document frequency file");
+        }
+        this.documentCount = input.readInt();
+      }
+      catch (IOException e) {
+        stream.close();
+        throw e;
+      }
+    }
+
+    public int getDocumentCount() {
+      return this.documentCount;
+    }
+
+    public boolean next() throws IOException {
+      if (input.readByte() == 0) {
+        term = null;
+        return false;
+      }
+
+      Term previous = term;
+      term = new Term(readString(), readString(), readString());
+      frequency = input.readInt();
+      if ( (previous != null) && (previous.compareTo(term) >= 0) ) {
+        throw new IOException(file + " is not in order at " + term);
+      }
+      return true;
+    }
+
+    public Term getTerm() {
+      return this.term;
+    }
+
+    public int getFrequency() {
+      return this.frequency;
+    }
+
+    public void close() throws IOException {
+      input.close();
+    }
+
+    private String readString() throws IOException {
+      byte[] bytes = new byte[input.readInt()];
+      input.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+
+  /**
+   * Merges any number of readers, keeping them in a priority queue
+   * ordered by their current terms.
+   */
+  private static class MergingReader extends Reader {
+    private List<Reader> readers;
+    private PriorityQueue<Reader> queue;
+    private int documentCount;
+    private Term term;
+    private int frequency;
+
+    MergingReader(List<Reader> readers) throws IOException {
+      this.readers = readers;
+      this.queue = new PriorityQueue<Reader>(Math.max(1, readers.size()), new Comparator<Reader>() {
+        public int compare(Reader r0, Reader r1) {
+          return r0.getTerm().compareTo(r1.getTerm());
+        }
+      });
+
+      try {
+        for (Reader reader : readers) {
+          documentCount = Math.addExact(documentCount, reader.getDocumentCount());
+          advance(reader);
+        }
+      }
+      catch (IOException e) {
+        close();
+        throw e;
+      }
+      catch (ArithmeticException e) {
+        close();
+        throw new IOException("Too many documents to merge", e);
+      }
+    }
+
+    public int getDocumentCount() {
+      return this.documentCount;
+    }
+
+    public boolean next() throws IOException {
+      if (queue.isEmpty()) {
+        term = null;
+        return false;
+      }
+
+      Reader first = queue.poll();
+      term = first.getTerm();
+      frequency = first.getFrequency();
+      advance(first);
+      while ( (! queue.isEmpty()) && queue.peek().getTerm().equals(term) ) {
+        Reader reader = queue.poll();
+        frequency += reader.getFrequency();
+        advance(reader);
+      }
+      return true;
+    }
+
+    public Term getTerm() {
+      return this.term;
+    }
+
+    public int getFrequency() {
+      return this.frequency;
+    }
+
+    public void close() throws IOException {
+      IOException exception = null;
+      for (Reader reader : readers) {
+        try {
+          reader.close();
+        }
+        catch (IOException e) {
+          exception = e;
+        }
+      }
+      if (exception != null) {
+        throw exception;
+      }
+    }
+
+    private void advance(Reader reader) throws IOException {
+      if (reader.next()) {
+        queue.add(reader);
+      }
+    }
+  }
+
+}
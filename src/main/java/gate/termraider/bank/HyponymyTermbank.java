@@ -27,8 +27,13 @@ import gate.creole.metadata.CreoleParameter;
 import gate.creole.metadata.CreoleResource;
 import gate.termraider.modes.Normalization;
 import gate.termraider.util.DocumentIdentifier;
+import gate.termraider.util.DocumentTable;
+import gate.termraider.util.PostingList;
+import gate.termraider.util.ScoreBuffer;
 import gate.termraider.util.ScoreType;
+import gate.termraider.util.SubstringIndex;
 import gate.termraider.util.Term;
+import gate.termraider.util.TermIdMap;
 import gate.termraider.util.Utilities;
 
 
@@ -49,8 +54,8 @@ public class HyponymyTermbank extends AbstractTermbank {
 
   
   /* EXTRA DATA FOR ANALYSIS */
-  private Map<Term, Set<String>> termHeads;
-  private Map<Term, Set<String>> termHyponyms;
+  private TermIdMap<Set<String>> termHeads;
+  private TermIdMap<Set<String>> termHyponyms;
   private ScoreType termFrequencyST, hyponymsST, localDocFrequencyST, rawScoreST;
 
   
@@ -65,21 +70,21 @@ public class HyponymyTermbank extends AbstractTermbank {
 
   
   
-  private double calculateOneRawScore(Term term) {
-    Integer hyponyms = Utilities.getStringSetFromMap(termHyponyms, term).size();
-    Integer docFreq = Utilities.getStringSetFromMap(termDocuments, term).size();
-    Utilities.setScoreTermValue(scores, hyponymsST, term, hyponyms);
+  private double calculateOneRawScore(int termId, Integer hyponyms) {
+    Integer docFreq = getLocalDocumentFrequency(termId);
     return docFreq.doubleValue() * (1.0F + hyponyms.doubleValue());
   }
 
   
-  protected void processDocument(Document document, int index) {
-    documentCount++;
+  protected void processDocument(Document document, int index, TermbankPartial partial) {
+    partial.incrementDocumentCount();
     DocumentIdentifier documentSource = Utilities.docIdentifier(document, idDocumentFeature, index);
+    int documentNumber = partial.addDocumentIdentifier(documentSource);
     AnnotationSet candidates = document.getAnnotations(inputASName).get(inputAnnotationTypes);
+    TermIdMap<Set<String>> partialHeads = ((HyponymyTermbankPartial) partial).getTermHeads();
     
     for (Annotation candidate : candidates) {
-      Term term = makeTerm(candidate, document);
+      int termId = makeTermId(candidate, document, partial.getDictionary());
 
       FeatureMap features = candidate.getFeatures();
       String head = Utils.stringFor(document, candidate);
@@ -91,66 +96,135 @@ public class HyponymyTermbank extends AbstractTermbank {
         }
       }
       
-      Utilities.addToMapSet(termDocuments, term, documentSource);
-      Utilities.addToMapSet(termHeads, term, head);
-      Utilities.incrementScoreTermValue(scores, termFrequencyST, term, 1);
+      partial.addOccurrence(termId, documentNumber);
+      Set<String> heads = partialHeads.get(termId);
+      if (heads == null) {
+        heads = new HashSet<String>();
+        partialHeads.put(termId, heads);
+      }
+      heads.add(head);
+    }
+  }
+
+  
+  protected TermbankPartial createPartial() {
+    return new HyponymyTermbankPartial();
+  }
+  
+  
+  protected void mergePartialTerm(TermbankPartial partial, int partialId, int termId) {
+    super.mergePartialTerm(partial, partialId, termId);
+    scores.incrementInt(termFrequencyST, termId, partial.getTermFrequency(partialId));
+    
+    Set<String> partialHeads = ((HyponymyTermbankPartial) partial).getTermHeads().get(partialId);
+    Set<String> heads = termHeads.get(termId);
+    if (heads == null) {
+      termHeads.put(termId, partialHeads);
+    }
+    else {
+      heads.addAll(partialHeads);
     }
   }
 
   
   
   public void calculateScores() {
-    Set<String> headsI, headsJ;
+    findHyponyms();
+    
+    calculateScores(new TermScoreCalculator() {
+      protected boolean includes(int id) {
+        return termHeads.get(id) != null;
+      }
+
+      protected void calculate(int id, Term term, ScoreBuffer buffer) {
+        int hyponyms = termHyponyms.get(id).size();
+        buffer.setInt(hyponymsST, id, hyponyms);
+        double rawScore = calculateOneRawScore(id, hyponyms);
+        double normalized = Normalization.calculate(normalization, rawScore);
+        buffer.setDouble(rawScoreST, id, rawScore);
+        buffer.setDouble(getDefaultScoreType(), id, normalized);
+        int localDF = getLocalDocumentFrequency(id);
+        buffer.setInt(localDocFrequencyST, id, localDF);
+      }
+    });
     
-    for (Map.Entry<Term, Set<String>> entryI : termHeads.entrySet()) {
-      Term termI = entryI.getKey();
-      headsI = entryI.getValue();
-
-      for (Map.Entry<Term, Set<String>> entryJ : termHeads.entrySet()) {
-    	Term termJ = entryJ.getKey();
-        if (termJ.getTermString().contains(termI.getTermString())
-                && (! termI.equals(termJ))) {
-          headsJ = entryJ.getValue();
-          
-          hyponymLoop:
+    if (debugMode) {
+      System.out.println("Termbank: nbr of terms = " + termPostings.size());
+    }
+  }
+  
+  
+  /**
+   * Term J is a hyponym of term I if J's string contains I's and
+   * one of I's heads ends with one of J's.  Rather than comparing
+   * every pair of terms, index the distinct term strings and look
+   * up the ones that contain each string.
+   */
+  private void findHyponyms() {
+    Map<String, Integer> stringNumbers = new HashMap<String, Integer>();
+    List<String> strings = new ArrayList<String>();
+    List<List<Integer>> termsByString = new ArrayList<List<Integer>>();
+    for (int id = 0 ; id < scores.size() ; id++) {
+      if (termHeads.get(id) == null) {
+        continue;
+      }
+      String string = scores.getTerm(id).getTermString();
+      Integer number = stringNumbers.get(string);
+      if (number == null) {
+        number = strings.size();
+        stringNumbers.put(string, number);
+        strings.add(string);
+        termsByString.add(new ArrayList<Integer>());
+      }
+      termsByString.get(number).add(id);
+    }
+    
+    SubstringIndex index = new SubstringIndex(strings);
+    for (int s = 0 ; s < strings.size() ; s++) {
+      int[] containing = index.findContaining(strings.get(s));
+      
+      for (int idI : termsByString.get(s)) {
+        Set<String> headsI = termHeads.get(idI);
+        Term termI = null;
+        
+        for (int c : containing) {
+          stringLoop:
+          for (int idJ : termsByString.get(c)) {
+            if (idJ == idI) {
+              continue;
+            }
+            
             for (String headI : headsI) {
-              for (String headJ : headsJ) {
+              for (String headJ : termHeads.get(idJ)) {
                 if (headI.endsWith(headJ)) {
-                  Utilities.addToMapSet(termHyponyms, termI, termJ.getTermString());
-                  break hyponymLoop;
+                  if (termI == null) {
+                    termI = scores.getTerm(idI);
+                  }
+                  // the other terms with this string add nothing new
+                  Utilities.addToMapSet(termHyponyms, termI, strings.get(c));
+                  break stringLoop;
                 }
               }
             }
+          }
+        }
+        
+        // so that every term has a set, even if it is empty
+        if (termHyponyms.get(idI) == null) {
+          termHyponyms.put(idI, new HashSet<String>());
         }
       }
     }
-    
-    for (Term term : termHeads.keySet()) {
-      this.languages.add(term.getLanguageCode());
-      this.types.add(term.getType());
-      
-      double rawScore = calculateOneRawScore(term);
-      double normalized = Normalization.calculate(normalization, rawScore);
-      Utilities.setScoreTermValue(scores, rawScoreST, term, rawScore);
-      Utilities.setScoreTermValue(scores, getDefaultScoreType(), term, normalized);
-      int localDF = this.termDocuments.get(term).size();
-      Utilities.setScoreTermValue(scores, localDocFrequencyST, term, localDF);
-    }
-    
-    if (debugMode) {
-      System.out.println("Termbank: nbr of terms = " + termDocuments.size());
-    }
   }
   
   
   protected void resetScores() {
-    scores = new HashMap<ScoreType, Map<Term,Number>>();
-    for (ScoreType st : scoreTypes) {
-      scores.put(st, new HashMap<Term, Number>());
-    }
-    termHeads       = new HashMap<Term, Set<String>>();
-    termHyponyms    = new HashMap<Term, Set<String>>();
-    termDocuments   = new HashMap<Term, Set<DocumentIdentifier>>();
+    dictionary = newDictionary();
+    scores = newScoreStore(dictionary);
+    termHeads       = new TermIdMap<Set<String>>(dictionary);
+    termHyponyms    = new TermIdMap<Set<String>>(dictionary);
+    documentTable   = new DocumentTable();
+    termPostings    = new TermIdMap<PostingList>(dictionary);
     languages = new HashSet<String>();
     types = new HashSet<String>();
   }
@@ -206,3 +280,19 @@ public class HyponymyTermbank extends AbstractTermbank {
   }
 
 }
+
+
+class HyponymyTermbankPartial extends TermbankPartial {
+  
+  private TermIdMap<Set<String>> termHeads;
+  
+  public HyponymyTermbankPartial() {
+    super();
+    this.termHeads = new TermIdMap<Set<String>>(dictionary);
+  }
+  
+  public TermIdMap<Set<String>> getTermHeads() {
+    return this.termHeads;
+  }
+  
+}
@@ -11,7 +11,6 @@
  */
 package gate.termraider.bank;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -24,6 +23,7 @@ import gate.Document;
 import gate.creole.metadata.CreoleParameter;
 import gate.creole.metadata.CreoleResource;
 import gate.termraider.util.DocumentIdentifier;
+import gate.termraider.util.LongSet;
 import gate.termraider.util.Term;
 import gate.termraider.util.UnorderedTermPair;
 import gate.termraider.util.Utilities;
@@ -48,75 +48,128 @@ public class PMIBank extends AbstractPairbank {
 
   
   private int totalCount, totalPairCount;
-  private Set<Set<Integer>> seenCombinations;
-  private Set<Integer> seen;
+  private transient LongSet seenCombinations;
   private Map<Term, Set<DocumentIdentifier>> termDocuments;
   protected Map<Term, Integer> termCount;
 
   
   
+  /** Walk the inner annotations in document order, one window of
+   * outer annotations at a time, and process each compatible pair
+   * that falls inside a window once.  Pairs that were both in the
+   * previous window have already been processed, so only pairs with
+   * at least one annotation new to the window are examined.
+   */
   protected void addData(Document document, int index) {
     // TODO: add support for the doc ID feature
     DocumentIdentifier documentSource = Utilities.docIdentifier(document, null, index);
-    /** Collocations that have already been processed in this document
-     * (each collocation is a pair of IDs for a Token annotation), to avoid counting
-     * them again.     */
-    seenCombinations = new HashSet<Set<Integer>>();
-    
-    /** IDs of annotations (Tokens) that have already been processed in this document, to avoid
-     * counting them again.     */
-    seen = new HashSet<Integer>();
     
     AnnotationSet inputAS = document.getAnnotations(inputASName);
-    AnnotationSet innerAnnotations = inputAS.get(innerAnnotationTypes);
     List<Annotation> sentences = gate.Utils.inDocumentOrder(inputAS.get(outerAnnotationType));
     
     if (sentences.isEmpty()) {
       return;
     }
-    
-    if (sentences.size() <= outerAnnotationWindow) {
-      processWindow(sentences, innerAnnotations, document, documentSource);
-      return;
+
+    List<Annotation> inners = gate.Utils.inDocumentOrder(inputAS.get(innerAnnotationTypes));
+    int nbrInners = inners.size();
+    long[] starts = new long[nbrInners];
+    long[] ends = new long[nbrInners];
+    for (int i = 0 ; i < nbrInners ; i++) {
+      starts[i] = inners.get(i).getStartNode().getOffset();
+      ends[i] = inners.get(i).getEndNode().getOffset();
     }
-    
-    List<Annotation> window = new ArrayList<Annotation>();
-    while (window.size() < outerAnnotationWindow) {
-      window.add(sentences.remove(0));
+
+    /* Terms made so far, and whether each annotation's term has been
+     * counted, by position in document order     */
+    Term[] terms = new Term[nbrInners];
+    boolean[] counted = new boolean[nbrInners];
+
+    /* Collocations (pairs of annotation IDs) that have already been 
+     * processed in this document.  Only needed when the windows are
+     * not in order, e.g. when the outer annotations are nested.  */
+    if (seenCombinations == null) {
+      seenCombinations = new LongSet();
     }
+    seenCombinations.clear();
+    
+    int window = Math.max(1, outerAnnotationWindow);
+    int nbrWindows = Math.max(1, sentences.size() - window + 1);
+    int[] members = new int[nbrInners];
+    int[] newMembers = new int[nbrInners];
+    long previousStart = Long.MAX_VALUE;
+    long previousEnd = Long.MIN_VALUE;
     
-    while (! sentences.isEmpty()) {
-      processWindow(window, innerAnnotations, document, documentSource);
-      window.remove(0);
-      window.add(sentences.remove(0));
+    for (int w = 0 ; w < nbrWindows ; w++) {
+      long start = sentences.get(w).getStartNode().getOffset();
+      long end = sentences.get(Math.min(w + window, sentences.size()) - 1).getEndNode().getOffset();
+
+      // members of the window, and which of them were not in the previous one;
+      // like getContainedAnnotations, an annotation starting at the window's
+      // end offset (which can only be an empty one) is not in the window
+      int nbrMembers = 0, nbrNew = 0;
+      for (int i = firstStartingAt(starts, start) ; (i < nbrInners) && (starts[i] < end) ; i++) {
+        if (ends[i] <= end) {
+          if ( (starts[i] < previousStart) || (ends[i] > previousEnd) ) {
+            newMembers[nbrNew++] = nbrMembers;
+          }
+          members[nbrMembers++] = i;
+        }
+      }
+      
+      // pairs in document order, as long as one of them is new
+      int nextNew = 0;
+      for (int a = 0 ; a < nbrMembers ; a++) {
+        if ( (nextNew < nbrNew) && (newMembers[nextNew] == a) ) {
+          nextNew++;
+          for (int b = a + 1 ; b < nbrMembers ; b++) {
+            processPair(inners, members[a], members[b], terms, counted, document, documentSource);
+          }
+        }
+        else {
+          for (int n = nextNew ; n < nbrNew ; n++) {
+            processPair(inners, members[a], members[newMembers[n]], terms, counted, document, documentSource);
+          }
+        }
+      }
+      
+      previousStart = start;
+      previousEnd = end;
     }
-    processWindow(window, innerAnnotations, document, documentSource);
   }
   
   
-  /** Scan a window of sentences and process each pair of terms in the window.
-   * Skip any pair of instances that has already been processed (e.g., both terms are in
-   * the same sentence and were processed already when that sentence was added
-   * to the end of the window.  
-   * @param window
-   * @param inners (already restricted by types)
-   * @param document
-   * @param source
+  /**
+   * @return the position of the first annotation starting at or 
+   * after the offset
    */
-  private void processWindow(List<Annotation> window, AnnotationSet inners, Document document, DocumentIdentifier source) {
-    Long start = window.get(0).getStartNode().getOffset();
-    Long end = window.get(window.size() - 1).getEndNode().getOffset();
-    List<Annotation> terms = gate.Utils.inDocumentOrder(inners.getContained(start, end));
-    for (int i = 0 ; i < (terms.size() - 1) ; i++)  {
-      Annotation termI = terms.get(i);
-      for (int j = i+1 ; j < terms.size() ; j++)  {
-        Annotation termJ = terms.get(j);
-        // compatibleTerms checks for overlaps too
-        if ( combinationUnseen(termI, termJ) && compatibleTerms(termI, termJ) ) {
-          processTerms(termI, termJ, document, source);
-        }
+  private static int firstStartingAt(long[] starts, long offset) {
+    int low = 0, high = starts.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (starts[middle] < offset) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
       }
     }
+    return low;
+  }
+
+  
+  /**
+   * Process a pair of annotations (by position in document order)
+   * if they are compatible and the pair hasn't been processed already.
+   */
+  private void processPair(List<Annotation> inners, int i, int j, Term[] terms, boolean[] counted,
+          Document document, DocumentIdentifier source) {
+    Annotation annI = inners.get(i);
+    Annotation annJ = inners.get(j);
+    // compatibleTerms checks for overlaps too
+    if ( compatibleTerms(annI, annJ) && combinationUnseen(annI, annJ) ) {
+      processTerms(i, j, terms, counted, document, inners, source);
+    }
   }
 
   
@@ -124,28 +177,29 @@ public class PMIBank extends AbstractPairbank {
    * For a pair of annotations (terms), increment the term count if this instance (annotation)
    * of the term hasn't been counted already.  This method is called only if this
    * pair-instance hasn't been counted already.
-   * @param ann0
-   * @param ann1
-   * @param document
-   * @param source
    */
-  private void processTerms(Annotation ann0, Annotation ann1, Document document, DocumentIdentifier source) {
-    Term term0 = makeTerm(ann0, document);
-    Term term1 = makeTerm(ann1, document);
-    UnorderedTermPair pair = new UnorderedTermPair(term0, term1);
+  private void processTerms(int i, int j, Term[] terms, boolean[] counted, Document document,
+          List<Annotation> inners, DocumentIdentifier source) {
+    Term term0 = countTerm(i, terms, counted, document, inners, source);
+    Term term1 = countTerm(j, terms, counted, document, inners, source);
     
-    if (unseen(ann0)) {
-      incrementTermCount(term0, source);
-      totalCount++;
+    UnorderedTermPair pair = new UnorderedTermPair(term0, term1);
+    incrementPairCount(pair, source);
+    totalPairCount++;
+  }
+  
+  
+  private Term countTerm(int k, Term[] terms, boolean[] counted, Document document,
+          List<Annotation> inners, DocumentIdentifier source) {
+    if (terms[k] == null) {
+      terms[k] = makeTerm(inners.get(k), document);
     }
-    
-    if (unseen(ann1)) {
-      incrementTermCount(term1, source);
+    if (! counted[k]) {
+      counted[k] = true;
+      incrementTermCount(terms[k], source);
       totalCount++;
     }
-    
-    incrementPairCount(pair, source);
-    totalPairCount++;
+    return terms[k];
   }
   
   
@@ -186,15 +240,10 @@ public class PMIBank extends AbstractPairbank {
   
   
   private boolean combinationUnseen(Annotation a0, Annotation a1) {
-    Set<Integer> combo = new HashSet<Integer>();
-    combo.add(a0.getId());
-    combo.add(a1.getId());
-    if (seenCombinations.contains(combo)) {
-      return false;
-    }
-    // implied else
-    seenCombinations.add(combo);
-    return true;
+    long id0 = a0.getId();
+    long id1 = a1.getId();
+    long combo = (id0 < id1) ? (id0 << 32) | id1 : (id1 << 32) | id0;
+    return seenCombinations.add(combo);
   }
   
   
@@ -222,16 +271,6 @@ public class PMIBank extends AbstractPairbank {
   
   
   
-  private boolean unseen(Annotation anno) {
-    if (seen.contains(anno.getId())) {
-      return false;
-    }
-    // implied else
-    seen.add(anno.getId());
-    return true;
-  }
-  
-  
   public int getTotalCount() {
     return this.totalCount;
   }
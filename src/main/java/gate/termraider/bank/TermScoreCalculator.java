@@ -0,0 +1,37 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import gate.termraider.util.ScoreBuffer;
+import gate.termraider.util.Term;
+
+
+/**
+ * The per-term part of a termbank's calculateScores(), which
+ * AbstractTermbank.calculateScores(TermScoreCalculator) runs on
+ * ranges of term ids in several threads.  It may read the bank's
+ * data but must only write to the buffer.
+ */
+public abstract class TermScoreCalculator {
+
+  /**
+   * @return false to skip the term (and leave its scores alone)
+   */
+  protected boolean includes(int termId) {
+    return true;
+  }
+
+
+  /**
+   * Put the term's scores in the buffer.
+   */
+  protected abstract void calculate(int termId, Term term, ScoreBuffer buffer);
+
+}
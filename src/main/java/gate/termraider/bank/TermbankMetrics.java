@@ -0,0 +1,330 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import gate.termraider.util.PostingList;
+import gate.termraider.util.ScoreStore;
+import gate.termraider.util.TermIdMap;
+
+
+/**
+ * Progress, timing and size figures for one termbank, updated while
+ * it is built and whenever its scores change.  While the termbank
+ * exists they are registered with the platform MBeanServer as
+ * gate.termraider:type=(class name),id=(number), so that a long
+ * build can be watched from jconsole or any other JMX client.
+ *
+ * Only the termbank changes the figures; any thread can read them.
+ */
+public class TermbankMetrics implements TermbankMetricsMBean {
+
+  public enum Phase {
+    CREATED("created"),
+    PREPARE("preparing"),
+    PROCESS_CORPORA("processing corpora"),
+    CALCULATE_SCORES("calculating scores"),
+    LOAD_SNAPSHOT("loading snapshot"),
+    READY("ready");
+
+    private String description;
+
+    Phase(String description) {
+      this.description = description;
+    }
+
+    public String getDescription() {
+      return this.description;
+    }
+  }
+
+  // points sampled on the distinct-term growth curve
+  private static final int GROWTH_SAMPLES = 100;
+  // documents between progress events, as a fraction of the total
+  private static final int PROGRESS_STEPS = 100;
+
+  private static final AtomicInteger nextId = new AtomicInteger(0);
+
+  private AbstractTermbank bank;
+  private ObjectName objectName;
+
+  private volatile Phase phase;
+  private volatile long phaseStart;
+  private AtomicLongArray phaseNanos;
+
+  private AtomicInteger documentsProcessed;
+  private volatile int documentsTotal;
+  private volatile int progressStep;
+  private volatile long processingStart, processingEnd;
+
+  private volatile int distinctTerms;
+  private volatile int[] growthDocuments, growthTerms;
+  private volatile long scoreHeapBytes, scoreOffHeapBytes, postingHeapBytes;
+
+
+  public TermbankMetrics(AbstractTermbank bank) {
+    this.bank = bank;
+    this.phase = Phase.CREATED;
+    this.phaseStart = System.nanoTime();
+    this.phaseNanos = new AtomicLongArray(Phase.values().length);
+    this.documentsProcessed = new AtomicInteger(0);
+    this.progressStep = 1;
+    this.growthDocuments = new int[0];
+    this.growthTerms = new int[0];
+  }
+
+
+  /**
+   * Publish the figures through JMX.  If that fails, the termbank
+   * still works, so the problem is only reported.
+   */
+  public synchronized void register() {
+    if (objectName != null) {
+      return;
+    }
+    try {
+      ObjectName name = new ObjectName("gate.termraider:type=" + bank.getClass().getSimpleName()
+              + ",id=" + nextId.incrementAndGet());
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      objectName = name;
+    }
+    catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+
+
+  public synchronized void unregister() {
+    if (objectName == null) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    }
+    catch (JMException e) {
+      e.printStackTrace();
+    }
+    objectName = null;
+  }
+
+
+  /**
+   * @return the name the figures are registered under, or null
+   */
+  public synchronized ObjectName getObjectName() {
+    return this.objectName;
+  }
+
+
+  /**
+   * End the current phase (adding its time to that phase's total)
+   * and start the next one.
+   */
+  void startPhase(Phase next) {
+    long now = System.nanoTime();
+    phaseNanos.addAndGet(phase.ordinal(), now - phaseStart);
+    if (phase == Phase.PROCESS_CORPORA) {
+      processingEnd = now;
+    }
+    if (next == Phase.PROCESS_CORPORA) {
+      processingStart = now;
+      processingEnd = 0;
+    }
+    phaseStart = now;
+    phase = next;
+  }
+
+
+  /**
+   * Add to the number of documents expected in this phase.
+   */
+  void addDocumentsTotal(int documents) {
+    documentsTotal += documents;
+    progressStep = Math.max(1, documentsTotal / PROGRESS_STEPS);
+  }
+
+
+  /**
+   * Count one more document (from any thread).
+   * @return true if it is time for a progress event
+   */
+  boolean documentProcessed() {
+    int processed = documentsProcessed.incrementAndGet();
+    return (processed % progressStep == 0) || (processed == documentsTotal);
+  }
+
+
+  int getPercentDone() {
+    int total = documentsTotal;
+    if (total == 0) {
+      return 100;
+    }
+    return (int) Math.min(100L, 100L * documentsProcessed.get() / total);
+  }
+
+
+  void setDistinctTerms(int terms) {
+    this.distinctTerms = terms;
+  }
+
+
+  /**
+   * Update the term count and estimate the heap used by the scores
+   * and postings; this looks at every term's postings.
+   */
+  void measureSizes(ScoreStore scores, TermIdMap<PostingList> termPostings) {
+    int size = scores.size();
+    long postingBytes = 16 + 8L * size;
+    for (int id = 0 ; id < size ; id++) {
+      PostingList postings = termPostings.get(id);
+      if (postings != null) {
+        postingBytes += postings.estimateHeapBytes();
+      }
+    }
+    this.distinctTerms = size;
+    this.scoreHeapBytes = scores.estimateHeapBytes();
+    this.scoreOffHeapBytes = scores.estimateOffHeapBytes();
+    this.postingHeapBytes = postingBytes;
+  }
+
+
+  /**
+   * Work out how the number of distinct terms grew with the number
+   * of documents, from the first document in each term's postings
+   * (so terms from other sources, such as frequency files, are not
+   * counted).  About GROWTH_SAMPLES points are kept.
+   */
+  void measureTermGrowth(TermIdMap<PostingList> termPostings, int size) {
+    int[] newTerms = new int[64];
+    int documents = 0;
+    for (int id = 0 ; id < size ; id++) {
+      PostingList postings = termPostings.get(id);
+      if ( (postings == null) || (postings.size() == 0) ) {
+        continue;
+      }
+      int first = postings.cursor().next();
+      if (first >= newTerms.length) {
+        newTerms = Arrays.copyOf(newTerms, Math.max(newTerms.length * 2, first + 1));
+      }
+      newTerms[first]++;
+      documents = Math.max(documents, first + 1);
+    }
+
+    int step = Math.max(1, (documents + GROWTH_SAMPLES - 1) / GROWTH_SAMPLES);
+    int samples = (documents + step - 1) / step;
+    int[] sampleDocuments = new int[samples];
+    int[] sampleTerms = new int[samples];
+    int terms = 0;
+    int sample = 0;
+    for (int d = 0 ; d < documents ; d++) {
+      terms += newTerms[d];
+      if ( ((d + 1) % step == 0) || (d == documents - 1) ) {
+        sampleDocuments[sample] = d + 1;
+        sampleTerms[sample] = terms;
+        sample++;
+      }
+    }
+    this.growthDocuments = sampleDocuments;
+    this.growthTerms = sampleTerms;
+  }
+
+
+  /* MBean attributes */
+
+  public String getBankName() {
+    return bank.getName();
+  }
+
+  public String getPhase() {
+    return phase.getDescription();
+  }
+
+  public int getDocumentsProcessed() {
+    return documentsProcessed.get();
+  }
+
+  public int getDocumentsTotal() {
+    return this.documentsTotal;
+  }
+
+  public double getDocumentsPerSecond() {
+    long start = processingStart;
+    if (start == 0) {
+      return 0.0;
+    }
+    long end = processingEnd;
+    long nanos = ((end == 0) ? System.nanoTime() : end) - start;
+    if (nanos <= 0) {
+      return 0.0;
+    }
+    return documentsProcessed.get() * 1.0e9 / nanos;
+  }
+
+  public long getPrepareMillis() {
+    return phaseMillis(Phase.PREPARE);
+  }
+
+  public long getProcessCorporaMillis() {
+    return phaseMillis(Phase.PROCESS_CORPORA);
+  }
+
+  public long getCalculateScoresMillis() {
+    return phaseMillis(Phase.CALCULATE_SCORES);
+  }
+
+  public long getLoadSnapshotMillis() {
+    return phaseMillis(Phase.LOAD_SNAPSHOT);
+  }
+
+  public int getDistinctTerms() {
+    return this.distinctTerms;
+  }
+
+  public int[] getTermGrowthDocuments() {
+    return this.growthDocuments.clone();
+  }
+
+  public int[] getTermGrowthTerms() {
+    return this.growthTerms.clone();
+  }
+
+  public long getScoreHeapBytes() {
+    return this.scoreHeapBytes;
+  }
+
+  public long getScoreOffHeapBytes() {
+    return this.scoreOffHeapBytes;
+  }
+
+  public long getPostingHeapBytes() {
+    return this.postingHeapBytes;
+  }
+
+
+  private long phaseMillis(Phase which) {
+    long nanos = phaseNanos.get(which.ordinal());
+    if (phase == which) {
+      nanos += System.nanoTime() - phaseStart;
+    }
+    return nanos / 1000000L;
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+
+/**
+ * The JMX view of a TermbankMetrics.  Times are in milliseconds
+ * (for the current phase, so far) and sizes in bytes.
+ */
+public interface TermbankMetricsMBean {
+
+  public String getBankName();
+
+  public String getPhase();
+
+  public int getDocumentsProcessed();
+
+  public int getDocumentsTotal();
+
+  public double getDocumentsPerSecond();
+
+  public long getPrepareMillis();
+
+  public long getProcessCorporaMillis();
+
+  public long getCalculateScoresMillis();
+
+  public long getLoadSnapshotMillis();
+
+  public int getDistinctTerms();
+
+  /**
+   * @return the numbers of documents at which getTermGrowthTerms()
+   * was sampled
+   */
+  public int[] getTermGrowthDocuments();
+
+  /**
+   * @return the number of distinct terms in the first so many
+   * documents (see getTermGrowthDocuments())
+   */
+  public int[] getTermGrowthTerms();
+
+  public long getScoreHeapBytes();
+
+  public long getScoreOffHeapBytes();
+
+  public long getPostingHeapBytes();
+
+}
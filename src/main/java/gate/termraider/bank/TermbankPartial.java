@@ -0,0 +1,110 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import gate.termraider.util.DocumentIdentifier;
+import gate.termraider.util.DocumentTable;
+import gate.termraider.util.PostingList;
+import gate.termraider.util.TermDictionary;
+import gate.termraider.util.TermIdMap;
+
+
+/**
+ * Term counts and document postings collected from some of the
+ * documents in a corpus.  Each worker thread fills its own partial,
+ * so nothing in here is synchronized; the termbank merges the
+ * partials once all the documents have been processed.
+ *
+ * A partial has its own TermDictionary and DocumentTable, and the
+ * term ids and document numbers used here are local to it.
+ */
+public class TermbankPartial {
+
+  protected int documentCount;
+  protected TermDictionary dictionary;
+  protected DocumentTable documentTable;
+  protected int[] termFrequencies;
+  protected TermIdMap<PostingList> termPostings;
+
+
+  public TermbankPartial() {
+    this.documentCount = 0;
+    this.dictionary = new TermDictionary();
+    this.documentTable = new DocumentTable();
+    this.termFrequencies = new int[1024];
+    this.termPostings = new TermIdMap<PostingList>(dictionary);
+  }
+
+
+  public void incrementDocumentCount() {
+    this.documentCount++;
+  }
+
+
+  /**
+   * @return the document's number in this partial's DocumentTable
+   */
+  public int addDocumentIdentifier(DocumentIdentifier document) {
+    return this.documentTable.add(document);
+  }
+
+
+  /**
+   * Count one occurrence of the term and record the document
+   * it was found in.
+   * @param termId the term's id in this partial's dictionary
+   * @param documentNumber the number of the document (or segment)
+   * containing it, from addDocumentIdentifier
+   */
+  public void addOccurrence(int termId, int documentNumber) {
+    if (termId >= termFrequencies.length) {
+      int[] newFrequencies = new int[Math.max(termFrequencies.length * 2, termId + 1)];
+      System.arraycopy(termFrequencies, 0, newFrequencies, 0, termFrequencies.length);
+      termFrequencies = newFrequencies;
+    }
+    termFrequencies[termId]++;
+    addDocument(termId, documentNumber);
+  }
+
+
+  public void addDocument(int termId, int documentNumber) {
+    PostingList postings = termPostings.get(termId);
+    if (postings == null) {
+      postings = new PostingList();
+      termPostings.put(termId, postings);
+    }
+    postings.add(documentNumber);
+  }
+
+
+  public int getDocumentCount() {
+    return this.documentCount;
+  }
+
+  public TermDictionary getDictionary() {
+    return this.dictionary;
+  }
+
+  public DocumentTable getDocumentTable() {
+    return this.documentTable;
+  }
+
+  public int getTermFrequency(int termId) {
+    if (termId >= termFrequencies.length) {
+      return 0;
+    }
+    return this.termFrequencies[termId];
+  }
+
+  public PostingList getPostings(int termId) {
+    return this.termPostings.get(termId);
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import gate.termraider.util.DocumentTable;
+import gate.termraider.util.MappedFile;
+import gate.termraider.util.PostingList;
+import gate.termraider.util.ScoreStore;
+import gate.termraider.util.SnapshotOutput;
+import gate.termraider.util.TermDictionary;
+
+
+/**
+ * Binary snapshot of a termbank's dictionary, score columns, 
+ * document table and postings.  Loading a snapshot maps the file
+ * into memory instead of reading it: only the document table is
+ * copied onto the heap, and the terms, scores and postings are read 
+ * from the file as they are used.
+ * 
+ * The layout (big-endian) is the magic string, the four sections,
+ * a directory (termbank class, document count, languages, types and 
+ * the sections' offsets) and finally the directory's offset followed
+ * by the magic string again.
+ * 
+ * Intermediate data (such as the HyponymyTermbank's heads) are not
+ * saved, so a loaded termbank cannot recalculate its scores.
+ */
+public class TermbankSnapshot {
+
+  private static final byte[] MAGIC = "TRSNAP01".getBytes(StandardCharsets.US_ASCII);
+
+
+  public static void save(AbstractTermbank termbank, File file) throws IOException {
+    SnapshotOutput output = new SnapshotOutput(file);
+    try {
+      output.write(MAGIC, 0, MAGIC.length);
+      
+      output.align(8);
+      long dictionaryStart = output.position();
+      termbank.dictionary.write(output);
+      
+      output.align(8);
+      long scoresStart = output.position();
+      termbank.scores.write(output);
+      
+      output.align(8);
+      long documentsStart = output.position();
+      termbank.documentTable.write(output);
+      
+      output.align(8);
+      long postingsStart = output.position();
+      PostingList.write(termbank.termPostings, termbank.dictionary.size(), output);
+      
+      output.align(8);
+      long directoryStart = output.position();
+      output.writeString(termbank.getClass().getName());
+      output.writeInt(termbank.documentCount);
+      writeStrings(termbank.languages, output);
+      writeStrings(termbank.types, output);
+      output.align(8);
+      output.writeLong(dictionaryStart);
+      output.writeLong(scoresStart);
+      output.writeLong(documentsStart);
+      output.writeLong(postingsStart);
+      
+      output.writeLong(directoryStart);
+      output.write(MAGIC, 0, MAGIC.length);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+
+  /**
+   * Replace the termbank's data with the snapshot's.  The termbank's
+   * score types must already be initialized, and must match the
+   * snapshot's.
+   */
+  public static void load(AbstractTermbank termbank, File file) throws IOException {
+    MappedFile mapped = new MappedFile(file);
+    long length = mapped.length();
+    if ( (length < 2 * MAGIC.length + 8) || (! hasMagic(mapped, 0L)) 
+            || (! hasMagic(mapped, length - MAGIC.length)) ) {
+      throw new IOException(file + " is not a termbank snapshot");
+    }
+    
+    MappedFile.Input input = mapped.input(mapped.getLong(length - MAGIC.length - 8));
+    String className = input.readString();
+    if (! className.equals(termbank.getClass().getName())) {
+      throw new IOException(file + " is a snapshot of a " + className + ", not a " + termbank.getClass().getName());
+    }
+    int documentCount = input.readInt();
+    readStrings(input, termbank.languages);
+    readStrings(input, termbank.types);
+    input.align(8);
+    long dictionaryStart = input.readLong();
+    long scoresStart = input.readLong();
+    long documentsStart = input.readLong();
+    long postingsStart = input.readLong();
+    
+    TermDictionary dictionary = TermDictionary.map(mapped, dictionaryStart);
+    termbank.dictionary = dictionary;
+    termbank.scores = ScoreStore.map(mapped, scoresStart, dictionary, termbank.scoreTypes);
+    termbank.documentTable = DocumentTable.read(mapped.input(documentsStart));
+    termbank.termPostings = PostingList.map(mapped, postingsStart, dictionary);
+    termbank.documentCount = documentCount;
+  }
+
+
+  private static boolean hasMagic(MappedFile mapped, long position) {
+    for (int i = 0 ; i < MAGIC.length ; i++) {
+      if (mapped.getByte(position + i) != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private static void writeStrings(Set<String> strings, SnapshotOutput output) throws IOException {
+    output.writeInt(strings.size());
+    for (String string : strings) {
+      output.writeString(string);
+    }
+  }
+
+
+  private static void readStrings(MappedFile.Input input, Set<String> strings) {
+    int count = input.readInt();
+    for (int i = 0 ; i < count ; i++) {
+      strings.add(input.readString());
+    }
+  }
+
+}
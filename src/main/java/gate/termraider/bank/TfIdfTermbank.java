@@ -11,11 +11,15 @@
  */
 package gate.termraider.bank;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import gate.Annotation;
 import gate.AnnotationSet;
@@ -30,8 +34,13 @@ import gate.termraider.modes.IdfCalculation;
 import gate.termraider.modes.Normalization;
 import gate.termraider.modes.TfCalculation;
 import gate.termraider.util.DocumentIdentifier;
+import gate.termraider.util.DocumentTable;
+import gate.termraider.util.PostingList;
+import gate.termraider.util.ScoreBuffer;
 import gate.termraider.util.ScoreType;
 import gate.termraider.util.Term;
+import gate.termraider.util.TermDictionary;
+import gate.termraider.util.TermIdMap;
 import gate.termraider.util.Utilities;
 
 
@@ -49,25 +58,186 @@ public class TfIdfTermbank extends AbstractTermbank {
   private IdfCalculation idfCalculation;
   private Normalization normalization;
   private DocumentFrequencyBank docFreqSource;
+  private boolean keepDocumentTerms;
   
   /* EXTRA DATA */
   private ScoreType rawScoreST, termFrequencyST, localDocFrequencyST, refDocFrequencyST;
+  // true if the DFB was created from this termbank's corpora
+  private boolean ownDocFreqSource = false;
+  // for each document number: (term id, frequency) pairs
+  private List<int[]> documentTerms;
   
   
   
-  protected void processDocument(Document document, int index) {
-    documentCount++;
+  protected void processDocument(Document document, int index, TermbankPartial partial) {
+    partial.incrementDocumentCount();
     DocumentIdentifier documentSource = Utilities.docIdentifier(document, idDocumentFeature, index);
+    int documentNumber = partial.addDocumentIdentifier(documentSource);
     AnnotationSet candidates = document.getAnnotations(inputASName).get(inputAnnotationTypes);
 
+    int[] termIds = new int[candidates.size()];
+    int i = 0;
     for (Annotation candidate : candidates) {
-      Term term = makeTerm(candidate, document);
-      Utilities.incrementScoreTermValue(scores, termFrequencyST, term, 1);
-      Utilities.addToMapSet(termDocuments, term, documentSource);
+      int termId = makeTermId(candidate, document, partial.getDictionary());
+      partial.addOccurrence(termId, documentNumber);
+      termIds[i++] = termId;
+    }
+    
+    if (keepDocumentTerms) {
+      ((TfIdfTermbankPartial) partial).addDocumentTerms(documentNumber, termIds);
+    }
+  }
+
+
+  protected TermbankPartial createPartial() {
+    if (keepDocumentTerms) {
+      return new TfIdfTermbankPartial();
+    }
+    return super.createPartial();
+  }
+  
+  
+  protected void mergePartial(TermbankPartial partial) {
+    super.mergePartial(partial);
+    if (! keepDocumentTerms) {
+      return;
+    }
+    
+    // convert each document's partial term ids to (id, frequency) pairs
+    List<int[]> partialDocumentTerms = ((TfIdfTermbankPartial) partial).getDocumentTerms();
+    DocumentTable partialDocuments = partial.getDocumentTable();
+    TermDictionary partialTerms = partial.getDictionary();
+    for (int n = 0 ; n < partialDocumentTerms.size() ; n++) {
+      int[] termIds = partialDocumentTerms.get(n);
+      for (int i = 0 ; i < termIds.length ; i++) {
+        termIds[i] = dictionary.getId(partialTerms.getTerm(termIds[i]));
+      }
+      Arrays.sort(termIds);
+      
+      int[] pairs = new int[termIds.length * 2];
+      int k = 0;
+      for (int i = 0 ; i < termIds.length ; i++) {
+        if ( (k > 0) && (pairs[k - 2] == termIds[i]) ) {
+          pairs[k - 1]++;
+        }
+        else {
+          pairs[k++] = termIds[i];
+          pairs[k++] = 1;
+        }
+      }
+      
+      int documentNumber = documentTable.getNumber(partialDocuments.get(n));
+      while (documentTerms.size() <= documentNumber) {
+        documentTerms.add(null);
+      }
+      int[] previous = documentTerms.get(documentNumber);
+      if (previous == null) {
+        documentTerms.set(documentNumber, Arrays.copyOf(pairs, k));
+      }
+      else {
+        // two documents with the same identifier
+        int[] combined = Arrays.copyOf(previous, previous.length + k);
+        System.arraycopy(pairs, 0, combined, previous.length, k);
+        documentTerms.set(documentNumber, combined);
+      }
     }
   }
 
   
+  protected void mergePartialTerm(TermbankPartial partial, int partialId, int termId) {
+    super.mergePartialTerm(partial, partialId, termId);
+    scores.incrementInt(termFrequencyST, termId, partial.getTermFrequency(partialId));
+  }
+  
+  
+  /**
+   * Add documents to this termbank without reprocessing the corpora,
+   * and recalculate the scores of the terms in them.  If the DFB was
+   * created from this termbank's corpora, the documents are added to
+   * it as well and all the scores are recalculated (since the number
+   * of reference documents has changed).  The documents are indexed
+   * from the size of the document table (which counts removed
+   * documents too), as if they had been appended to a corpus.
+   * @throws IllegalStateException if the termbank has no document
+   * frequency source (e.g. it was loaded from a snapshot without one)
+   */
+  public void addDocuments(Collection<Document> documents) {
+    if (docFreqSource == null) {
+      throw new IllegalStateException("Termbank " + this.getName() + " has no document frequency source");
+    }
+    int firstIndex = documentTable.size();
+    BitSet termIds = processDocuments(documents, firstIndex);
+    if (ownDocFreqSource) {
+      docFreqSource.addDocuments(documents, firstIndex);
+    }
+    recalculateScores(termIds);
+  }
+  
+  
+  /**
+   * Remove a document from this termbank (and from the DFB, if it was
+   * created from this termbank's corpora) and recalculate the scores.
+   * This needs the per-document term frequencies, so the termbank 
+   * must be created with keepDocumentTerms = true.
+   * @param document the document's identifier, as in the CSV output
+   * @return false if the document was not in this termbank
+   * @throws IllegalStateException if the document's terms were not
+   * kept (keepDocumentTerms = false, or loaded from a snapshot)
+   */
+  public boolean removeDocument(DocumentIdentifier document) {
+    int documentNumber = documentTable.getNumber(document);
+    if (documentNumber < 0) {
+      return false;
+    }
+    
+    // not kept, or not in a snapshot
+    int[] pairs = (documentNumber < documentTerms.size()) ? documentTerms.get(documentNumber) : null;
+    if (pairs == null) {
+      throw new IllegalStateException("Termbank " + this.getName() + " does not keep document terms");
+    }
+    
+    BitSet termIds = new BitSet();
+    for (int i = 0 ; i < pairs.length ; i += 2) {
+      int id = pairs[i];
+      scores.incrementInt(termFrequencyST, id, - pairs[i + 1]);
+      PostingList postings = termPostings.get(id);
+      if (postings != null) {
+        postings.remove(documentNumber);
+        termPostings.put(id, (postings.size() == 0) ? null : postings);
+      }
+      termIds.set(id);
+    }
+    documentTable.remove(documentNumber);
+    documentTerms.set(documentNumber, null);
+    this.documentCount--;
+    
+    if (ownDocFreqSource) {
+      docFreqSource.removeDocument(document);
+    }
+    recalculateScores(termIds);
+    return true;
+  }
+  
+  
+  private void recalculateScores(BitSet termIds) {
+    for (int id = termIds.nextSetBit(0) ; id >= 0 ; id = termIds.nextSetBit(id + 1)) {
+      if (termPostings.get(id) == null) {
+        // no documents left
+        scores.clearScores(id);
+      }
+      else if (! ownDocFreqSource) {
+        calculateTermScores(id);
+      }
+    }
+    
+    if (ownDocFreqSource) {
+      // every term's IDF depends on the number of documents
+      calculateScores();
+    }
+    scoresChanged();
+  }
+
+  
   protected void initializeScoreTypes() {
     this.scoreTypes = new ArrayList<ScoreType>();
     this.scoreTypes.add(new ScoreType(scoreProperty));
@@ -83,21 +253,7 @@ public class TfIdfTermbank extends AbstractTermbank {
 
   
   protected void calculateScores() {
-    for (Term term : scores.get(termFrequencyST).keySet()) {
-      this.languages.add(term.getLanguageCode());
-      this.types.add(term.getType());
-      
-      int tf = scores.get(termFrequencyST).get(term).intValue();
-      int df = docFreqSource.getFrequencyLax(term);
-      Utilities.setScoreTermValue(scores, refDocFrequencyST, term, df);
-      int localDF = this.termDocuments.get(term).size();
-      Utilities.setScoreTermValue(scores, localDocFrequencyST, term, localDF);
-      int n = docFreqSource.getDocumentCount();
-      double rawScore = TfCalculation.calculate(tfCalculation, tf) * IdfCalculation.calculate(idfCalculation, df, n);
-      Utilities.setScoreTermValue(scores, rawScoreST, term, rawScore);
-      double normalized = Normalization.calculate(normalization, rawScore);
-      Utilities.setScoreTermValue(scores, getDefaultScoreType(), term, normalized);
-    }
+    calculateScores(scoreCalculator(referenceFrequencies()));
 
     if (debugMode) {
       System.out.println("Termbank: nbr of terms = " + this.getTerms().size());
@@ -105,13 +261,62 @@ public class TfIdfTermbank extends AbstractTermbank {
   }
   
   
+  private void calculateTermScores(int id) {
+    calculateScores(scoreCalculator(null), id);
+  }
+  
+  
+  /**
+   * @return the DFB's lax frequency of every term, by term id, looked
+   * up in one pass before the scores are calculated in parallel
+   */
+  private int[] referenceFrequencies() {
+    return docFreqSource.getFrequenciesLax(new AbstractList<Term>() {
+      public Term get(int id) {
+        return scores.getTerm(id);
+      }
+
+      public int size() {
+        return scores.size();
+      }
+    });
+  }
+  
+  
+  /**
+   * @param refFrequencies the DFB frequencies by term id, or null to
+   * look each term up
+   */
+  private TermScoreCalculator scoreCalculator(final int[] refFrequencies) {
+    final int n = docFreqSource.getDocumentCount();
+    return new TermScoreCalculator() {
+      protected boolean includes(int id) {
+        // skip terms whose documents have all been removed
+        return termPostings.get(id) != null;
+      }
+
+      protected void calculate(int id, Term term, ScoreBuffer buffer) {
+        int tf = scores.getInt(termFrequencyST, id);
+        int df = (refFrequencies == null) ? docFreqSource.getFrequencyLax(term) : refFrequencies[id];
+        buffer.setInt(refDocFrequencyST, id, df);
+        int localDF = getLocalDocumentFrequency(id);
+        buffer.setInt(localDocFrequencyST, id, localDF);
+        double rawScore = TfCalculation.calculate(tfCalculation, tf) * IdfCalculation.calculate(idfCalculation, df, n);
+        buffer.setDouble(rawScoreST, id, rawScore);
+        double normalized = Normalization.calculate(normalization, rawScore);
+        buffer.setDouble(getDefaultScoreType(), id, normalized);
+      }
+    };
+  }
+  
+  
   protected void resetScores() {
-    termDocuments = new HashMap<Term, Set<DocumentIdentifier>>();
+    dictionary = newDictionary();
+    documentTable = new DocumentTable();
+    termPostings  = new TermIdMap<PostingList>(dictionary);
+    documentTerms = new ArrayList<int[]>();
     documentCount = 0;
-    scores = new HashMap<ScoreType, Map<Term,Number>>();
-    for (ScoreType st : scoreTypes) {
-      scores.put(st, new HashMap<Term, Number>());
-    }
+    scores = newScoreStore(dictionary);
     types = new HashSet<String>();
     languages = new HashSet<String>();
   }
@@ -131,6 +336,16 @@ public class TfIdfTermbank extends AbstractTermbank {
     return this.docFreqSource;
   }
   
+  @CreoleParameter(comment = "keep each document's term frequencies so that documents can be removed later",
+          defaultValue = "false")
+  public void setKeepDocumentTerms(Boolean keep) {
+    this.keepDocumentTerms = keep;
+  }
+  
+  public Boolean getKeepDocumentTerms() {
+    return this.keepDocumentTerms;
+  }
+  
   @CreoleParameter(comment = "score normalization",
           defaultValue = "Sigmoid")
   public void setNormalization(Normalization mode) {
@@ -185,9 +400,11 @@ public class TfIdfTermbank extends AbstractTermbank {
       dfbParameters.put("inputAnnotationFeature", this.inputAnnotationFeature);
       dfbParameters.put("corpora", this.corpora);
       dfbParameters.put("debugMode", this.debugMode);
+      dfbParameters.put("numberOfThreads", this.numberOfThreads);
 
       DocumentFrequencyBank dfb = (DocumentFrequencyBank) Factory.createResource(DocumentFrequencyBank.class.getName(), dfbParameters);
       this.setDocFreqSource(dfb);
+      this.ownDocFreqSource = true;
     }
   }
 
@@ -196,9 +413,38 @@ public class TfIdfTermbank extends AbstractTermbank {
   public Map<String, String> getMiscDataForGui() {
     Map<String, String> result = new HashMap<String, String>();
     result.put("nbr of local documents", String.valueOf(this.documentCount));
-    result.put("nbr of reference documents", String.valueOf(this.docFreqSource.getDocumentCount()));
+    if (this.docFreqSource != null) {
+      result.put("nbr of reference documents", String.valueOf(this.docFreqSource.getDocumentCount()));
+    }
     result.put("nbr of terms", String.valueOf(this.getDefaultScores().size()));
     return result;
   }
 
 }
+
+
+class TfIdfTermbankPartial extends TermbankPartial {
+  
+  // for each document number: the ids of all the term occurrences
+  private List<int[]> documentTerms;
+  
+  public TfIdfTermbankPartial() {
+    super();
+    this.documentTerms = new ArrayList<int[]>();
+  }
+  
+  public void addDocumentTerms(int documentNumber, int[] termIds) {
+    while (documentTerms.size() <= documentNumber) {
+      documentTerms.add(new int[0]);
+    }
+    int[] previous = documentTerms.get(documentNumber);
+    int[] combined = Arrays.copyOf(previous, previous.length + termIds.length);
+    System.arraycopy(termIds, 0, combined, previous.length, termIds.length);
+    documentTerms.set(documentNumber, combined);
+  }
+  
+  public List<int[]> getDocumentTerms() {
+    return this.documentTerms;
+  }
+  
+}
@@ -0,0 +1,56 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.gui;
+
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.AbstractAction;
+import javax.swing.JFileChooser;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import gate.gui.MainFrame;
+import gate.termraider.bank.AbstractTermbank;
+import gate.termraider.util.Utilities;
+
+
+/**
+ * Action class for saving a termbank snapshot from the GATE GUI.
+ */
+public class ActionSaveSnapshot
+    extends AbstractAction {
+    
+  private static final long serialVersionUID = -4479196398815361620L;
+
+  private AbstractTermbank termbank;
+
+  public ActionSaveSnapshot(String label, AbstractTermbank termbank) {
+    super(label);
+    this.termbank = termbank;
+  }
+
+  public void actionPerformed(ActionEvent ae) {
+    JFileChooser chooser = new JFileChooser();
+    FileNameExtensionFilter filter = new FileNameExtensionFilter("Termbank snapshots", Utilities.EXTENSION_SNAPSHOT);
+    chooser.setFileFilter(filter);
+    if (chooser.showSaveDialog(MainFrame.getInstance()) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    
+    File file = Utilities.addExtensionIfNotExtended(chooser.getSelectedFile(), Utilities.EXTENSION_SNAPSHOT);
+    try {
+      termbank.saveSnapshot(file);
+    }
+    catch(IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.gui;
+
+import java.util.Collections;
+import java.util.List;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+
+
+/**
+ * Passes the table header's sort requests to the model, which sorts
+ * its rows itself, so view and model indexes are the same.
+ */
+class TermbankRowSorter extends RowSorter<TermbankTableModel> {
+
+  private TermbankTableModel model;
+  private List<SortKey> sortKeys;
+
+
+  public TermbankRowSorter(TermbankTableModel model) {
+    this.model = model;
+    this.sortKeys = Collections.emptyList();
+  }
+
+  @Override
+  public TermbankTableModel getModel() {
+    return this.model;
+  }
+
+  @Override
+  public void toggleSortOrder(int column) {
+    SortOrder order = SortOrder.ASCENDING;
+    if ( (! sortKeys.isEmpty()) && (sortKeys.get(0).getColumn() == column)
+            && (sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) ) {
+      order = SortOrder.DESCENDING;
+    }
+    setSortKeys(Collections.singletonList(new SortKey(column, order)));
+  }
+
+  @Override
+  public int convertRowIndexToModel(int index) {
+    checkIndex(index);
+    return index;
+  }
+
+  @Override
+  public int convertRowIndexToView(int index) {
+    checkIndex(index);
+    return index;
+  }
+
+  @Override
+  public void setSortKeys(List<? extends SortKey> keys) {
+    if ( (keys == null) || keys.isEmpty() ) {
+      this.sortKeys = Collections.emptyList();
+      model.sort(0, true);
+    }
+    else {
+      // only the primary key is used
+      SortKey key = keys.get(0);
+      this.sortKeys = Collections.singletonList(key);
+      model.sort(key.getColumn(), key.getSortOrder() != SortOrder.DESCENDING);
+    }
+    fireSortOrderChanged();
+  }
+
+  @Override
+  public List<? extends SortKey> getSortKeys() {
+    return this.sortKeys;
+  }
+
+  @Override
+  public int getViewRowCount() {
+    return model.getRowCount();
+  }
+
+  @Override
+  public int getModelRowCount() {
+    return model.getRowCount();
+  }
+
+  /* The model's rows are already in order, so changes need no work.  */
+
+  @Override
+  public void modelStructureChanged() {
+  }
+
+  @Override
+  public void allRowsChanged() {
+  }
+
+  @Override
+  public void rowsInserted(int firstRow, int endRow) {
+  }
+
+  @Override
+  public void rowsDeleted(int firstRow, int endRow) {
+  }
+
+  @Override
+  public void rowsUpdated(int firstRow, int endRow) {
+  }
+
+  @Override
+  public void rowsUpdated(int firstRow, int endRow, int column) {
+  }
+
+  private void checkIndex(int index) {
+    if ( (index < 0) || (index >= model.getRowCount()) ) {
+      throw new IndexOutOfBoundsException("Invalid row " + index);
+    }
+  }
+
+}
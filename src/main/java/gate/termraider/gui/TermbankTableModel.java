@@ -12,49 +12,87 @@
 package gate.termraider.gui;
 
 import gate.termraider.bank.AbstractTermbank;
+import gate.termraider.util.ScoreStore;
 import gate.termraider.util.ScoreType;
 import gate.termraider.util.Term;
-import gate.termraider.util.TermComparator;
+import gate.termraider.util.TermRanking;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
 import javax.swing.table.AbstractTableModel;
-import javax.swing.table.TableRowSorter;
 
 
+/**
+ * The rows are only term ids, in display order; the table reads the
+ * cells of the visible rows from the termbank's ScoreStore.  Sorting
+ * (through TermbankRowSorter) and filtering by language and type are
+ * done on primitive keys in a SwingWorker, and the new rows replace
+ * the old ones on the event dispatch thread when they are ready, so
+ * a large termbank does not freeze the GUI.
+ */
 public class TermbankTableModel extends AbstractTableModel {
 
   private static final long serialVersionUID = 5178553454244139001L;
 
-  private List<Term> terms;
   private AbstractTermbank termbank;
+  private ScoreStore scores;
   private List<ScoreType> scoreTypes;
 
-  
+  // term ids in display order
+  private int[] rows;
+  private int sortColumn;
+  private boolean ascending;
+  private Set<String> excludedLanguages, excludedTypes;
+
+  // built in the background the first time it is needed
+  private transient TermTableIndex index;
+  private transient SwingWorker<int[], Void> worker;
+
+  // the table reads a row's cells one after another
+  private int cachedId;
+  private transient Term cachedTerm;
+
+
   public TermbankTableModel(AbstractTermbank termbank) {
     this.termbank = termbank;
-    this.terms = new ArrayList<Term>(termbank.getTerms());
-    // Is this necessary?  The table will have autosort wedges
-    Collections.sort(this.terms, new TermComparator());
+    this.scores = termbank.getScoreStore();
     this.scoreTypes = termbank.getScoreTypes();
+    this.rows = new int[0];
+    this.sortColumn = 0;
+    this.ascending = true;
+    this.excludedLanguages = new HashSet<String>();
+    this.excludedTypes = new HashSet<String>();
+    this.cachedId = -1;
+    update();
   }
 
 
   public int getColumnCount() {
 	  // 1 column for the Term, 1 for the type, 1 for the language code;
-	  // 1 for each score 
+	  // 1 for each score
     return this.scoreTypes.size() + 3;
   }
 
-  
+
   public int getRowCount() {
-    return this.terms.size();
+    return this.rows.length;
   }
 
-  
+
   public Object getValueAt(int row, int col) {
-    Term term = this.terms.get(row); 
+    int id = this.rows[row];
+    if (id != cachedId) {
+      cachedTerm = scores.getTerm(id);
+      cachedId = id;
+    }
+    Term term = cachedTerm;
     if (col == 0) {
     	return term.getTermString();
     }
@@ -64,11 +102,17 @@ public class TermbankTableModel extends AbstractTableModel {
     if (col == 2) {
     	return term.getLanguageCode();
     }
-    
+
     // Implied else: look the score up;
     // remember that the scoreType index is off by 3 from the column
     ScoreType type = scoreTypes.get(col - 3);
-    return this.termbank.getScore(type, term);
+    if (! scores.hasScore(type, id)) {
+      return 0;
+    }
+    if (scores.isDouble(type)) {
+      return scores.getDouble(type, id);
+    }
+    return scores.getInt(type, id);
   }
 
 
@@ -80,7 +124,7 @@ public class TermbankTableModel extends AbstractTableModel {
     return Number.class;
   }
 
-  
+
   public String getColumnName(int col) {
     if (col == 0) {
       return "term";
@@ -91,33 +135,228 @@ public class TermbankTableModel extends AbstractTableModel {
     if (col == 2) {
     	return "lang";
     }
-    
+
     return this.scoreTypes.get(col - 3).toString();
   }
 
-  
-  public void setComparators(TableRowSorter<TermbankTableModel> sorter) {
-    Comparator<Number> numberComparator = new NumberComparator();
-    for (int i = 3 ; i < this.getColumnCount() ; i++ ) {
-      sorter.setComparator(i, numberComparator);
+
+  /**
+   * Sort the rows in the background.  Ties are in term order (or
+   * the reverse, for descending string columns and ascending score
+   * columns).
+   */
+  public void sort(int column, boolean sortAscending) {
+    this.sortColumn = column;
+    this.ascending = sortAscending;
+    update();
+  }
+
+
+  /**
+   * Show or hide the terms in this language, in the background.
+   */
+  public void setLanguageIncluded(String language, boolean included) {
+    if (included) {
+      excludedLanguages.remove(language);
+    }
+    else {
+      excludedLanguages.add(language);
+    }
+    update();
+  }
+
+
+  /**
+   * Show or hide the terms of this type, in the background.
+   */
+  public void setTypeIncluded(String type, boolean included) {
+    if (included) {
+      excludedTypes.remove(type);
+    }
+    else {
+      excludedTypes.add(type);
+    }
+    update();
+  }
+
+
+  /**
+   * Work out the rows for the current sort and filters; an update
+   * still running is cancelled, or its result ignored.
+   */
+  private void update() {
+    if (worker != null) {
+      worker.cancel(false);
+    }
+    final int column = this.sortColumn;
+    final boolean sortAscending = this.ascending;
+    final Set<String> languages = new HashSet<String>(this.excludedLanguages);
+    final Set<String> types = new HashSet<String>(this.excludedTypes);
+
+    worker = new SwingWorker<int[], Void>() {
+      @Override
+      protected int[] doInBackground() {
+        return getIndex().select(scores, scoreTypes, column, sortAscending, languages, types);
+      }
+
+      @Override
+      protected void done() {
+        if (isCancelled() || (worker != this)) {
+          return;
+        }
+        try {
+          rows = get();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        catch (ExecutionException e) {
+          e.printStackTrace();
+          return;
+        }
+        cachedId = -1;
+        fireTableDataChanged();
+      }
+    };
+    worker.execute();
+  }
+
+
+  private synchronized TermTableIndex getIndex() {
+    if (index == null) {
+      index = new TermTableIndex(scores, termbank.getDefaultScoreType());
     }
+    return index;
   }
-  
-  
+
 }
 
 
-class NumberComparator implements Comparator<Number>  {
+/**
+ * Primitive sort keys for the string columns: the rank of each term
+ * (with a default score) in Term order, and the positions of its
+ * language and type among the sorted distinct ones.
+ */
+class TermTableIndex {
 
-  @Override
-  public int compare(Number o1, Number o2) {
-    if (o1.doubleValue() == o2.doubleValue()) {
-      return 0;
+  // ids in Term order
+  private int[] termOrder;
+  // by id: the position in termOrder, language and type, or -1
+  private int[] termRank, languageOf, typeOf;
+  private String[] languages, types;
+
+
+  TermTableIndex(ScoreStore scores, ScoreType defaultType) {
+    int size = scores.size();
+    List<Term> terms = new ArrayList<Term>();
+    Map<String, Integer> languageIndex = new TreeMap<String, Integer>();
+    Map<String, Integer> typeIndex = new TreeMap<String, Integer>();
+    for (int id = 0 ; id < size ; id++) {
+      if (scores.hasScore(defaultType, id)) {
+        Term term = scores.getTerm(id);
+        terms.add(term);
+        languageIndex.put(term.getLanguageCode(), 0);
+        typeIndex.put(term.getType(), 0);
+      }
     }
-    if (o1.doubleValue() < o2.doubleValue()) {
-      return -1;
+    this.languages = number(languageIndex);
+    this.types = number(typeIndex);
+
+    Collections.sort(terms);
+    this.termOrder = new int[terms.size()];
+    this.termRank = new int[size];
+    this.languageOf = new int[size];
+    this.typeOf = new int[size];
+    Arrays.fill(termRank, -1);
+    Arrays.fill(languageOf, -1);
+    Arrays.fill(typeOf, -1);
+    for (int rank = 0 ; rank < termOrder.length ; rank++) {
+      Term term = terms.get(rank);
+      int id = scores.getTermId(term);
+      termOrder[rank] = id;
+      termRank[id] = rank;
+      languageOf[id] = languageIndex.get(term.getLanguageCode());
+      typeOf[id] = typeIndex.get(term.getType());
     }
-    return 1;
+  }
+
+
+  /**
+   * @return the ids of the terms not in the excluded languages and
+   * types, sorted by the column
+   */
+  int[] select(ScoreStore scores, List<ScoreType> scoreTypes, int column, boolean ascending,
+          Set<String> excludedLanguages, Set<String> excludedTypes) {
+    boolean[] languageIncluded = included(languages, excludedLanguages);
+    boolean[] typeIncluded = included(types, excludedTypes);
+    int[] selected = new int[termOrder.length];
+    int n = 0;
+    for (int id : termOrder) {
+      if (languageIncluded[languageOf[id]] && typeIncluded[typeOf[id]]) {
+        selected[n++] = id;
+      }
+    }
+
+    // selected is already in term order, which breaks ties
+    boolean reverse = ! ascending;
+    if ( (column == 1) || (column == 2) ) {
+      long[] keys = new long[n];
+      for (int i = 0 ; i < n ; i++) {
+        int id = selected[i];
+        long major = (column == 1) ? typeOf[id] : languageOf[id];
+        keys[i] = (major << 32) | termRank[id];
+      }
+      Arrays.sort(keys);
+      for (int i = 0 ; i < n ; i++) {
+        selected[i] = termOrder[(int) keys[i]];
+      }
+    }
+    else if (column >= 3) {
+      ScoreType type = scoreTypes.get(column - 3);
+      int[] ranks = new int[n];
+      double[] values = new double[n];
+      for (int i = 0 ; i < n ; i++) {
+        int id = selected[i];
+        ranks[i] = termRank[id];
+        values[i] = scores.hasScore(type, id) ? scores.getDouble(type, id) : 0.0;
+      }
+      // highest first
+      TermRanking.rank(ranks, values, n);
+      for (int i = 0 ; i < n ; i++) {
+        selected[i] = termOrder[ranks[i]];
+      }
+      reverse = ascending;
+    }
+
+    if (reverse) {
+      for (int i = 0, j = n - 1 ; i < j ; i++, j--) {
+        int id = selected[i];
+        selected[i] = selected[j];
+        selected[j] = id;
+      }
+    }
+    return Arrays.copyOf(selected, n);
+  }
+
+
+  /* Number the keys in order and return them.  */
+  private static String[] number(Map<String, Integer> index) {
+    String[] keys = index.keySet().toArray(new String[index.size()]);
+    for (int i = 0 ; i < keys.length ; i++) {
+      index.put(keys[i], i);
+    }
+    return keys;
+  }
+
+
+  private static boolean[] included(String[] values, Set<String> excluded) {
+    boolean[] result = new boolean[values.length];
+    for (int i = 0 ; i < values.length ; i++) {
+      result[i] = ! excluded.contains(values[i]);
+    }
+    return result;
   }
 
 }
+
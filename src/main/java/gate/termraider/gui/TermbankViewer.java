@@ -36,10 +36,12 @@ import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import javax.swing.Box;
 import javax.swing.JButton;
 import javax.swing.JCheckBoxMenuItem;
@@ -53,13 +55,17 @@ import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JToolBar;
 import javax.swing.JTree;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.AbstractTableModel;
-import javax.swing.table.TableRowSorter;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
+import org.xhtmlrenderer.resource.XMLResource;
 import org.xhtmlrenderer.simple.XHTMLPanel;
 
 
@@ -89,7 +95,9 @@ public class TermbankViewer
   private JSlider cloudSize = new JSlider();
   private List<ScoreType> scoreTypes;
   
+  // created by the first thread to draw the cloud; guarded by cloudLock
   private CloudGenerator cloudGenerator = null;
+  private final Object cloudLock = new Object();
   private ColorMenu fontColorMenu, backgroundColorMenu;
   
   private JPopupMenu mnuLanguages = new JPopupMenu();
@@ -98,31 +106,62 @@ public class TermbankViewer
   private JPopupMenu mnuTypes = new JPopupMenu();
   private JMenuButton menuTypesButton = new JMenuButton(mnuTypes);
   
+  private JPopupMenu mnuTableLanguages = new JPopupMenu();
+  private JMenuButton menuTableLanguageButton = new JMenuButton(mnuTableLanguages);
+  
+  private JPopupMenu mnuTableTypes = new JPopupMenu();
+  private JMenuButton menuTableTypesButton = new JMenuButton(mnuTableTypes);
+  
+  // ms to wait for the controls to settle before redrawing
+  private static final int UPDATE_DELAY = 200;
+  
+  private Timer treeTimer, cloudTimer;
+  private TreeWorker treeWorker;
+  private CloudWorker cloudWorker;
+  
+  // the cloud languages and types selected in the menus
+  private Set<String> cloudLanguages, cloudTypes;
+  // what the generator was last set up with (guarded by cloudLock)
+  private ScoreType cloudGeneratorType;
+  private Set<String> cloudGeneratorLanguages, cloudGeneratorTypes;
+  
   @Override
   public Resource init() {
+    treeTimer = new Timer(UPDATE_DELAY, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        startTreeWorker();
+      }
+    });
+    treeTimer.setRepeats(false);
+    cloudTimer = new Timer(UPDATE_DELAY, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        startCloudWorker();
+      }
+    });
+    cloudTimer.setRepeats(false);
     initGuiComponents();
     return this;
   }
 
 
-  protected void populateTree(DefaultMutableTreeNode root, AbstractTermbank termbank) {
+  /**
+   * Add a node for each term scoring at least minScore; each term's
+   * documents are added when its node is first expanded.  This runs
+   * in the background and stops early if the thread is interrupted.
+   */
+  protected void populateTree(DefaultMutableTreeNode root, AbstractTermbank termbank, int minScore) {
     List<Term> typeSortedTerms = termbank.getTermsByDescendingScore();
     Map<Term, Number> typeTermScores = termbank.getDefaultScores();
-    Map<Term, Set<DocumentIdentifier>> typeTermDocuments = termbank.getTermDocuments();
-    
-    DefaultMutableTreeNode node1, node2;
-    int minScore = sliderPanel.getValue();
     
     for (Term term : typeSortedTerms) {
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
       Number score = typeTermScores.get(term);
       if (score.intValue() >= minScore) {
-        node1 = new DefaultMutableTreeNode(term + "  " + score.toString());
-        root.add(node1);
-        
-        for (DocumentIdentifier document : typeTermDocuments.get(term)) {
-          node2 = new DefaultMutableTreeNode(document.toString());
-          node1.add(node2);
-        }
+        root.add(new TermTreeNode(term, score));
       }
       else {  // the rest must be lower
         break;
@@ -165,6 +204,17 @@ public class TermbankViewer
             JScrollPane.HORIZONTAL_SCROLLBAR_AS_NEEDED);
     tableTab.add(freqScrollPane, BorderLayout.CENTER);
     
+    menuTableLanguageButton.setIcon(MainFrame.getIcon("Languages"));
+    menuTableLanguageButton.setToolTipText("Set Displayed Languages");
+    menuTableTypesButton.setIcon(MainFrame.getIcon("TermTypes"));
+    menuTableTypesButton.setToolTipText("Set Displayed Term Types");
+    JToolBar tableBar = new JToolBar();
+    tableBar.setFloatable(false);
+    tableBar.add(menuTableLanguageButton);
+    tableBar.add(menuTableTypesButton);
+    tableBar.add(Box.createHorizontalGlue());
+    tableTab.add(tableBar, BorderLayout.NORTH);
+    
     miscTable = new JTable();
     miscTable.setAutoCreateRowSorter(true);
     miscScrollPane = new JScrollPane(miscTable, 
@@ -202,7 +252,7 @@ public class TermbankViewer
         
         if (fileChooser.showSaveDialog(MainFrame.getInstance()) != XJFileChooser.APPROVE_OPTION) return;
         
-        String html = cloudGenerator.getHTML(cloudSize.getValue());
+        String html = getHTML();
         
         PrintWriter out = null;
         try {
@@ -233,8 +283,7 @@ public class TermbankViewer
     fontColorMenu.setCallback(new Callback(){
       @Override
       public void colorChange(Color c) {
-        if (cloudGenerator != null && !cloudGenerator.getForeground().equals(c)) {
-          cloudGenerator.setForeground(c);
+        if (termbank != null) {
           displayCloud();
         }
       }
@@ -249,8 +298,7 @@ public class TermbankViewer
     backgroundColorMenu.setCallback(new Callback() {
       @Override
       public void colorChange(Color c) {
-        if (cloudGenerator != null && !cloudGenerator.getBackground().equals(c)) {
-          cloudGenerator.setBackground(c);
+        if (termbank != null) {
           displayCloud();
         }
       }
@@ -294,12 +342,10 @@ public class TermbankViewer
     sliderPanel = new SliderPanel(termbank, "display", false, this);
     controlPanel.add(sliderPanel, BorderLayout.CENTER);
     sliderPanel.reformat();
+    // the model sorts and filters its rows in the background
     termbankTableModel = new TermbankTableModel(this.termbank);
     termbankTable.setModel(termbankTableModel);
-    TableRowSorter<TermbankTableModel> sorter = new TableRowSorter<TermbankTableModel>(termbankTableModel);
-    termbankTableModel.setComparators(sorter);
-    // above calls sorter.setComparator(column, comparator) on all Number columns
-    termbankTable.setRowSorter(sorter);
+    termbankTable.setRowSorter(new TermbankRowSorter(termbankTableModel));
     miscTable.setModel(new MiscTableModel(termbank.getMiscDataForGui()));
   }
 
@@ -325,7 +371,6 @@ public class TermbankViewer
       tabbedPane.addTab("Hyponymy Debugger", new HyponymyDebugger((HyponymyTermbank) this.termbank));
     }
     
-    Map<Term, ? extends Number> freq = null;
     scoreTypes = termbank.getScoreTypes();
     menuLanguageButton.setEnabled(termbank.getLanguages().size() > 1);
     
@@ -334,14 +379,10 @@ public class TermbankViewer
     }
     
     cloudType.setSelectedIndex(0);
-    freq = termbank.getScores(scoreTypes.get(cloudType.getSelectedIndex()));
     
     cloudType.addActionListener(new ActionListener() {      
       @Override
       public void actionPerformed(ActionEvent arg0) {
-        Map<Term, ? extends Number> freq = null;
-        freq = termbank.getScores(scoreTypes.get(cloudType.getSelectedIndex()));
-        cloudGenerator.setTerms(freq);
         displayCloud();        
       }
     });
@@ -359,7 +400,12 @@ public class TermbankViewer
       @Override
       public void actionPerformed(ActionEvent e) {
         JCheckBoxMenuItem cb = (JCheckBoxMenuItem)e.getSource();
-        cloudGenerator.includeLanguage(cb.getText(), cb.isSelected());
+        if (cb.isSelected()) {
+          cloudLanguages.add(cb.getText());
+        }
+        else {
+          cloudLanguages.remove(cb.getText());
+        }
         displayCloud();
       }
     };
@@ -380,7 +426,12 @@ public class TermbankViewer
       @Override
       public void actionPerformed(ActionEvent e) {
         JCheckBoxMenuItem cb = (JCheckBoxMenuItem)e.getSource();
-        cloudGenerator.includeTermType(cb.getText(), cb.isSelected());
+        if (cb.isSelected()) {
+          cloudTypes.add(cb.getText());
+        }
+        else {
+          cloudTypes.remove(cb.getText());
+        }
         displayCloud();
       }
     };
@@ -395,33 +446,127 @@ public class TermbankViewer
       }
     }
     
-    cloudGenerator = new CloudGenerator(freq);
-    cloudGenerator.setLanguages(termbank.getLanguages());
-    cloudGenerator.setTermTypes(termbank.getTypes());
-    cloudGenerator.setForeground(fontColorMenu.getColor());
-    cloudGenerator.setBackground(backgroundColorMenu.getColor());
+    ActionListener tableLanguageChanger = new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        JCheckBoxMenuItem cb = (JCheckBoxMenuItem)e.getSource();
+        termbankTableModel.setLanguageIncluded(cb.getText(), cb.isSelected());
+      }
+    };
+    
+    menuTableLanguageButton.setEnabled(termbank.getLanguages().size() > 1);
+    if (menuTableLanguageButton.isEnabled()) {
+      mnuTableLanguages.removeAll();
+      
+      for (String lang : termbank.getLanguages()) {
+        JCheckBoxMenuItem cb = new JCheckBoxMenuItem(lang,true);
+        cb.addActionListener(tableLanguageChanger);
+        mnuTableLanguages.add(cb);
+      }
+    }
+    
+    ActionListener tableTypesChanger = new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        JCheckBoxMenuItem cb = (JCheckBoxMenuItem)e.getSource();
+        termbankTableModel.setTypeIncluded(cb.getText(), cb.isSelected());
+      }
+    };
+    
+    menuTableTypesButton.setEnabled(termbank.getTypes().size() > 1);
+    if (menuTableTypesButton.isEnabled()) {
+      mnuTableTypes.removeAll();
+      
+      for (String type : termbank.getTypes()) {
+        JCheckBoxMenuItem cb = new JCheckBoxMenuItem(type,true);
+        cb.addActionListener(tableTypesChanger);
+        mnuTableTypes.add(cb);
+      }
+    }
+    
+    // the viewer keeps its own copies: the generator is only changed
+    // (under cloudLock) by the thread that draws the cloud
+    cloudLanguages = new HashSet<String>(termbank.getLanguages());
+    cloudTypes = new HashSet<String>(termbank.getTypes());
+    synchronized (cloudLock) {
+      cloudGenerator = null;
+      cloudGeneratorLanguages = null;
+      cloudGeneratorTypes = null;
+    }
 
     regenerateTree();
     displayCloud();
   }
   
+  
+  /**
+   * Redraw the cloud in the background once the controls have been
+   * still for UPDATE_DELAY ms.
+   */
   private void displayCloud() {
-    try {
-      termCloud.setDocument(new ByteArrayInputStream(cloudGenerator.getHTML(cloudSize.getValue()).getBytes()),"http://term-cloud.com");
-    }catch (Exception e) {
-      e.printStackTrace();
-    }
+    cloudTimer.restart();
   }
 
+  
   public String getHTML() {
-    return cloudGenerator.getHTML(cloudSize.getValue());
+    return generateHTML(new CloudSettings());
   }
   
+  
+  /**
+   * Bring the generator up to date with the settings and generate the
+   * cloud; this can be called from any thread.
+   */
+  private String generateHTML(CloudSettings settings) {
+    synchronized (cloudLock) {
+      // indexing the terms takes a while on a big termbank
+      if (cloudGenerator == null) {
+        cloudGenerator = new CloudGenerator(termbank.getScores(settings.scoreType));
+        cloudGeneratorType = settings.scoreType;
+      }
+      else if (settings.scoreType != cloudGeneratorType) {
+        cloudGenerator.setTerms(termbank.getScores(settings.scoreType));
+        cloudGeneratorType = settings.scoreType;
+      }
+      if (! settings.languages.equals(cloudGeneratorLanguages)) {
+        cloudGenerator.setLanguages(settings.languages);
+        cloudGeneratorLanguages = settings.languages;
+      }
+      if (! settings.types.equals(cloudGeneratorTypes)) {
+        cloudGenerator.setTermTypes(settings.types);
+        cloudGeneratorTypes = settings.types;
+      }
+      cloudGenerator.setForeground(settings.foreground);
+      cloudGenerator.setBackground(settings.background);
+      return cloudGenerator.getHTML(settings.size);
+    }
+  }
+  
+  
+  /**
+   * Rebuild the tree in the background once the slider has been
+   * still for UPDATE_DELAY ms.
+   */
   protected void regenerateTree() {
-    DefaultMutableTreeNode root = new DefaultMutableTreeNode("Terms");
-    populateTree(root, termbank);
-    tree.setModel(new DefaultTreeModel(root));
-    controlPanel.repaint();
+    treeTimer.restart();
+  }
+  
+  
+  private void startTreeWorker() {
+    if (treeWorker != null) {
+      treeWorker.cancel(true);
+    }
+    treeWorker = new TreeWorker(sliderPanel.getValue());
+    treeWorker.execute();
+  }
+  
+  
+  private void startCloudWorker() {
+    if (cloudWorker != null) {
+      cloudWorker.cancel(true);
+    }
+    cloudWorker = new CloudWorker(new CloudSettings());
+    cloudWorker.execute();
   }
   
   
@@ -429,11 +574,154 @@ public class TermbankViewer
     tree = new JTree();
     DefaultMutableTreeNode root = new DefaultMutableTreeNode("Use the controls above to set the thresholds and generate this tree.");
     tree.setModel(new DefaultTreeModel(root));
+    tree.addTreeWillExpandListener(new TreeWillExpandListener() {
+      @Override
+      public void treeWillExpand(TreeExpansionEvent event) {
+        Object node = event.getPath().getLastPathComponent();
+        if (node instanceof TermTreeNode) {
+          TermTreeNode termNode = (TermTreeNode) node;
+          int[] added = termNode.loadDocuments(termbank);
+          if (added.length > 0) {
+            ((DefaultTreeModel) tree.getModel()).nodesWereInserted(termNode, added);
+          }
+        }
+      }
+
+      @Override
+      public void treeWillCollapse(TreeExpansionEvent event) {
+        // nothing to do
+      }
+    });
+  }
+  
+  
+  /**
+   * The cloud controls as they were when a redraw was requested.
+   */
+  private class CloudSettings {
+    private ScoreType scoreType;
+    private Set<String> languages, types;
+    private Color foreground, background;
+    private int size;
+    
+    CloudSettings() {
+      this.scoreType = scoreTypes.get(Math.max(0, cloudType.getSelectedIndex()));
+      this.languages = new HashSet<String>(cloudLanguages);
+      this.types = new HashSet<String>(cloudTypes);
+      this.foreground = fontColorMenu.getColor();
+      this.background = backgroundColorMenu.getColor();
+      this.size = cloudSize.getValue();
+    }
+  }
+  
+  
+  private class TreeWorker extends SwingWorker<DefaultMutableTreeNode, Void> {
+    private int minScore;
+    
+    TreeWorker(int minScore) {
+      this.minScore = minScore;
+    }
+    
+    @Override
+    protected DefaultMutableTreeNode doInBackground() {
+      DefaultMutableTreeNode root = new DefaultMutableTreeNode("Terms");
+      populateTree(root, termbank, minScore);
+      return root;
+    }
+    
+    @Override
+    protected void done() {
+      // a newer tree has been asked for
+      if (isCancelled() || (this != treeWorker)) {
+        return;
+      }
+      try {
+        tree.setModel(new DefaultTreeModel(get()));
+        controlPanel.repaint();
+      }
+      catch (InterruptedException | ExecutionException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+  
+  
+  private class CloudWorker extends SwingWorker<org.w3c.dom.Document, Void> {
+    private CloudSettings settings;
+    
+    CloudWorker(CloudSettings settings) {
+      this.settings = settings;
+    }
+    
+    @Override
+    protected org.w3c.dom.Document doInBackground() {
+      String html = generateHTML(settings);
+      if (isCancelled()) {
+        return null;
+      }
+      // parse it here, rather than in the panel on the EDT
+      return XMLResource.load(new ByteArrayInputStream(html.getBytes())).getDocument();
+    }
+    
+    @Override
+    protected void done() {
+      if (isCancelled() || (this != cloudWorker)) {
+        return;
+      }
+      try {
+        termCloud.setDocument(get(), "http://term-cloud.com");
+      }
+      catch (InterruptedException | ExecutionException e) {
+        e.printStackTrace();
+      }
+    }
   }
 
 }
 
 
+/**
+ * A term in the viewer's tree; its documents are only added when it
+ * is first expanded.
+ */
+class TermTreeNode extends DefaultMutableTreeNode {
+  private static final long serialVersionUID = -3064529135487017466L;
+
+  private Term term;
+  private boolean loaded;
+
+  public TermTreeNode(Term term, Number score) {
+    super(term + "  " + score.toString());
+    this.term = term;
+    this.loaded = false;
+  }
+
+  @Override
+  public boolean isLeaf() {
+    return loaded && (getChildCount() == 0);
+  }
+
+  /**
+   * Add the term's documents, the first time this is called.
+   * @return the indices of the new children
+   */
+  public int[] loadDocuments(AbstractTermbank termbank) {
+    if (loaded) {
+      return new int[0];
+    }
+    loaded = true;
+    for (DocumentIdentifier document : termbank.getDocumentsForTerm(term)) {
+      add(new DefaultMutableTreeNode(document.toString()));
+    }
+    int[] added = new int[getChildCount()];
+    for (int i = 0 ; i < added.length ; i++) {
+      added[i] = i;
+    }
+    return added;
+  }
+}
+
+
 class MiscTableModel extends AbstractTableModel {
   private static final long serialVersionUID = -1610308603693793731L;
   
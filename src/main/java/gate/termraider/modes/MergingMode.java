@@ -11,10 +11,8 @@
  */
 package gate.termraider.modes;
 
-import gate.termraider.util.Utilities;
-
-import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 
 public enum MergingMode {
@@ -23,16 +21,95 @@ public enum MergingMode {
   MAXIMUM;
   
   public static Double calculate(MergingMode mode, List<Double> list) {
-    if (mode == MAXIMUM) {
-      return Collections.max(list);
+    Accumulator accumulator = new Accumulator();
+    for (Double value : list) {
+      accumulator.add(value);
+    }
+    return accumulator.get(mode);
+  }
+  
+  
+  /**
+   * The running minimum, maximum, sum and count of a stream of scores,
+   * so that any of the modes can be calculated without keeping the
+   * scores themselves.  The minimum and maximum are compared like
+   * Collections.min and max compare Doubles.  The sum is compensated
+   * (Neumaier's variant of Kahan summation), so adding up partial
+   * accumulators gives the same mean as adding the scores one by one
+   * to within rounding.
+   */
+  public static class Accumulator {
+    private double min, max, sum, compensation;
+    private long count;
+    
+    public void add(double value) {
+      if ( (count == 0) || (Double.compare(value, min) < 0) ) {
+        min = value;
+      }
+      if ( (count == 0) || (Double.compare(value, max) > 0) ) {
+        max = value;
+      }
+      addToSum(value);
+      count++;
     }
     
-    if (mode == MINIMUM) {
-      return Collections.min(list);
+    /**
+     * Add the scores counted by another accumulator.
+     */
+    public void addAll(Accumulator other) {
+      if (other.count == 0) {
+        return;
+      }
+      if ( (count == 0) || (Double.compare(other.min, min) < 0) ) {
+        min = other.min;
+      }
+      if ( (count == 0) || (Double.compare(other.max, max) > 0) ) {
+        max = other.max;
+      }
+      addToSum(other.sum);
+      compensation += other.compensation;
+      count += other.count;
     }
     
-    // must be MEAN
-    return Utilities.meanDoubleList(list);
+    /**
+     * Add to the sum, keeping the low-order bits that are lost in the
+     * compensation.
+     */
+    private void addToSum(double value) {
+      double total = sum + value;
+      if (Math.abs(sum) >= Math.abs(value)) {
+        compensation += (sum - total) + value;
+      }
+      else {
+        compensation += (value - total) + sum;
+      }
+      sum = total;
+    }
+    
+    public long getCount() {
+      return this.count;
+    }
+    
+    /**
+     * @throws NoSuchElementException for the minimum or maximum of
+     * no scores (the mean of no scores is 0)
+     */
+    public double get(MergingMode mode) {
+      if (mode == MEAN) {
+        if (count == 0) {
+          return 0.0;
+        }
+        // an infinite sum has no meaningful compensation
+        double total = Double.isInfinite(sum) ? sum : sum + compensation;
+        return total / ((double) count);
+      }
+      
+      // implied else: MINIMUM or MAXIMUM
+      if (count == 0) {
+        throw new NoSuchElementException("No scores to merge");
+      }
+      return (mode == MAXIMUM) ? max : min;
+    }
   }
 
 }
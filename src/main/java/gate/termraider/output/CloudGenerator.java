@@ -11,21 +11,54 @@
 package gate.termraider.output;
 
 import gate.termraider.util.Term;
+import gate.termraider.util.TermRanking;
 
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringEscapeUtils;
 
+/**
+ * Generates an HTML term cloud.  The terms, their order and their
+ * scores are indexed once, when they are set, so that changing the
+ * languages, types or size only filters the index: the terms of each
+ * language and type are kept as bit sets, the score range of each
+ * combination of languages and types is remembered, and only the
+ * terms above the size cutoff are looked at when the cloud is drawn.
+ * The scores are read when the terms are set, so set them again if
+ * they change.
+ */
 public class CloudGenerator {
 
-  private Map<Term, ? extends Number> termNumbers;
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  // score ranges for this many combinations of languages and types
+  private static final int CACHED_SELECTIONS = 32;
+
+  // terms in alphabetical (Term) order, with their scores
+  private Term[] terms;
+
+  private double[] scores;
+
+  // positions of the terms with numeric scores, by descending score
+  private int[] ranked;
 
-  private double min = Double.MAX_VALUE;
+  private double[] rankedScores;
 
-  private double max = Double.MIN_VALUE;
+  // escaped, non-breaking term strings, filled in as needed
+  private String[] escaped;
+
+  private Map<String, BitSet> languageTerms, typeTerms;
+
+  private Map<List<Set<String>>, Selection> selections;
 
   private Color foreground = Color.BLACK;
 
@@ -39,7 +72,6 @@ public class CloudGenerator {
 
   public void setLanguages(Set<String> languages) {
     this.languages = languages;
-    findRange();
   }
 
   public void includeLanguage(String lang, boolean show) {
@@ -49,13 +81,10 @@ public class CloudGenerator {
     else {
       languages.remove(lang);
     }
-    
-    findRange();
   }
   
   public void setTermTypes(Set<String> types) {
     this.types = types;
-    findRange();
   }
   
   public void includeTermType(String type, boolean show) {
@@ -65,33 +94,100 @@ public class CloudGenerator {
     else {
       types.remove(type);
     }
-    
-    findRange();
   }
 
   public void setTerms(Map<Term, ? extends Number> termNumbers) {
-    this.termNumbers = termNumbers;
-    findRange();
+    int n = termNumbers.size();
+    terms = termNumbers.keySet().toArray(new Term[n]);
+    n = terms.length;
+    Arrays.sort(terms);
+
+    scores = new double[n];
+    escaped = new String[n];
+    languageTerms = new HashMap<String, BitSet>();
+    typeTerms = new HashMap<String, BitSet>();
+    ranked = new int[n];
+    rankedScores = new double[n];
+    int rankedSize = 0;
+    for(int i = 0; i < n; i++) {
+      scores[i] = termNumbers.get(terms[i]).doubleValue();
+      termSet(languageTerms, terms[i].getLanguageCode()).set(i);
+      termSet(typeTerms, terms[i].getType()).set(i);
+      // NaN is never above the cutoff
+      if(!Double.isNaN(scores[i])) {
+        ranked[rankedSize] = i;
+        rankedScores[rankedSize] = scores[i];
+        rankedSize++;
+      }
+    }
+    ranked = Arrays.copyOf(ranked, rankedSize);
+    rankedScores = Arrays.copyOf(rankedScores, rankedSize);
+    TermRanking.rank(ranked, rankedScores, rankedSize);
+
+    selections = new LinkedHashMap<List<Set<String>>, Selection>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<List<Set<String>>, Selection> eldest) {
+        return size() > CACHED_SELECTIONS;
+      }
+    };
   }
 
-  private void findRange() {
+  private static BitSet termSet(Map<String, BitSet> sets, String key) {
+    BitSet set = sets.get(key);
+    if(set == null) {
+      set = new BitSet();
+      sets.put(key, set);
+    }
+    return set;
+  }
 
-    min = Double.MAX_VALUE;
-    max = Double.MIN_VALUE;
+  /**
+   * @return the terms passing the language and type filters (null for
+   * all of them) and their score range, worked out on first use
+   */
+  private Selection getSelection() {
+    // a term passes if no languages are set, or if its language
+    // and its type (if types are set) are included
+    List<Set<String>> key = Arrays.<Set<String>>asList(
+      (languages == null) ? null : new TreeSet<String>(languages),
+      (languages == null || types == null) ? null : new TreeSet<String>(types));
+    Selection selection = selections.get(key);
+    if(selection == null) {
+      BitSet mask = null;
+      if(languages != null) {
+        mask = union(languageTerms, languages);
+        if(types != null) {
+          mask.and(union(typeTerms, types));
+        }
+      }
+      selection = new Selection(mask, scores);
+      selections.put(key, selection);
+    }
+    return selection;
+  }
 
-    for(Map.Entry<Term, ? extends Number> entry : termNumbers.entrySet()) {
-      if((languages == null || languages.contains(entry.getKey()
-        .getLanguageCode()) &&
-        (types == null || types.contains(entry.getKey().getType())))) {
-        max = Math.max(max, entry.getValue().doubleValue());
-        min = Math.min(min, entry.getValue().doubleValue());
+  private static BitSet union(Map<String, BitSet> sets, Set<String> keys) {
+    BitSet result = new BitSet();
+    for(String key : keys) {
+      BitSet set = sets.get(key);
+      if(set != null) {
+        result.or(set);
       }
     }
+    return result;
+  }
+
+  private String getEscaped(int i) {
+    if(escaped[i] == null) {
+      escaped[i] = WHITESPACE.matcher(StringEscapeUtils.escapeXml(terms[i].getTermString()))
+        .replaceAll("&#160;");
+    }
+    return escaped[i];
   }
 
   public CloudGenerator(Map<Term, ? extends Number> termNumbers) {
-    this.termNumbers = termNumbers;
-    findRange();
+    setTerms(termNumbers);
     blend();
   }
 
@@ -149,8 +245,9 @@ public class CloudGenerator {
 
   public String getHTML(int percentage) {
 
+    Selection selection = getSelection();
     double min =
-      this.min + ((max - this.min) * ((100d - (double)percentage) / 100));
+      selection.min + ((selection.max - selection.min) * ((100d - (double)percentage) / 100));
 
     // stop lots of array copying by starting with a reasonably sized buffer
     StringBuilder html = new StringBuilder(1024 * 10);
@@ -194,25 +291,60 @@ public class CloudGenerator {
 
     html.append("\t</style>\n</head>\n<body>\n\t<div id='cloud'>\n");
 
-    Set<Term> terms = new TreeSet<Term>(termNumbers.keySet());
+    // only the terms above the cutoff, back in alphabetical order
+    BitSet mask = selection.mask;
+    int[] shown = new int[ranked.length];
+    int count = 0;
+    for(int r = 0; r < ranked.length && rankedScores[r] >= min; r++) {
+      if(mask == null || mask.get(ranked[r])) {
+        shown[count++] = ranked[r];
+      }
+    }
+    Arrays.sort(shown, 0, count);
 
-    double scaler = 10d / (max - min);
+    double scaler = 10d / (selection.max - min);
 
-    for(Term term : terms) {
-      double score = termNumbers.get(term).doubleValue();
-      if(score >= min &&
-        (languages == null || languages.contains(term.getLanguageCode()) &&
-          (types == null || types.contains(term.getType())))) {
-        int size = (int)((score - min) * scaler);
+    for(int s = 0; s < count; s++) {
+      int i = shown[s];
+      int size = (int)((scores[i] - min) * scaler);
 
-        html.append("\t\t<span class=\"term cloud").append(size).append("\">")
-          .append(StringEscapeUtils.escapeXml(term.getTermString()).replaceAll("\\s+", "&#160;"))
-          .append("</span>\n");
-      }
+      html.append("\t\t<span class=\"term cloud").append(size).append("\">")
+        .append(getEscaped(i)).append("</span>\n");
     }
 
     html.append("\t</div>\n</body>\n</html>");
 
     return html.toString();
   }
+
+  /**
+   * The terms passing one combination of filters and their score range.
+   */
+  private static class Selection {
+
+    private BitSet mask;
+
+    private double min = Double.MAX_VALUE;
+
+    private double max = Double.MIN_VALUE;
+
+    Selection(BitSet mask, double[] scores) {
+      this.mask = mask;
+      if(mask == null) {
+        for(double score : scores) {
+          include(score);
+        }
+      }
+      else {
+        for(int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+          include(scores[i]);
+        }
+      }
+    }
+
+    private void include(double score) {
+      max = Math.max(max, score);
+      min = Math.min(min, score);
+    }
+  }
 }
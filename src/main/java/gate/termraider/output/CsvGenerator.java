@@ -12,7 +12,6 @@
 package gate.termraider.output;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
 
@@ -27,6 +26,11 @@ import gate.termraider.util.Term;
 import gate.util.GateException;
 
 
+/**
+ * Saves a termbank as CSV.  The headers go through opencsv (so that
+ * termbanks can override writeCSVSubHeader) and the terms' rows are
+ * streamed from the score columns through a CsvOutput.
+ */
 public class CsvGenerator {
   
   public static void generateAndSaveCsv(AbstractTermbank bank, 
@@ -37,32 +41,25 @@ public class CsvGenerator {
         .withQuoteChar('"')
         .build();
 
-    try (ICSVWriter csvWriter = new CSVWriterBuilder(new FileWriter(outputFile))
-        .withParser(parser)
-	    .withLineEnd(ICSVWriter.RFC4180_LINE_END)
-	    .build();) {
+    try (CsvOutput output = CsvOutput.open(outputFile)) {
+        // not closed: that would close the output
+        ICSVWriter csvWriter = new CSVWriterBuilder(output.getWriter())
+            .withParser(parser)
+            .withLineEnd(ICSVWriter.RFC4180_LINE_END)
+            .build();
 
         addComment(bank, "threshold = " + threshold);
-        List<Term> sortedTerms = bank.getTermsByDescendingScore();
+        List<Term> sortedTerms = bank.getTermsAboveThreshold(threshold);
     
-        addComment(bank, "Unfiltered nbr of terms = " + sortedTerms.size());
-        int written = 0;
+        addComment(bank, "Unfiltered nbr of terms = " + bank.getTerms().size());
         bank.writeCSVHeader(csvWriter, documentDetails);
+        csvWriter.flush();
     
+        StringBuilder row = new StringBuilder();
         for (Term term : sortedTerms) {
-            Number score = bank.getDefaultScores().get(term);
-            if (score.doubleValue() >= threshold.doubleValue()) {
-            	if (documentDetails)
-            		bank.writeCSVTermDocumentData(csvWriter, term);
-            	else
-            		bank.writeCSVTermData(csvWriter, term);
-                written++;
-            }
-            else {  // the rest must be lower
-                break;
-            }
+            bank.writeCsvRows(output, term, documentDetails, row);
         }
-        addComment(bank, "Filtered nbr of terms = " + written);
+        addComment(bank, "Filtered nbr of terms = " + sortedTerms.size());
     } catch (IOException e) {
 		throw new GateException(e);
 	}
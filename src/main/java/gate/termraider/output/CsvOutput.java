@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2010--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.output;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * A buffered CSV writer that produces the same bytes as the opencsv
+ * RFC4180 writer used for the headers (separator ',', quote '"',
+ * CRLF line ends, quotes only where needed), but appends fields to
+ * a reusable buffer instead of building a String[] for each row.
+ *
+ * Files whose names end in .gz are compressed.
+ */
+public class CsvOutput implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final String LINE_END = "\r\n";
+
+  private Writer writer;
+  private boolean rowStarted;
+
+
+  public CsvOutput(Writer writer) {
+    this.writer = writer;
+    this.rowStarted = false;
+  }
+
+
+  /**
+   * Open the file in the platform's default encoding (as FileWriter
+   * did), compressing it if its name ends in .gz.
+   */
+  public static CsvOutput open(File file) throws IOException {
+    OutputStream stream = Files.newOutputStream(file.toPath());
+    if (file.getName().endsWith(".gz")) {
+      stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+    }
+    return new CsvOutput(new BufferedWriter(new OutputStreamWriter(stream, Charset.defaultCharset()), BUFFER_SIZE));
+  }
+
+
+  /**
+   * @return the underlying writer, e.g. for an opencsv writer that
+   * writes the headers (which must be flushed before any more rows
+   * are written here)
+   */
+  public Writer getWriter() {
+    return this.writer;
+  }
+
+
+  public CsvOutput field(String value) throws IOException {
+    separate();
+    append(writer, value);
+    return this;
+  }
+
+
+  public CsvOutput field(int value) throws IOException {
+    separate();
+    writer.write(Integer.toString(value));
+    return this;
+  }
+
+
+  /**
+   * Write text that has already been escaped (see append), such as
+   * the start of a row that is repeated.
+   */
+  public CsvOutput raw(CharSequence text) throws IOException {
+    writer.append(text);
+    rowStarted = true;
+    return this;
+  }
+
+
+  public void endRow() throws IOException {
+    writer.write(LINE_END);
+    rowStarted = false;
+  }
+
+
+  public void close() throws IOException {
+    writer.close();
+  }
+
+
+  /**
+   * Append one escaped field: quoted if it contains a comma, quote or
+   * newline, with any quotes doubled.
+   */
+  public static void append(Appendable out, String value) throws IOException {
+    if (value == null) {
+      out.append("null");
+      return;
+    }
+
+    boolean hasQuote = value.indexOf('"') >= 0;
+    if ( (! hasQuote) && (value.indexOf(',') < 0) && (value.indexOf('\n') < 0) ) {
+      out.append(value);
+      return;
+    }
+
+    out.append('"');
+    if (hasQuote) {
+      for (int i = 0 ; i < value.length() ; i++) {
+        char c = value.charAt(i);
+        if (c == '"') {
+          out.append('"');
+        }
+        out.append(c);
+      }
+    }
+    else {
+      out.append(value);
+    }
+    out.append('"');
+  }
+
+
+  private void separate() throws IOException {
+    if (rowStarted) {
+      writer.write(',');
+    }
+    rowStarted = true;
+  }
+
+}
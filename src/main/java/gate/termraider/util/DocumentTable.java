@@ -0,0 +1,147 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Numbers the documents (or segments) seen by a bank 0, 1, 2... in
+ * order of first appearance, so that each one's DocumentIdentifier
+ * is stored only once and the postings can hold ints.  The size
+ * includes the numbers of removed documents.
+ */
+public class DocumentTable implements Serializable {
+
+  private static final long serialVersionUID = 7940517340612087561L;
+
+  private List<DocumentIdentifier> documents;
+  private Map<DocumentIdentifier, Integer> numbers;
+
+
+  public DocumentTable() {
+    this.documents = new ArrayList<DocumentIdentifier>();
+    this.numbers = new HashMap<DocumentIdentifier, Integer>();
+  }
+
+
+  public int size() {
+    return this.documents.size();
+  }
+
+
+  /**
+   * @return the document, or null if it has been removed
+   */
+  public DocumentIdentifier get(int documentNumber) {
+    return this.documents.get(documentNumber);
+  }
+
+
+  /**
+   * @return the document's number, or -1 if it is not in the table
+   */
+  public int getNumber(DocumentIdentifier document) {
+    Integer number = numbers.get(document);
+    if (number == null) {
+      return -1;
+    }
+    return number;
+  }
+
+
+  /**
+   * @return the document's number, adding it if necessary
+   */
+  public int add(DocumentIdentifier document) {
+    Integer number = numbers.get(document);
+    if (number != null) {
+      return number;
+    }
+
+    int newNumber = documents.size();
+    documents.add(document);
+    numbers.put(document, newNumber);
+    return newNumber;
+  }
+
+
+  /**
+   * Remove a document.  Its number is not reused, so the other
+   * numbers (and therefore the postings) stay valid.
+   */
+  public void remove(int documentNumber) {
+    DocumentIdentifier document = documents.get(documentNumber);
+    if (document != null) {
+      numbers.remove(document);
+      documents.set(documentNumber, null);
+    }
+  }
+
+
+  /**
+   * Add all the documents from another table.
+   * @return an array mapping the other table's numbers to this one's
+   */
+  public int[] addAll(DocumentTable other) {
+    int[] renumbering = new int[other.size()];
+    for (int i = 0 ; i < renumbering.length ; i++) {
+      DocumentIdentifier document = other.get(i);
+      renumbering[i] = (document == null) ? -1 : add(document);
+    }
+    return renumbering;
+  }
+
+
+  /**
+   * Write the table (including the gaps left by removed documents)
+   * to a snapshot.
+   */
+  public void write(SnapshotOutput output) throws IOException {
+    output.writeInt(documents.size());
+    for (DocumentIdentifier document : documents) {
+      output.writeBoolean(document != null);
+      if (document != null) {
+        URL url = document.getURL();
+        output.writeString( (url == null) ? null : url.toExternalForm());
+        output.writeString(document.getIdentifier());
+        output.writeInt(document.getIndex());
+      }
+    }
+  }
+
+
+  /**
+   * Read a table written by write() onto the heap.
+   */
+  public static DocumentTable read(MappedFile.Input input) throws IOException {
+    DocumentTable table = new DocumentTable();
+    int size = input.readInt();
+    for (int i = 0 ; i < size ; i++) {
+      if (input.readBoolean()) {
+        String url = input.readString();
+        String identifier = input.readString();
+        int index = input.readInt();
+        table.add(new DocumentIdentifier( (url == null) ? null : new URL(url), identifier, index));
+      }
+      else {
+        table.documents.add(null);
+      }
+    }
+    return table;
+  }
+
+}
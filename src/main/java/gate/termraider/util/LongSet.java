@@ -0,0 +1,116 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.util.Arrays;
+
+
+/**
+ * A set of longs in an open-addressing table, for keeping track of
+ * things like pairs of annotation IDs without boxing them.  It can
+ * be cleared and reused without giving up its table.
+ */
+public class LongSet {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  // 0 marks an empty slot, so the key 0 is stored separately
+  private long[] table;
+  private int size;
+  private boolean containsZero;
+
+
+  public LongSet() {
+    this.table = new long[INITIAL_CAPACITY];
+    this.size = 0;
+    this.containsZero = false;
+  }
+
+
+  public int size() {
+    return this.size + (containsZero ? 1 : 0);
+  }
+
+
+  /**
+   * @return true if the key was not already in the set
+   */
+  public boolean add(long key) {
+    if (key == 0L) {
+      boolean added = ! containsZero;
+      containsZero = true;
+      return added;
+    }
+
+    int mask = table.length - 1;
+    for (int slot = spread(key) & mask ; ; slot = (slot + 1) & mask) {
+      if (table[slot] == key) {
+        return false;
+      }
+      if (table[slot] == 0L) {
+        table[slot] = key;
+        size++;
+        if (size * 2 > table.length) {
+          rehash(table.length * 2);
+        }
+        return true;
+      }
+    }
+  }
+
+
+  public boolean contains(long key) {
+    if (key == 0L) {
+      return containsZero;
+    }
+
+    int mask = table.length - 1;
+    for (int slot = spread(key) & mask ; ; slot = (slot + 1) & mask) {
+      if (table[slot] == key) {
+        return true;
+      }
+      if (table[slot] == 0L) {
+        return false;
+      }
+    }
+  }
+
+
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(table, 0L);
+      size = 0;
+    }
+    containsZero = false;
+  }
+
+
+  private void rehash(int capacity) {
+    long[] oldTable = table;
+    table = new long[capacity];
+    int mask = capacity - 1;
+    for (long key : oldTable) {
+      if (key != 0L) {
+        int slot = spread(key) & mask;
+        while (table[slot] != 0L) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+      }
+    }
+  }
+
+
+  private static int spread(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * A read-only memory mapping of a whole file, which may be bigger
+ * than the 2 GB limit of a single MappedByteBuffer.  The file is
+ * mapped in 1 GB chunks.  Ints, longs and doubles aligned to their
+ * size (see SnapshotOutput.align) never cross a chunk boundary and are
+ * read directly; any others are put together from their bytes.
+ * Nothing is read until it is used, so opening a large file is quick.
+ */
+public class MappedFile {
+
+  private static final int DEFAULT_CHUNK_BITS = 30;
+
+  private final int chunkBits;
+  private final long chunkSize;
+  private final int chunkMask;
+
+  private File file;
+  private long length;
+  private MappedByteBuffer[] chunks;
+
+
+  public MappedFile(File file) throws IOException {
+    this(file, DEFAULT_CHUNK_BITS);
+  }
+
+
+  /**
+   * Map the file in chunks of 2^chunkBits bytes (smaller chunks are
+   * only useful for testing the boundaries).
+   */
+  MappedFile(File file, int chunkBits) throws IOException {
+    this.chunkBits = chunkBits;
+    this.chunkSize = 1L << chunkBits;
+    this.chunkMask = (int) (chunkSize - 1);
+    this.file = file;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      this.length = channel.size();
+      int nbrChunks = (int) ((length + chunkSize - 1) >>> chunkBits);
+      this.chunks = new MappedByteBuffer[nbrChunks];
+      for (int i = 0 ; i < nbrChunks ; i++) {
+        long start = ((long) i) << chunkBits;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, length - start));
+      }
+    }
+    finally {
+      // the mappings stay valid after the file is closed
+      raf.close();
+    }
+  }
+
+
+  public File getFile() {
+    return this.file;
+  }
+
+
+  public long length() {
+    return this.length;
+  }
+
+
+  public byte getByte(long position) {
+    return chunks[(int) (position >>> chunkBits)].get((int) position & chunkMask);
+  }
+
+
+  public int getInt(long position) {
+    int offset = (int) position & chunkMask;
+    if (offset <= chunkSize - 4) {
+      return chunks[(int) (position >>> chunkBits)].getInt(offset);
+    }
+    // implied else: the value crosses a chunk boundary
+    return (int) getBigEndian(position, 4);
+  }
+
+
+  public long getLong(long position) {
+    int offset = (int) position & chunkMask;
+    if (offset <= chunkSize - 8) {
+      return chunks[(int) (position >>> chunkBits)].getLong(offset);
+    }
+    // implied else: the value crosses a chunk boundary
+    return getBigEndian(position, 8);
+  }
+
+
+  public double getDouble(long position) {
+    return Double.longBitsToDouble(getLong(position));
+  }
+
+
+  private long getBigEndian(long position, int count) {
+    long value = 0L;
+    for (int i = 0 ; i < count ; i++) {
+      value = (value << 8) | (getByte(position + i) & 0xFF);
+    }
+    return value;
+  }
+
+
+  public void getBytes(long position, byte[] destination, int offset, int count) {
+    for (int i = 0 ; i < count ; i++) {
+      destination[offset + i] = getByte(position + i);
+    }
+  }
+
+
+  /**
+   * @return the UTF-8 string stored in the given bytes
+   */
+  public String getString(long position, int count) {
+    byte[] bytes = new byte[count];
+    getBytes(position, bytes, 0, count);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+
+  /**
+   * @return a reader starting at the given position
+   */
+  public Input input(long position) {
+    return new Input(position);
+  }
+
+
+  /**
+   * Reads the file sequentially, in the same format as SnapshotOutput
+   * writes it.
+   */
+  public class Input {
+    private long position;
+
+    public Input(long position) {
+      this.position = position;
+    }
+
+    public long position() {
+      return this.position;
+    }
+
+    public void align(int size) {
+      long remainder = position % size;
+      if (remainder > 0) {
+        position += size - remainder;
+      }
+    }
+
+    public void skip(long count) {
+      position += count;
+    }
+
+    public byte readByte() {
+      return getByte(position++);
+    }
+
+    public boolean readBoolean() {
+      return readByte() != 0;
+    }
+
+    public int readInt() {
+      int value = getInt(position);
+      position += 4;
+      return value;
+    }
+
+    public long readLong() {
+      long value = getLong(position);
+      position += 8;
+      return value;
+    }
+
+    public double readDouble() {
+      double value = getDouble(position);
+      position += 8;
+      return value;
+    }
+
+    /**
+     * @return a string written by SnapshotOutput.writeString (possibly null)
+     */
+    public String readString() {
+      int count = readInt();
+      if (count < 0) {
+        return null;
+      }
+      String value = getString(position, count);
+      position += count;
+      return value;
+    }
+  }
+
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Growable memory outside the Java heap, made of 1 MB direct
+ * ByteBuffers that are added as they are needed (so growing never
+ * copies anything).  Unlike MappedFile, ints, longs and doubles
+ * must be aligned to their size so that none of them crosses a chunk
+ * boundary.  The memory is new and zeroed, and it is released when
+ * the buffer is garbage collected; the JVM's
+ * -XX:MaxDirectMemorySize limits the total.
+ */
+public class OffHeapBuffer {
+
+  private static final int CHUNK_BITS = 20;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private ByteBuffer[] chunks;
+  private int nbrChunks;
+
+
+  public OffHeapBuffer() {
+    this.chunks = new ByteBuffer[16];
+    this.nbrChunks = 0;
+  }
+
+
+  /**
+   * @return the number of bytes allocated
+   */
+  public long capacity() {
+    return ((long) nbrChunks) << CHUNK_BITS;
+  }
+
+
+  /**
+   * Make positions below end usable.
+   */
+  public void ensureCapacity(long end) {
+    while (capacity() < end) {
+      if (nbrChunks == chunks.length) {
+        ByteBuffer[] newChunks = new ByteBuffer[nbrChunks * 2];
+        System.arraycopy(chunks, 0, newChunks, 0, nbrChunks);
+        chunks = newChunks;
+      }
+      chunks[nbrChunks++] = ByteBuffer.allocateDirect(CHUNK_SIZE).order(ByteOrder.nativeOrder());
+    }
+  }
+
+
+  public int getInt(long position) {
+    return chunk(position).getInt((int) position & CHUNK_MASK);
+  }
+
+
+  public void putInt(long position, int value) {
+    chunk(position).putInt((int) position & CHUNK_MASK, value);
+  }
+
+
+  public long getLong(long position) {
+    return chunk(position).getLong((int) position & CHUNK_MASK);
+  }
+
+
+  public void putLong(long position, long value) {
+    chunk(position).putLong((int) position & CHUNK_MASK, value);
+  }
+
+
+  public double getDouble(long position) {
+    return chunk(position).getDouble((int) position & CHUNK_MASK);
+  }
+
+
+  public void putDouble(long position, double value) {
+    chunk(position).putDouble((int) position & CHUNK_MASK, value);
+  }
+
+
+  public void getBytes(long position, byte[] destination, int offset, int count) {
+    while (count > 0) {
+      ByteBuffer chunk = chunk(position).duplicate();
+      int start = (int) position & CHUNK_MASK;
+      int length = Math.min(count, CHUNK_SIZE - start);
+      chunk.position(start);
+      chunk.get(destination, offset, length);
+      position += length;
+      offset += length;
+      count -= length;
+    }
+  }
+
+
+  public void putBytes(long position, byte[] source, int offset, int count) {
+    ensureCapacity(position + count);
+    while (count > 0) {
+      ByteBuffer chunk = chunk(position).duplicate();
+      int start = (int) position & CHUNK_MASK;
+      int length = Math.min(count, CHUNK_SIZE - start);
+      chunk.position(start);
+      chunk.put(source, offset, length);
+      position += length;
+      offset += length;
+      count -= length;
+    }
+  }
+
+
+  /**
+   * Compare the count bytes at position with the string's UTF-8
+   * encoding (as String.getBytes gives it), encoding only as far as
+   * the first difference and without allocating anything.
+   * @return true if they are the same
+   */
+  public boolean utf8Equals(long position, long count, String string) {
+    int length = string.length();
+    // each char takes 1 to 3 bytes (a surrogate pair takes 4)
+    if ( (count < length) || (count > 3L * length) ) {
+      return false;
+    }
+    
+    long p = position;
+    long end = position + count;
+    for (int i = 0 ; i < length ; i++) {
+      char c = string.charAt(i);
+      if (c < 0x80) {
+        if ( (p >= end) || (getByte(p++) != (byte) c) ) {
+          return false;
+        }
+      }
+      else if (c < 0x800) {
+        if ( (p + 2 > end) || (getByte(p++) != (byte) (0xC0 | (c >> 6)))
+                || (getByte(p++) != (byte) (0x80 | (c & 0x3F))) ) {
+          return false;
+        }
+      }
+      else if (Character.isSurrogate(c)) {
+        if ( Character.isHighSurrogate(c) && (i + 1 < length) 
+                && Character.isLowSurrogate(string.charAt(i + 1)) ) {
+          int codePoint = Character.toCodePoint(c, string.charAt(++i));
+          if ( (p + 4 > end) || (getByte(p++) != (byte) (0xF0 | (codePoint >> 18)))
+                  || (getByte(p++) != (byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+                  || (getByte(p++) != (byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+                  || (getByte(p++) != (byte) (0x80 | (codePoint & 0x3F))) ) {
+            return false;
+          }
+        }
+        else {
+          // an unpaired surrogate is encoded as '?'
+          if ( (p >= end) || (getByte(p++) != (byte) '?') ) {
+            return false;
+          }
+        }
+      }
+      else {
+        if ( (p + 3 > end) || (getByte(p++) != (byte) (0xE0 | (c >> 12)))
+                || (getByte(p++) != (byte) (0x80 | ((c >> 6) & 0x3F)))
+                || (getByte(p++) != (byte) (0x80 | (c & 0x3F))) ) {
+          return false;
+        }
+      }
+    }
+    return p == end;
+  }
+
+
+  private byte getByte(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)].get((int) position & CHUNK_MASK);
+  }
+
+
+  private ByteBuffer chunk(long position) {
+    return chunks[(int) (position >>> CHUNK_BITS)];
+  }
+
+}
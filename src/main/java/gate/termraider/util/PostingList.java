@@ -0,0 +1,395 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+
+/**
+ * The sorted, distinct document numbers (see DocumentTable) for one
+ * term, stored as variable-length deltas in a byte array.  Documents
+ * are normally processed in order, so adding a number is usually an
+ * append; adding a repeat of the last number does nothing.
+ * 
+ * A list loaded from a snapshot reads its bytes from the mapped
+ * file until it is changed, when they are copied onto the heap.
+ */
+public class PostingList implements Serializable {
+
+  private static final long serialVersionUID = 2395829003163837719L;
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private byte[] data;
+  private int length;
+  private int count;
+  private int last;
+  
+  // set only while the bytes are still in a snapshot
+  private transient MappedFile file;
+  private long fileOffset;
+
+
+  public PostingList() {
+    this.data = new byte[INITIAL_CAPACITY];
+    this.length = 0;
+    this.count = 0;
+    this.last = -1;
+  }
+
+
+  PostingList(MappedFile file, long fileOffset, int length, int count, int last) {
+    this.file = file;
+    this.fileOffset = fileOffset;
+    this.data = null;
+    this.length = length;
+    this.count = count;
+    this.last = last;
+  }
+
+
+  /**
+   * @return the number of distinct documents
+   */
+  public int size() {
+    return this.count;
+  }
+
+
+  /**
+   * @return true if the number was not already in the list
+   */
+  public boolean add(int documentNumber) {
+    materialize();
+    if (documentNumber > last) {
+      append(documentNumber);
+      return true;
+    }
+
+    if (documentNumber == last) {
+      return false;
+    }
+
+    // out of order: rare, so just rebuild the list
+    int[] numbers = toArray();
+    int position = Arrays.binarySearch(numbers, documentNumber);
+    if (position >= 0) {
+      return false;
+    }
+    position = -(position + 1);
+    int[] newNumbers = new int[numbers.length + 1];
+    System.arraycopy(numbers, 0, newNumbers, 0, position);
+    newNumbers[position] = documentNumber;
+    System.arraycopy(numbers, position, newNumbers, position + 1, numbers.length - position);
+    encode(newNumbers, newNumbers.length);
+    return true;
+  }
+
+
+  /**
+   * @return true if the number was in the list
+   */
+  public boolean remove(int documentNumber) {
+    if (! contains(documentNumber)) {
+      return false;
+    }
+
+    int[] numbers = toArray();
+    int[] newNumbers = new int[numbers.length - 1];
+    int k = 0;
+    for (int number : numbers) {
+      if (number != documentNumber) {
+        newNumbers[k++] = number;
+      }
+    }
+    encode(newNumbers, k);
+    return true;
+  }
+
+
+  /**
+   * Add all the numbers from another list.
+   * @param other the list to add
+   * @param renumbering maps the other list's document numbers to this
+   * one's; null if they are the same
+   */
+  public void addAll(PostingList other, int[] renumbering) {
+    materialize();
+    int[] otherNumbers = other.toArray();
+    if (renumbering != null) {
+      for (int i = 0 ; i < otherNumbers.length ; i++) {
+        otherNumbers[i] = renumbering[otherNumbers[i]];
+      }
+      Arrays.sort(otherNumbers);
+    }
+
+    if ( (count == 0) || (otherNumbers.length == 0) || (otherNumbers[0] > last) ) {
+      for (int number : otherNumbers) {
+        add(number);
+      }
+      return;
+    }
+
+    // merge the two sorted arrays, dropping duplicates
+    int[] numbers = toArray();
+    int[] merged = new int[numbers.length + otherNumbers.length];
+    int i = 0, j = 0, k = 0;
+    while ( (i < numbers.length) || (j < otherNumbers.length) ) {
+      int next;
+      if (j >= otherNumbers.length) {
+        next = numbers[i++];
+      }
+      else if ( (i >= numbers.length) || (otherNumbers[j] < numbers[i]) ) {
+        next = otherNumbers[j++];
+      }
+      else {
+        if (otherNumbers[j] == numbers[i]) {
+          j++;
+        }
+        next = numbers[i++];
+      }
+      merged[k++] = next;
+    }
+    encode(merged, k);
+  }
+
+
+  /**
+   * @return true if the document number is in the list
+   */
+  public boolean contains(int documentNumber) {
+    if ( (documentNumber > last) || (documentNumber < 0) ) {
+      return false;
+    }
+    Cursor cursor = cursor();
+    while (cursor.hasNext()) {
+      int number = cursor.next();
+      if (number >= documentNumber) {
+        return number == documentNumber;
+      }
+    }
+    return false;
+  }
+
+
+  public int[] toArray() {
+    int[] numbers = new int[count];
+    Cursor cursor = cursor();
+    for (int i = 0 ; i < count ; i++) {
+      numbers[i] = cursor.next();
+    }
+    return numbers;
+  }
+
+
+  /**
+   * Release the spare capacity once the list is complete.
+   */
+  public void trimToSize() {
+    if ( (data != null) && (data.length > length) ) {
+      data = Arrays.copyOf(data, length);
+    }
+  }
+
+
+  /**
+   * @return a rough count of the heap bytes used by the list; a list
+   * still read from a snapshot counts as nothing, since the snapshot's
+   * TermIdMap makes a new one every time it is fetched
+   */
+  public long estimateHeapBytes() {
+    if (data == null) {
+      return 0;
+    }
+    return 40 + 16 + data.length;
+  }
+
+
+  /**
+   * @return a cursor that decodes the numbers in ascending order
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+
+  /**
+   * Write the postings for term ids 0 to size - 1 to a snapshot.
+   */
+  public static void write(TermIdMap<PostingList> termPostings, int size, SnapshotOutput output) 
+          throws IOException {
+    int present = 0;
+    for (int id = 0 ; id < size ; id++) {
+      if (termPostings.get(id) != null) {
+        present++;
+      }
+    }
+    output.writeInt(size);
+    output.writeInt(present);
+    output.align(8);
+
+    // byte offsets into the data, then counts (-1 = no list) and last numbers
+    long offset = 0L;
+    for (int id = 0 ; id < size ; id++) {
+      output.writeLong(offset);
+      PostingList postings = termPostings.get(id);
+      if (postings != null) {
+        offset += postings.length;
+      }
+    }
+    output.writeLong(offset);
+    for (int id = 0 ; id < size ; id++) {
+      PostingList postings = termPostings.get(id);
+      output.writeInt( (postings == null) ? -1 : postings.count);
+    }
+    for (int id = 0 ; id < size ; id++) {
+      PostingList postings = termPostings.get(id);
+      output.writeInt( (postings == null) ? -1 : postings.last);
+    }
+    
+    byte[] buffer = new byte[4096];
+    for (int id = 0 ; id < size ; id++) {
+      PostingList postings = termPostings.get(id);
+      if (postings == null) {
+        continue;
+      }
+      if (postings.file == null) {
+        output.write(postings.data, 0, postings.length);
+      }
+      else {
+        for (int done = 0 ; done < postings.length ; done += buffer.length) {
+          int chunk = Math.min(buffer.length, postings.length - done);
+          postings.file.getBytes(postings.fileOffset + done, buffer, 0, chunk);
+          output.write(buffer, 0, chunk);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * @return a map of the postings written by write(), read from the
+   * mapped file as they are needed
+   */
+  public static TermIdMap<PostingList> map(final MappedFile file, long position, TermDictionary dictionary) {
+    MappedFile.Input input = file.input(position);
+    final int size = input.readInt();
+    final int present = input.readInt();
+    input.align(8);
+    final long offsets = input.position();
+    final long counts = offsets + 8L * (size + 1);
+    final long lasts = counts + 4L * size;
+    final long start = lasts + 4L * size;
+    
+    return new TermIdMap<PostingList>(dictionary, new TermIdMap.Source<PostingList>() {
+      public int size() {
+        return size;
+      }
+
+      public int count() {
+        return present;
+      }
+
+      public PostingList get(int id) {
+        int count = file.getInt(counts + 4L * id);
+        if (count < 0) {
+          return null;
+        }
+        long offset = file.getLong(offsets + 8L * id);
+        int length = (int) (file.getLong(offsets + 8L * (id + 1)) - offset);
+        return new PostingList(file, start + offset, length, count, file.getInt(lasts + 4L * id));
+      }
+    });
+  }
+
+
+  private void materialize() {
+    if (file != null) {
+      data = new byte[Math.max(INITIAL_CAPACITY, length)];
+      file.getBytes(fileOffset, data, 0, length);
+      file = null;
+    }
+  }
+
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    materialize();
+    out.defaultWriteObject();
+  }
+
+
+  private void append(int documentNumber) {
+    int delta = (count == 0) ? documentNumber : documentNumber - last;
+    ensureCapacity(length + 5);
+    while ( (delta & ~0x7F) != 0) {
+      data[length++] = (byte) ((delta & 0x7F) | 0x80);
+      delta >>>= 7;
+    }
+    data[length++] = (byte) delta;
+    last = documentNumber;
+    count++;
+  }
+
+
+  private void encode(int[] numbers, int n) {
+    file = null;
+    data = new byte[Math.max(INITIAL_CAPACITY, n * 2)];
+    length = 0;
+    count = 0;
+    last = -1;
+    for (int i = 0 ; i < n ; i++) {
+      append(numbers[i]);
+    }
+  }
+
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > data.length) {
+      data = Arrays.copyOf(data, Math.max(data.length * 2, capacity));
+    }
+  }
+
+
+  /**
+   * Decodes the list one number at a time.
+   */
+  public class Cursor {
+    private int position = 0;
+    private int decoded = 0;
+    private int value = 0;
+
+    public boolean hasNext() {
+      return decoded < count;
+    }
+
+    public int next() {
+      if (decoded >= count) {
+        throw new NoSuchElementException();
+      }
+      int delta = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = (file == null) ? data[position] : file.getByte(fileOffset + position);
+        position++;
+        delta |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ( (b & 0x80) != 0);
+      value = (decoded == 0) ? delta : value + delta;
+      decoded++;
+      return value;
+    }
+  }
+
+}
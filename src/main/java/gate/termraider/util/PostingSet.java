@@ -0,0 +1,63 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+
+/**
+ * A read-only Set view of a PostingList: the DocumentIdentifiers are
+ * looked up in the DocumentTable as the iterator reaches them.
+ */
+public class PostingSet extends AbstractSet<DocumentIdentifier> {
+
+  private PostingList postings;
+  private DocumentTable documentTable;
+
+
+  public PostingSet(PostingList postings, DocumentTable documentTable) {
+    this.postings = postings;
+    this.documentTable = documentTable;
+  }
+
+
+  @Override
+  public int size() {
+    return postings.size();
+  }
+
+
+  @Override
+  public boolean contains(Object object) {
+    if (object instanceof DocumentIdentifier) {
+      return postings.contains(documentTable.getNumber((DocumentIdentifier) object));
+    }
+    return false;
+  }
+
+
+  @Override
+  public Iterator<DocumentIdentifier> iterator() {
+    final PostingList.Cursor cursor = postings.cursor();
+    return new Iterator<DocumentIdentifier>() {
+      @Override
+      public boolean hasNext() {
+        return cursor.hasNext();
+      }
+
+      @Override
+      public DocumentIdentifier next() {
+        return documentTable.get(cursor.next());
+      }
+    };
+  }
+
+}
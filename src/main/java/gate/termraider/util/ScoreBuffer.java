@@ -0,0 +1,126 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Scores calculated for one range of term ids, held until they can
+ * be copied into the ScoreStore.  Each worker thread fills its own
+ * buffer, so the store itself is only changed by one thread.  The
+ * languages and types of the terms are collected here too, in the
+ * order they are first seen.
+ */
+public class ScoreBuffer {
+
+  private static final byte EMPTY = 0;
+  private static final byte INT = 1;
+  private static final byte DOUBLE = 2;
+
+  private List<ScoreType> scoreTypes;
+  private int from, to;
+  private double[][] values;
+  private byte[][] kinds;
+  private Set<String> languages, types;
+
+
+  /**
+   * @param from first term id
+   * @param to one past the last term id
+   */
+  public ScoreBuffer(List<ScoreType> scoreTypes, int from, int to) {
+    this.scoreTypes = scoreTypes;
+    this.from = from;
+    this.to = to;
+    this.values = new double[scoreTypes.size()][];
+    this.kinds = new byte[scoreTypes.size()][];
+    this.languages = new LinkedHashSet<String>();
+    this.types = new LinkedHashSet<String>();
+  }
+
+
+  public int getFrom() {
+    return this.from;
+  }
+
+
+  public int getTo() {
+    return this.to;
+  }
+
+
+  public void setInt(ScoreType type, int id, int value) {
+    set(type, id, value, INT);
+  }
+
+
+  public void setDouble(ScoreType type, int id, double value) {
+    set(type, id, value, DOUBLE);
+  }
+
+
+  public void addTerm(Term term) {
+    languages.add(term.getLanguageCode());
+    types.add(term.getType());
+  }
+
+
+  public Set<String> getLanguages() {
+    return this.languages;
+  }
+
+
+  public Set<String> getTypes() {
+    return this.types;
+  }
+
+
+  /**
+   * Set the scores in the store, column by column; the result is
+   * the same as setting them term by term.
+   */
+  public void copyTo(ScoreStore scores) {
+    for (int column = 0 ; column < values.length ; column++) {
+      if (values[column] == null) {
+        continue;
+      }
+      ScoreType type = scoreTypes.get(column);
+      for (int i = 0 ; i < values[column].length ; i++) {
+        if (kinds[column][i] == INT) {
+          scores.setInt(type, from + i, (int) values[column][i]);
+        }
+        else if (kinds[column][i] == DOUBLE) {
+          scores.setDouble(type, from + i, values[column][i]);
+        }
+      }
+    }
+  }
+
+
+  private void set(ScoreType type, int id, double value, byte kind) {
+    if ( (id < from) || (id >= to) ) {
+      throw new IndexOutOfBoundsException("Term id " + id + " is not in " + from + ".." + (to - 1));
+    }
+    int column = scoreTypes.indexOf(type);
+    if (column < 0) {
+      throw new IllegalArgumentException("No such score type: " + type);
+    }
+    if (values[column] == null) {
+      values[column] = new double[to - from];
+      kinds[column] = new byte[to - from];
+    }
+    values[column][id - from] = value;
+    kinds[column][id - from] = kind;
+  }
+
+}
@@ -0,0 +1,860 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * Columnar storage for a termbank's scores.  Each ScoreType has one
+ * primitive column indexed by the terms' ids in the bank's
+ * TermDictionary.  A column holds ints until a non-integer value is
+ * stored in it, so the Numbers handed out are Integers for counts
+ * and Doubles for real scores, as they were when the scores were
+ * kept in maps.
+ */
+public class ScoreStore implements Serializable {
+
+  private static final long serialVersionUID = -3203465470155573232L;
+
+  private TermDictionary dictionary;
+  private Map<ScoreType, ScoreColumn> columns;
+
+
+  public ScoreStore(TermDictionary dictionary, List<ScoreType> scoreTypes) {
+    this.dictionary = dictionary;
+    this.columns = new LinkedHashMap<ScoreType, ScoreColumn>();
+    for (ScoreType type : scoreTypes) {
+      columns.put(type, new ScoreColumn());
+    }
+  }
+
+
+  private ScoreStore(TermDictionary dictionary, Map<ScoreType, ScoreColumn> columns) {
+    this.dictionary = dictionary;
+    this.columns = columns;
+  }
+
+
+  /**
+   * Write the columns, with a value (or 0) for every term in the
+   * dictionary, to a snapshot.
+   */
+  public void write(SnapshotOutput output) throws IOException {
+    int size = dictionary.size();
+    output.writeInt(size);
+    output.writeInt(columns.size());
+    for (Map.Entry<ScoreType, ScoreColumn> entry : columns.entrySet()) {
+      output.writeString(entry.getKey().toString());
+      entry.getValue().write(output, size);
+    }
+  }
+
+
+  /**
+   * @return a store whose columns are read from a snapshot written
+   * by write() as they are needed
+   * @throws IOException if the snapshot's score types are not the
+   * expected ones
+   */
+  public static ScoreStore map(MappedFile file, long position, TermDictionary dictionary, 
+          List<ScoreType> scoreTypes) throws IOException {
+    MappedFile.Input input = file.input(position);
+    int size = input.readInt();
+    int nbrColumns = input.readInt();
+    if (nbrColumns != scoreTypes.size()) {
+      throw new IOException("Snapshot has " + nbrColumns + " score types, expected " + scoreTypes.size());
+    }
+    
+    Map<ScoreType, ScoreColumn> columns = new LinkedHashMap<ScoreType, ScoreColumn>();
+    for (ScoreType type : scoreTypes) {
+      String name = input.readString();
+      if (! name.equals(type.toString())) {
+        throw new IOException("Snapshot has score type " + name + ", expected " + type);
+      }
+      columns.put(type, new MappedScoreColumn(file, input, size));
+    }
+    return new ScoreStore(dictionary, columns);
+  }
+
+
+  /**
+   * @return an empty store whose columns are kept in direct memory
+   * outside the heap
+   */
+  public static ScoreStore offHeap(TermDictionary dictionary, List<ScoreType> scoreTypes) {
+    Map<ScoreType, ScoreColumn> columns = new LinkedHashMap<ScoreType, ScoreColumn>();
+    for (ScoreType type : scoreTypes) {
+      columns.put(type, new OffHeapScoreColumn());
+    }
+    return new ScoreStore(dictionary, columns);
+  }
+
+
+  /**
+   * @return the number of terms (and therefore the upper bound
+   * on term ids)
+   */
+  public int size() {
+    return this.dictionary.size();
+  }
+
+
+  /**
+   * @return the term's id, or -1 if it is not in the dictionary
+   */
+  public int getTermId(Term term) {
+    return this.dictionary.getId(term);
+  }
+
+
+  /**
+   * @return the existing id of the term, or a new one
+   */
+  public int addTerm(Term term) {
+    return this.dictionary.intern(term);
+  }
+
+
+  public Term getTerm(int id) {
+    return this.dictionary.getTerm(id);
+  }
+
+
+  public TermDictionary getDictionary() {
+    return this.dictionary;
+  }
+
+
+  /**
+   * @return a rough count of the heap bytes used by the scores (not
+   * including the dictionary)
+   */
+  public long estimateHeapBytes() {
+    long bytes = 0;
+    for (ScoreColumn column : columns.values()) {
+      bytes += column.estimateHeapBytes();
+    }
+    return bytes;
+  }
+
+
+  /**
+   * @return the bytes of direct memory used by off-heap columns
+   */
+  public long estimateOffHeapBytes() {
+    long bytes = 0;
+    for (ScoreColumn column : columns.values()) {
+      bytes += column.estimateOffHeapBytes();
+    }
+    return bytes;
+  }
+
+
+  public boolean hasScore(ScoreType type, int id) {
+    return getColumn(type).has(id);
+  }
+
+
+  /**
+   * @return true if the column holds doubles (so its boxed scores 
+   * are Doubles), false if it holds ints
+   */
+  public boolean isDouble(ScoreType type) {
+    return getColumn(type).isDouble();
+  }
+
+
+  public int getInt(ScoreType type, int id) {
+    return getColumn(type).getInt(id);
+  }
+
+
+  public double getDouble(ScoreType type, int id) {
+    return getColumn(type).getDouble(id);
+  }
+
+
+  public void setInt(ScoreType type, int id, int value) {
+    getColumn(type).setInt(id, value);
+  }
+
+
+  public void setDouble(ScoreType type, int id, double value) {
+    getColumn(type).setDouble(id, value);
+  }
+
+
+  public int incrementInt(ScoreType type, int id, int increment) {
+    ScoreColumn column = getColumn(type);
+    int value = column.has(id) ? column.getInt(id) + increment : increment;
+    column.setInt(id, value);
+    return value;
+  }
+
+
+  /**
+   * Remove all the term's scores (it stays in the dictionary).
+   */
+  public void clearScores(int id) {
+    for (ScoreColumn column : columns.values()) {
+      column.clear(id);
+    }
+  }
+
+
+  /**
+   * @return the boxed score, or null if the term has none
+   * of this type
+   */
+  public Number getScore(ScoreType type, Term term) {
+    int id = getTermId(term);
+    if (id < 0) {
+      return null;
+    }
+    return getColumn(type).get(id);
+  }
+
+
+  /**
+   * Integer values go into int columns; anything else is stored
+   * as a double.
+   */
+  public void setScore(ScoreType type, Term term, Number value) {
+    int id = addTerm(term);
+    if (isInteger(value)) {
+      setInt(type, id, value.intValue());
+    }
+    else {
+      setDouble(type, id, value.doubleValue());
+    }
+  }
+
+
+  public int incrementScore(ScoreType type, Term term, int increment) {
+    return incrementInt(type, addTerm(term), increment);
+  }
+
+
+  /**
+   * @return a read-only Map view of one score column; it reflects
+   * later changes to the store
+   */
+  public Map<Term, Number> getScoreMap(ScoreType type) {
+    return new ScoreColumnMap(getColumn(type));
+  }
+
+
+  private ScoreColumn getColumn(ScoreType type) {
+    ScoreColumn column = columns.get(type);
+    if (column == null) {
+      throw new IllegalArgumentException("No such score type: " + type);
+    }
+    return column;
+  }
+
+
+  private static boolean isInteger(Number value) {
+    return (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte);
+  }
+
+
+  private class ScoreColumnMap extends AbstractMap<Term, Number> {
+
+    private ScoreColumn column;
+
+    public ScoreColumnMap(ScoreColumn column) {
+      this.column = column;
+    }
+
+    @Override
+    public Number get(Object key) {
+      if (key instanceof Term) {
+        int id = getTermId((Term) key);
+        if (id >= 0) {
+          return column.get(id);
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      if (key instanceof Term) {
+        int id = getTermId((Term) key);
+        return (id >= 0) && column.has(id);
+      }
+      return false;
+    }
+
+    @Override
+    public int size() {
+      return column.count();
+    }
+
+    @Override
+    public Set<Map.Entry<Term, Number>> entrySet() {
+      return new AbstractSet<Map.Entry<Term, Number>>() {
+        @Override
+        public Iterator<Map.Entry<Term, Number>> iterator() {
+          return new Iterator<Map.Entry<Term, Number>>() {
+            private int next = column.nextId(0);
+
+            @Override
+            public boolean hasNext() {
+              return next >= 0;
+            }
+
+            @Override
+            public Map.Entry<Term, Number> next() {
+              if (next < 0) {
+                throw new NoSuchElementException();
+              }
+              Map.Entry<Term, Number> entry =
+                  new AbstractMap.SimpleImmutableEntry<Term, Number>(getTerm(next), column.get(next));
+              next = column.nextId(next + 1);
+              return entry;
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return column.count();
+        }
+      };
+    }
+  }
+
+}
+
+
+/**
+ * One score per term id, stored as int until a double is set.
+ */
+class ScoreColumn implements Serializable {
+
+  private static final long serialVersionUID = 1832730563094473262L;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private int[] ints;
+  private double[] doubles;
+  private BitSet present;
+  private int count;
+
+  public ScoreColumn() {
+    this(true);
+  }
+
+  /**
+   * @param allocate false for a subclass that keeps its scores
+   * elsewhere, so that the heap arrays it never uses are not created
+   */
+  protected ScoreColumn(boolean allocate) {
+    if (allocate) {
+      this.ints = new int[INITIAL_CAPACITY];
+      this.present = new BitSet();
+    }
+    this.doubles = null;
+    this.count = 0;
+  }
+
+  public boolean has(int id) {
+    return present.get(id);
+  }
+
+  public int count() {
+    return this.count;
+  }
+
+  public boolean isDouble() {
+    return doubles != null;
+  }
+
+  /**
+   * Object headers are guessed at 16 bytes.
+   */
+  public long estimateHeapBytes() {
+    long bytes = 16;
+    if (present != null) {
+      bytes += 16 + present.size() / 8;
+    }
+    if (ints != null) {
+      bytes += 16 + 4L * ints.length;
+    }
+    if (doubles != null) {
+      bytes += 16 + 8L * doubles.length;
+    }
+    return bytes;
+  }
+
+  public long estimateOffHeapBytes() {
+    return 0;
+  }
+
+  /**
+   * Write the presence bits and then a value (or 0) for each id
+   * below size.
+   */
+  public void write(SnapshotOutput output, int size) throws IOException {
+    boolean isDouble = isDouble();
+    output.writeBoolean(isDouble);
+    output.writeInt(count());
+    output.align(8);
+
+    long[] words = new long[(size + 63) / 64];
+    for (int id = nextId(0) ; (id >= 0) && (id < size) ; id = nextId(id + 1)) {
+      words[id >>> 6] |= 1L << (id & 63);
+    }
+    for (long word : words) {
+      output.writeLong(word);
+    }
+    for (int id = 0 ; id < size ; id++) {
+      if (isDouble) {
+        output.writeDouble(getDouble(id));
+      }
+      else {
+        output.writeInt(getInt(id));
+      }
+    }
+    output.align(8);
+  }
+
+  /**
+   * @return the first id &gt;= from that has a value, or -1
+   */
+  public int nextId(int from) {
+    return present.nextSetBit(from);
+  }
+
+  public Number get(int id) {
+    if (! present.get(id)) {
+      return null;
+    }
+    if (doubles == null) {
+      return ints[id];
+    }
+    return doubles[id];
+  }
+
+  public int getInt(int id) {
+    if (! present.get(id)) {
+      return 0;
+    }
+    if (doubles == null) {
+      return ints[id];
+    }
+    return (int) doubles[id];
+  }
+
+  public double getDouble(int id) {
+    if (! present.get(id)) {
+      return 0.0;
+    }
+    if (doubles == null) {
+      return ints[id];
+    }
+    return doubles[id];
+  }
+
+  public void setInt(int id, int value) {
+    if (doubles == null) {
+      ensureCapacity(id);
+      ints[id] = value;
+      mark(id);
+    }
+    else {
+      setDouble(id, value);
+    }
+  }
+
+  public void setDouble(int id, double value) {
+    if (doubles == null) {
+      // promote the column: copy the int values across
+      doubles = new double[ints.length];
+      for (int i = present.nextSetBit(0) ; i >= 0 ; i = present.nextSetBit(i + 1)) {
+        doubles[i] = ints[i];
+      }
+      ints = null;
+    }
+    ensureCapacity(id);
+    doubles[id] = value;
+    mark(id);
+  }
+
+  public void clear(int id) {
+    if (present.get(id)) {
+      present.clear(id);
+      count--;
+    }
+  }
+
+  private void mark(int id) {
+    if (! present.get(id)) {
+      present.set(id);
+      count++;
+    }
+  }
+
+  private void ensureCapacity(int id) {
+    int length = (doubles == null) ? ints.length : doubles.length;
+    if (id < length) {
+      return;
+    }
+
+    int newLength = Math.max(length * 2, id + 1);
+    if (doubles == null) {
+      int[] newInts = new int[newLength];
+      System.arraycopy(ints, 0, newInts, 0, ints.length);
+      ints = newInts;
+    }
+    else {
+      double[] newDoubles = new double[newLength];
+      System.arraycopy(doubles, 0, newDoubles, 0, doubles.length);
+      doubles = newDoubles;
+    }
+  }
+
+}
+
+
+/**
+ * A score column read from a snapshot file.  It is copied onto the
+ * heap the first time it is changed, or when it is serialized.
+ */
+class MappedScoreColumn extends ScoreColumn {
+
+  private static final long serialVersionUID = -2418880563373367218L;
+
+  private transient MappedFile file;
+  private boolean materialized;
+  private boolean mappedDouble;
+  private int mappedCount;
+  private int size;
+  private long wordsStart, valuesStart;
+
+  public MappedScoreColumn(MappedFile file, MappedFile.Input input, int size) {
+    super();
+    this.file = file;
+    this.materialized = false;
+    this.size = size;
+    this.mappedDouble = input.readBoolean();
+    this.mappedCount = input.readInt();
+    input.align(8);
+    int nbrWords = (size + 63) / 64;
+    this.wordsStart = input.position();
+    this.valuesStart = wordsStart + 8L * nbrWords;
+    input.skip(8L * nbrWords + (mappedDouble ? 8L : 4L) * size);
+    input.align(8);
+  }
+
+  @Override
+  public boolean has(int id) {
+    return materialized ? super.has(id) : mappedHas(id);
+  }
+
+  @Override
+  public int count() {
+    return materialized ? super.count() : mappedCount;
+  }
+
+  @Override
+  public boolean isDouble() {
+    return materialized ? super.isDouble() : mappedDouble;
+  }
+
+  @Override
+  public int nextId(int from) {
+    if (materialized) {
+      return super.nextId(from);
+    }
+    if (from >= size) {
+      return -1;
+    }
+    int wordIndex = from >>> 6;
+    long word = file.getLong(wordsStart + 8L * wordIndex) & (-1L << (from & 63));
+    while (word == 0) {
+      wordIndex++;
+      if (wordIndex * 64L >= size) {
+        return -1;
+      }
+      word = file.getLong(wordsStart + 8L * wordIndex);
+    }
+    return wordIndex * 64 + Long.numberOfTrailingZeros(word);
+  }
+
+  @Override
+  public Number get(int id) {
+    if (materialized) {
+      return super.get(id);
+    }
+    if (! mappedHas(id)) {
+      return null;
+    }
+    if (mappedDouble) {
+      return mappedDouble(id);
+    }
+    return mappedInt(id);
+  }
+
+  @Override
+  public int getInt(int id) {
+    if (materialized) {
+      return super.getInt(id);
+    }
+    if (! mappedHas(id)) {
+      return 0;
+    }
+    return mappedDouble ? (int) mappedDouble(id) : mappedInt(id);
+  }
+
+  @Override
+  public double getDouble(int id) {
+    if (materialized) {
+      return super.getDouble(id);
+    }
+    if (! mappedHas(id)) {
+      return 0.0;
+    }
+    return mappedDouble ? mappedDouble(id) : mappedInt(id);
+  }
+
+  @Override
+  public void setInt(int id, int value) {
+    materialize();
+    super.setInt(id, value);
+  }
+
+  @Override
+  public void setDouble(int id, double value) {
+    materialize();
+    super.setDouble(id, value);
+  }
+
+  @Override
+  public void clear(int id) {
+    materialize();
+    super.clear(id);
+  }
+
+  private void materialize() {
+    if (materialized) {
+      return;
+    }
+    materialized = true;
+    for (int id = 0 ; id < size ; id++) {
+      if (mappedHas(id)) {
+        if (mappedDouble) {
+          super.setDouble(id, mappedDouble(id));
+        }
+        else {
+          super.setInt(id, mappedInt(id));
+        }
+      }
+    }
+    file = null;
+  }
+
+  private boolean mappedHas(int id) {
+    if (id >= size) {
+      return false;
+    }
+    return (file.getLong(wordsStart + 8L * (id >>> 6)) & (1L << (id & 63))) != 0;
+  }
+
+  private int mappedInt(int id) {
+    return file.getInt(valuesStart + 4L * id);
+  }
+
+  private double mappedDouble(int id) {
+    return file.getDouble(valuesStart + 8L * id);
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    materialize();
+    out.defaultWriteObject();
+  }
+
+}
+
+
+
+/**
+ * A score column kept in OffHeapBuffers: presence bits, and 4-byte
+ * ints until a double is set, then 8-byte doubles.  It is serialized
+ * as an ordinary ScoreColumn.
+ */
+class OffHeapScoreColumn extends ScoreColumn {
+
+  private static final long serialVersionUID = 7210449573185390951L;
+
+  private transient OffHeapBuffer present, values;
+  private boolean doubles;
+  private int count;
+  // one more than the highest id ever set
+  private int limit;
+
+  public OffHeapScoreColumn() {
+    super(false);
+    this.present = new OffHeapBuffer();
+    this.values = new OffHeapBuffer();
+    this.doubles = false;
+    this.count = 0;
+    this.limit = 0;
+  }
+
+  @Override
+  public boolean has(int id) {
+    if (id >= limit) {
+      return false;
+    }
+    return (present.getLong(8L * (id >>> 6)) & (1L << (id & 63))) != 0;
+  }
+
+  @Override
+  public int count() {
+    return this.count;
+  }
+
+  @Override
+  public boolean isDouble() {
+    return this.doubles;
+  }
+
+  @Override
+  public long estimateOffHeapBytes() {
+    return present.capacity() + values.capacity();
+  }
+
+  @Override
+  public int nextId(int from) {
+    if (from >= limit) {
+      return -1;
+    }
+    int wordIndex = from >>> 6;
+    long word = present.getLong(8L * wordIndex) & (-1L << (from & 63));
+    while (word == 0) {
+      wordIndex++;
+      if (wordIndex * 64L >= limit) {
+        return -1;
+      }
+      word = present.getLong(8L * wordIndex);
+    }
+    return wordIndex * 64 + Long.numberOfTrailingZeros(word);
+  }
+
+  @Override
+  public Number get(int id) {
+    if (! has(id)) {
+      return null;
+    }
+    if (doubles) {
+      return values.getDouble(8L * id);
+    }
+    return values.getInt(4L * id);
+  }
+
+  @Override
+  public int getInt(int id) {
+    if (! has(id)) {
+      return 0;
+    }
+    return doubles ? (int) values.getDouble(8L * id) : values.getInt(4L * id);
+  }
+
+  @Override
+  public double getDouble(int id) {
+    if (! has(id)) {
+      return 0.0;
+    }
+    return doubles ? values.getDouble(8L * id) : values.getInt(4L * id);
+  }
+
+  @Override
+  public void setInt(int id, int value) {
+    if (doubles) {
+      setDouble(id, value);
+    }
+    else {
+      mark(id);
+      values.ensureCapacity(4L * (id + 1));
+      values.putInt(4L * id, value);
+    }
+  }
+
+  @Override
+  public void setDouble(int id, double value) {
+    if (! doubles) {
+      // promote the column: copy the int values across
+      OffHeapBuffer newValues = new OffHeapBuffer();
+      newValues.ensureCapacity(8L * limit);
+      for (int i = nextId(0) ; i >= 0 ; i = nextId(i + 1)) {
+        newValues.putDouble(8L * i, values.getInt(4L * i));
+      }
+      values = newValues;
+      doubles = true;
+    }
+    mark(id);
+    values.ensureCapacity(8L * (id + 1));
+    values.putDouble(8L * id, value);
+  }
+
+  @Override
+  public void clear(int id) {
+    if (has(id)) {
+      long position = 8L * (id >>> 6);
+      present.putLong(position, present.getLong(position) & ~(1L << (id & 63)));
+      count--;
+    }
+  }
+
+  private void mark(int id) {
+    if (has(id)) {
+      return;
+    }
+    long position = 8L * (id >>> 6);
+    present.ensureCapacity(position + 8);
+    present.putLong(position, present.getLong(position) | (1L << (id & 63)));
+    count++;
+    limit = Math.max(limit, id + 1);
+  }
+
+  /* Serialize a copy on the heap   */
+  private Object writeReplace() {
+    ScoreColumn copy = new ScoreColumn();
+    if (doubles && (count == 0)) {
+      // keep the column's type
+      copy.setDouble(0, 0.0);
+      copy.clear(0);
+    }
+    for (int id = nextId(0) ; id >= 0 ; id = nextId(id + 1)) {
+      if (doubles) {
+        copy.setDouble(id, values.getDouble(8L * id));
+      }
+      else {
+        copy.setInt(id, values.getInt(4L * id));
+      }
+    }
+    return copy;
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Writes a snapshot file sequentially (big-endian, like 
+ * DataOutputStream) and keeps track of the position, which can
+ * go beyond 2 GB.  See MappedFile for reading it back.
+ */
+public class SnapshotOutput implements Closeable {
+
+  private DataOutputStream output;
+  private long position;
+
+
+  public SnapshotOutput(File file) throws IOException {
+    this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    this.position = 0L;
+  }
+
+
+  public long position() {
+    return this.position;
+  }
+
+
+  /**
+   * Pad with zeros to a multiple of the given size.
+   */
+  public void align(int size) throws IOException {
+    while (position % size != 0) {
+      writeByte(0);
+    }
+  }
+
+
+  public void writeByte(int value) throws IOException {
+    output.writeByte(value);
+    position++;
+  }
+
+
+  public void writeBoolean(boolean value) throws IOException {
+    writeByte(value ? 1 : 0);
+  }
+
+
+  public void writeInt(int value) throws IOException {
+    output.writeInt(value);
+    position += 4;
+  }
+
+
+  public void writeLong(long value) throws IOException {
+    output.writeLong(value);
+    position += 8;
+  }
+
+
+  public void writeDouble(double value) throws IOException {
+    output.writeDouble(value);
+    position += 8;
+  }
+
+
+  public void write(byte[] bytes, int offset, int count) throws IOException {
+    output.write(bytes, offset, count);
+    position += count;
+  }
+
+
+  /**
+   * Write the string's length in UTF-8 bytes (-1 for null) and
+   * then the bytes.
+   */
+  public void writeString(String value) throws IOException {
+    if (value == null) {
+      writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeInt(bytes.length);
+    write(bytes, 0, bytes.length);
+  }
+
+
+  public void close() throws IOException {
+    output.close();
+  }
+
+}
@@ -0,0 +1,239 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * A generalized suffix array over a list of strings, for finding
+ * every string that contains a given one without comparing it
+ * against all the others.  The strings are concatenated, each
+ * followed by a separator that cannot occur in a pattern, and the
+ * suffixes are sorted by prefix doubling; the suffixes that start
+ * with a pattern then form one range of the array.
+ *
+ * The index is immutable once built, so it can be searched from
+ * several threads.
+ */
+public class SubstringIndex {
+
+  private static final int SEPARATOR = 0;
+
+  private final List<String> strings;
+  private final int[] text;
+  private final int[] owners;
+  private final int[] suffixes;
+
+
+  /**
+   * Index the strings; the numbers returned by the searches are
+   * positions in this list.
+   */
+  public SubstringIndex(List<String> strings) {
+    this.strings = strings;
+    int length = 0;
+    for (String string : strings) {
+      length += string.length() + 1;
+    }
+
+    // chars are shifted up by one to keep 0 for the separator;
+    // each separator belongs to the string before it, so that
+    // an empty string still owns one suffix
+    this.text = new int[length];
+    this.owners = new int[length];
+    int position = 0;
+    for (int s = 0 ; s < strings.size() ; s++) {
+      String string = strings.get(s);
+      for (int i = 0 ; i < string.length() ; i++) {
+        owners[position] = s;
+        text[position++] = string.charAt(i) + 1;
+      }
+      owners[position] = s;
+      text[position++] = SEPARATOR;
+    }
+
+    this.suffixes = sortSuffixes(text);
+  }
+
+
+  public int size() {
+    return this.strings.size();
+  }
+
+
+  /**
+   * @return the numbers (in ascending order) of the indexed strings
+   * that contain the given one, including itself if it is indexed
+   */
+  public int[] findContaining(String pattern) {
+    int from = lowerBound(pattern);
+    int to = upperBound(pattern, from);
+
+    int[] found = new int[to - from];
+    for (int i = from ; i < to ; i++) {
+      found[i - from] = owners[suffixes[i]];
+    }
+    Arrays.sort(found);
+
+    // a string can contain the pattern more than once
+    int distinct = 0;
+    for (int i = 0 ; i < found.length ; i++) {
+      if ( (distinct == 0) || (found[i] != found[distinct - 1]) ) {
+        found[distinct++] = found[i];
+      }
+    }
+    return Arrays.copyOf(found, distinct);
+  }
+
+
+  /**
+   * @return the first suffix not less than the pattern
+   */
+  private int lowerBound(String pattern) {
+    int low = 0, high = suffixes.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compare(suffixes[middle], pattern) < 0) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+
+  /**
+   * @return the first suffix after from that does not start with
+   * the pattern
+   */
+  private int upperBound(String pattern, int from) {
+    int low = from, high = suffixes.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compare(suffixes[middle], pattern) <= 0) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+
+  /**
+   * Compare the suffix with the pattern, treating a suffix that
+   * starts with the pattern as equal to it.
+   */
+  private int compare(int suffix, String pattern) {
+    for (int i = 0 ; i < pattern.length() ; i++) {
+      int position = suffix + i;
+      if (position >= text.length) {
+        return -1;
+      }
+      int difference = text[position] - (pattern.charAt(i) + 1);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return 0;
+  }
+
+
+  /**
+   * Sort the suffixes by prefix doubling: each pass ranks them by
+   * their first 2k symbols, using the ranks from the previous pass
+   * and two stable counting sorts.
+   */
+  private static int[] sortSuffixes(int[] text) {
+    int n = text.length;
+    int[] sorted = new int[n];
+    if (n == 0) {
+      return sorted;
+    }
+
+    int[] rank = new int[n];
+    int[] work = new int[n];
+
+    int alphabet = 0;
+    for (int symbol : text) {
+      alphabet = Math.max(alphabet, symbol + 1);
+    }
+    countingSort(text, identity(n), sorted, alphabet);
+    rank[sorted[0]] = 0;
+    for (int i = 1 ; i < n ; i++) {
+      rank[sorted[i]] = rank[sorted[i - 1]] + ((text[sorted[i]] != text[sorted[i - 1]]) ? 1 : 0);
+    }
+
+    for (int k = 1 ; rank[sorted[n - 1]] < n - 1 ; k <<= 1) {
+      // order by the second half: suffixes too short to have one first
+      int p = 0;
+      for (int i = n - k ; i < n ; i++) {
+        work[p++] = i;
+      }
+      for (int i = 0 ; i < n ; i++) {
+        if (sorted[i] >= k) {
+          work[p++] = sorted[i] - k;
+        }
+      }
+
+      // then stably by the first half
+      countingSort(rank, work, sorted, rank[sorted[n - 1]] + 1);
+
+      work[sorted[0]] = 0;
+      for (int i = 1 ; i < n ; i++) {
+        int a = sorted[i - 1], b = sorted[i];
+        boolean same = (rank[a] == rank[b])
+                && (secondRank(rank, a, k) == secondRank(rank, b, k));
+        work[b] = work[a] + (same ? 0 : 1);
+      }
+      int[] swap = rank;
+      rank = work;
+      work = swap;
+    }
+    return sorted;
+  }
+
+
+  private static int secondRank(int[] rank, int position, int k) {
+    return (position + k < rank.length) ? rank[position + k] : -1;
+  }
+
+
+  private static int[] identity(int n) {
+    int[] result = new int[n];
+    for (int i = 0 ; i < n ; i++) {
+      result[i] = i;
+    }
+    return result;
+  }
+
+
+  /**
+   * Stably sort the positions in input by their keys into output.
+   */
+  private static void countingSort(int[] keys, int[] input, int[] output, int range) {
+    int[] counts = new int[range + 1];
+    for (int position : input) {
+      counts[keys[position] + 1]++;
+    }
+    for (int i = 1 ; i <= range ; i++) {
+      counts[i] += counts[i - 1];
+    }
+    for (int position : input) {
+      output[counts[keys[position]]++] = position;
+    }
+  }
+
+}
@@ -24,7 +24,6 @@ public class Term  implements Comparable<Term>, Serializable {
   
   private String termString, languageCode, type;
   private int hashCode;
-  private String toString;
   
 
   public Term(String termString, String languageCode, String type) {
@@ -49,19 +48,17 @@ public class Term  implements Comparable<Term>, Serializable {
       languageCode = "";
     }
 
+    // TermDictionary relies on this formula
     hashCode = termString.hashCode() + languageCode.hashCode() + type.hashCode();
-
-    if (languageCode.isEmpty()) {
-      toString = termString + " (" + type + ")";
-    }
-    else {
-      toString = termString + " (" + languageCode + "," + type + ")";
-    }
   }
   
 
+  /* Not cached: there may be millions of terms and few are displayed  */
   public String toString() {
-    return toString;
+    if (languageCode.isEmpty()) {
+      return termString + " (" + type + ")";
+    }
+    return termString + " (" + languageCode + "," + type + ")";
   }
   
   public String getTermString() {
@@ -0,0 +1,686 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import gate.Annotation;
+import gate.Document;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Interns the terms of one bank and gives each a dense int id
+ * (0, 1, 2... in order of first appearance).  Lookups hash the
+ * (string, language, type) triple directly, so finding a term that
+ * is already known does not create a Term; only new terms are
+ * allocated, with shared copies of the language code and type.
+ * This is not thread-safe: each worker thread uses its own.
+ */
+public class TermDictionary implements Serializable {
+
+  private static final long serialVersionUID = -1985314046338398283L;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private Term[] terms;
+  private int[] hashes;
+  private int size;
+
+  // open addressing: term id + 1, 0 = empty slot
+  private int[] table;
+
+  private Map<String, String> labels;
+
+
+  public TermDictionary() {
+    this(true);
+  }
+
+
+  /**
+   * @param allocate false for a subclass that keeps its terms
+   * elsewhere, so that the heap tables it never uses are not created
+   */
+  protected TermDictionary(boolean allocate) {
+    if (allocate) {
+      this.terms = new Term[INITIAL_CAPACITY];
+      this.hashes = new int[INITIAL_CAPACITY];
+      this.table = new int[INITIAL_CAPACITY * 2];
+      this.labels = new HashMap<String, String>();
+    }
+    this.size = 0;
+  }
+
+
+  public int size() {
+    return this.size;
+  }
+
+
+  public Term getTerm(int id) {
+    if (id >= size) {
+      throw new IndexOutOfBoundsException("No term with id " + id);
+    }
+    return this.terms[id];
+  }
+
+
+  /**
+   * @return the term's id, or -1 if it is not in the dictionary
+   */
+  public int getId(Term term) {
+    return getId(term.getTermString(), term.getLanguageCode(), term.getType());
+  }
+
+
+  /**
+   * @return the id of the matching term, or -1 if it is not in the
+   * dictionary
+   */
+  public int getId(String termString, String languageCode, String type) {
+    if (languageCode == null) {
+      languageCode = "";
+    }
+    int hash = hash(termString, languageCode, type);
+    int mask = table.length - 1;
+    for (int slot = spread(hash) & mask ; ; slot = (slot + 1) & mask) {
+      int entry = table[slot];
+      if (entry == 0) {
+        return -1;
+      }
+
+      int id = entry - 1;
+      if ( (hashes[id] == hash) && matches(terms[id], termString, languageCode, type) ) {
+        return id;
+      }
+    }
+  }
+
+
+  /**
+   * @return the id of the matching term, adding it if necessary
+   */
+  public int intern(String termString, String languageCode, String type) {
+    int id = getId(termString, languageCode, type);
+    if (id >= 0) {
+      return id;
+    }
+
+    return add(new Term(termString, internLabel(languageCode), internLabel(type)));
+  }
+
+
+  /**
+   * @return the id of the term, adding it if necessary (the Term
+   * instance is kept as the canonical one if it can be)
+   */
+  public int intern(Term term) {
+    int id = getId(term);
+    if (id >= 0) {
+      return id;
+    }
+
+    String languageCode = internLabel(term.getLanguageCode());
+    String type = internLabel(term.getType());
+    if ( (languageCode != term.getLanguageCode()) || (type != term.getType()) ) {
+      term = new Term(term.getTermString(), languageCode, type);
+    }
+    return add(term);
+  }
+
+
+  /**
+   * Equivalent to interning new Term(annotation, document, ...), but
+   * the term string and language code are taken straight from the
+   * annotation's features.
+   * @return the id of the annotation's term, adding it if necessary
+   */
+  public int intern(Annotation annotation, Document document,
+          String languageFeature, String stringFeature) {
+    String termString = Term.getFeatureOrString(document, annotation, stringFeature);
+    String languageCode = Term.getLanguage(annotation, languageFeature);
+    return intern(termString, languageCode, annotation.getType());
+  }
+
+
+  private int add(Term term) {
+    if (size == terms.length) {
+      Term[] newTerms = new Term[size * 2];
+      System.arraycopy(terms, 0, newTerms, 0, size);
+      terms = newTerms;
+      int[] newHashes = new int[size * 2];
+      System.arraycopy(hashes, 0, newHashes, 0, size);
+      hashes = newHashes;
+    }
+
+    int id = size;
+    terms[id] = term;
+    hashes[id] = term.hashCode();
+    size++;
+
+    // keep the table at most half full
+    if (size * 2 > table.length) {
+      rehash(table.length * 2);
+    }
+    else {
+      insert(id);
+    }
+    return id;
+  }
+
+
+  private void insert(int id) {
+    int mask = table.length - 1;
+    int slot = spread(hashes[id]) & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = id + 1;
+  }
+
+
+  private void rehash(int capacity) {
+    table = new int[capacity];
+    for (int id = 0 ; id < size ; id++) {
+      insert(id);
+    }
+  }
+
+
+  /**
+   * Write the dictionary, including its hash table, to a snapshot.
+   */
+  public void write(SnapshotOutput output) throws IOException {
+    List<String> labelList = new ArrayList<String>(labels.keySet());
+    Map<String, Integer> labelIndex = new HashMap<String, Integer>();
+    for (String label : labelList) {
+      labelIndex.put(label, labelIndex.size());
+    }
+    if (labelList.size() > 0xFFFF) {
+      throw new IOException("Too many languages and types for a snapshot: " + labelList.size());
+    }
+    
+    output.writeInt(size);
+    output.writeInt(table.length);
+    output.writeInt(labelList.size());
+    for (String label : labelList) {
+      output.writeString(label);
+    }
+    output.align(8);
+    for (int slot : table) {
+      output.writeInt(slot);
+    }
+    for (int id = 0 ; id < size ; id++) {
+      output.writeInt(hashes[id]);
+    }
+    for (int id = 0 ; id < size ; id++) {
+      // language and type packed into one int
+      int language = labelIndex.get(terms[id].getLanguageCode());
+      int type = labelIndex.get(terms[id].getType());
+      output.writeInt( (language << 16) | type);
+    }
+    output.align(8);
+
+    byte[][] strings = new byte[size][];
+    long offset = 0L;
+    for (int id = 0 ; id < size ; id++) {
+      strings[id] = terms[id].getTermString().getBytes(StandardCharsets.UTF_8);
+      output.writeLong(offset);
+      offset += strings[id].length;
+    }
+    output.writeLong(offset);
+    for (int id = 0 ; id < size ; id++) {
+      output.write(strings[id], 0, strings[id].length);
+    }
+  }
+
+
+  /**
+   * @return a dictionary written by write(), read from the mapped 
+   * file as it is needed; adding a new term copies it onto the heap
+   */
+  public static TermDictionary map(MappedFile file, long position) {
+    return new MappedTermDictionary(file, position);
+  }
+
+
+  /**
+   * @return an empty dictionary that keeps the term strings, their
+   * labels and the hash table in direct memory outside the heap
+   */
+  public static TermDictionary offHeap() {
+    return new OffHeapTermDictionary();
+  }
+
+
+  private String internLabel(String label) {
+    if (label == null) {
+      label = "";
+    }
+    String interned = labels.get(label);
+    if (interned == null) {
+      labels.put(label, label);
+      interned = label;
+    }
+    return interned;
+  }
+
+
+  /* Must agree with Term.hashCode()   */
+  static int hash(String termString, String languageCode, String type) {
+    return termString.hashCode() + languageCode.hashCode() + type.hashCode();
+  }
+
+
+  static int spread(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+
+  private static boolean matches(Term term, String termString, String languageCode, String type) {
+    return term.getTermString().equals(termString)
+            && term.getLanguageCode().equals(languageCode)
+            && term.getType().equals(type);
+  }
+
+}
+
+
+/**
+ * A TermDictionary that looks terms up in a snapshot file, in the
+ * same hash table, and creates the Term objects only when asked 
+ * for them.  It copies everything onto the heap (see materialize())
+ * the first time a new term is added, or when it is serialized.
+ */
+class MappedTermDictionary extends TermDictionary {
+
+  private static final long serialVersionUID = -3785307604124468563L;
+
+  private transient MappedFile file;
+  private boolean materialized;
+  private int mappedSize;
+  private int tableLength;
+  private String[] labelArray;
+  private long tableStart, hashesStart, labelsStart, offsetsStart, stringsStart;
+
+
+  public MappedTermDictionary(MappedFile file, long position) {
+    super();
+    this.file = file;
+    this.materialized = false;
+    MappedFile.Input input = file.input(position);
+    this.mappedSize = input.readInt();
+    this.tableLength = input.readInt();
+    this.labelArray = new String[input.readInt()];
+    for (int i = 0 ; i < labelArray.length ; i++) {
+      labelArray[i] = input.readString();
+    }
+    input.align(8);
+    this.tableStart = input.position();
+    this.hashesStart = tableStart + 4L * tableLength;
+    this.labelsStart = hashesStart + 4L * mappedSize;
+    input.skip(4L * (tableLength + 2 * mappedSize));
+    input.align(8);
+    this.offsetsStart = input.position();
+    this.stringsStart = offsetsStart + 8L * (mappedSize + 1);
+  }
+
+
+  @Override
+  public int size() {
+    if (materialized) {
+      return super.size();
+    }
+    return mappedSize;
+  }
+
+
+  @Override
+  public Term getTerm(int id) {
+    if (materialized) {
+      return super.getTerm(id);
+    }
+    if (id >= mappedSize) {
+      throw new IndexOutOfBoundsException("No term with id " + id);
+    }
+    int labels = file.getInt(labelsStart + 4L * id);
+    return new Term(getTermString(id), labelArray[labels >>> 16], labelArray[labels & 0xFFFF]);
+  }
+
+
+  @Override
+  public int getId(String termString, String languageCode, String type) {
+    if (materialized) {
+      return super.getId(termString, languageCode, type);
+    }
+    if (languageCode == null) {
+      languageCode = "";
+    }
+    int hash = hash(termString, languageCode, type);
+    int mask = tableLength - 1;
+    for (int slot = spread(hash) & mask ; ; slot = (slot + 1) & mask) {
+      int entry = file.getInt(tableStart + 4L * slot);
+      if (entry == 0) {
+        return -1;
+      }
+
+      int id = entry - 1;
+      if (file.getInt(hashesStart + 4L * id) == hash) {
+        int labels = file.getInt(labelsStart + 4L * id);
+        if (labelArray[labels >>> 16].equals(languageCode)
+                && labelArray[labels & 0xFFFF].equals(type)
+                && getTermString(id).equals(termString)) {
+          return id;
+        }
+      }
+    }
+  }
+
+
+  @Override
+  public int intern(String termString, String languageCode, String type) {
+    if (! materialized) {
+      int id = getId(termString, languageCode, type);
+      if (id >= 0) {
+        return id;
+      }
+      materialize();
+    }
+    return super.intern(termString, languageCode, type);
+  }
+
+
+  @Override
+  public int intern(Term term) {
+    if (! materialized) {
+      int id = getId(term);
+      if (id >= 0) {
+        return id;
+      }
+      materialize();
+    }
+    return super.intern(term);
+  }
+
+
+  @Override
+  public void write(SnapshotOutput output) throws IOException {
+    materialize();
+    super.write(output);
+  }
+
+
+  /* Add the terms to the heap dictionary, in order, so the ids stay the same   */
+  private void materialize() {
+    if (materialized) {
+      return;
+    }
+    Term[] mappedTerms = new Term[mappedSize];
+    for (int id = 0 ; id < mappedSize ; id++) {
+      mappedTerms[id] = getTerm(id);
+    }
+    materialized = true;
+    for (Term term : mappedTerms) {
+      super.intern(term);
+    }
+    file = null;
+  }
+
+
+  private String getTermString(int id) {
+    long start = file.getLong(offsetsStart + 8L * id);
+    long end = file.getLong(offsetsStart + 8L * (id + 1));
+    return file.getString(stringsStart + start, (int) (end - start));
+  }
+
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    materialize();
+    out.defaultWriteObject();
+  }
+
+}
+
+
+
+/**
+ * A TermDictionary that keeps everything in OffHeapBuffers, in the
+ * snapshot layout: the hash table, each term's hash, its language
+ * and type packed into one int, the end offset of its string and
+ * the UTF-8 strings themselves.  Only the (few) distinct languages
+ * and types are on the heap, and Term objects are created only when
+ * asked for.  It is serialized as an ordinary TermDictionary.
+ */
+class OffHeapTermDictionary extends TermDictionary {
+
+  private static final long serialVersionUID = 3466935616049785520L;
+
+  private static final int INITIAL_TABLE_LENGTH = 2048;
+  private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+  private int size;
+  private int tableLength;
+  private long stringsEnd;
+  private transient OffHeapBuffer table, hashes, labels, ends, strings;
+  private transient List<String> labelList;
+  private transient Map<String, Integer> labelIndex;
+
+
+  public OffHeapTermDictionary() {
+    super(false);
+    this.size = 0;
+    this.tableLength = INITIAL_TABLE_LENGTH;
+    this.stringsEnd = 0L;
+    this.table = new OffHeapBuffer();
+    table.ensureCapacity(4L * tableLength);
+    this.hashes = new OffHeapBuffer();
+    this.labels = new OffHeapBuffer();
+    this.ends = new OffHeapBuffer();
+    this.strings = new OffHeapBuffer();
+    this.labelList = new ArrayList<String>();
+    this.labelIndex = new HashMap<String, Integer>();
+  }
+
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+
+  @Override
+  public Term getTerm(int id) {
+    if (id >= size) {
+      throw new IndexOutOfBoundsException("No term with id " + id);
+    }
+    int packed = labels.getInt(4L * id);
+    return new Term(getTermString(id), labelList.get(packed >>> 16), labelList.get(packed & 0xFFFF));
+  }
+
+
+  @Override
+  public int getId(String termString, String languageCode, String type) {
+    if (languageCode == null) {
+      languageCode = "";
+    }
+    return find(termString, languageCode, type);
+  }
+
+
+  @Override
+  public int intern(String termString, String languageCode, String type) {
+    if (languageCode == null) {
+      languageCode = "";
+    }
+    int id = find(termString, languageCode, type);
+    if (id >= 0) {
+      return id;
+    }
+    return add(termString, termString.getBytes(StandardCharsets.UTF_8), languageCode, type);
+  }
+
+
+  @Override
+  public int intern(Term term) {
+    return intern(term.getTermString(), term.getLanguageCode(), term.getType());
+  }
+
+
+  @Override
+  public void write(SnapshotOutput output) throws IOException {
+    output.writeInt(size);
+    output.writeInt(tableLength);
+    output.writeInt(labelList.size());
+    for (String label : labelList) {
+      output.writeString(label);
+    }
+    output.align(8);
+    for (int slot = 0 ; slot < tableLength ; slot++) {
+      output.writeInt(table.getInt(4L * slot));
+    }
+    for (int id = 0 ; id < size ; id++) {
+      output.writeInt(hashes.getInt(4L * id));
+    }
+    for (int id = 0 ; id < size ; id++) {
+      output.writeInt(labels.getInt(4L * id));
+    }
+    output.align(8);
+
+    output.writeLong(0L);
+    for (int id = 0 ; id < size ; id++) {
+      output.writeLong(ends.getLong(8L * id));
+    }
+    byte[] buffer = new byte[COPY_BUFFER_SIZE];
+    for (long position = 0L ; position < stringsEnd ; position += buffer.length) {
+      int count = (int) Math.min(buffer.length, stringsEnd - position);
+      strings.getBytes(position, buffer, 0, count);
+      output.write(buffer, 0, count);
+    }
+  }
+
+
+  private int find(String termString, String languageCode, String type) {
+    int hash = hash(termString, languageCode, type);
+    int mask = tableLength - 1;
+    for (int slot = spread(hash) & mask ; ; slot = (slot + 1) & mask) {
+      int entry = table.getInt(4L * slot);
+      if (entry == 0) {
+        return -1;
+      }
+
+      int id = entry - 1;
+      if ( (hashes.getInt(4L * id) == hash) && matches(id, termString, languageCode, type) ) {
+        return id;
+      }
+    }
+  }
+
+
+  private boolean matches(int id, String termString, String languageCode, String type) {
+    int packed = labels.getInt(4L * id);
+    if (! (labelList.get(packed >>> 16).equals(languageCode)
+            && labelList.get(packed & 0xFFFF).equals(type)) ) {
+      return false;
+    }
+    long start = getStart(id);
+    return strings.utf8Equals(start, ends.getLong(8L * id) - start, termString);
+  }
+
+
+  private int add(String termString, byte[] bytes, String languageCode, String type) {
+    int id = size;
+    hashes.ensureCapacity(4L * (id + 1));
+    labels.ensureCapacity(4L * (id + 1));
+    ends.ensureCapacity(8L * (id + 1));
+
+    hashes.putInt(4L * id, hash(termString, languageCode, type));
+    labels.putInt(4L * id, (labelIndex(languageCode) << 16) | labelIndex(type));
+    strings.putBytes(stringsEnd, bytes, 0, bytes.length);
+    stringsEnd += bytes.length;
+    ends.putLong(8L * id, stringsEnd);
+    size++;
+
+    // keep the table at most half full
+    if (size * 2L > tableLength) {
+      rehash(tableLength * 2);
+    }
+    else {
+      insert(id);
+    }
+    return id;
+  }
+
+
+  private void insert(int id) {
+    int mask = tableLength - 1;
+    int slot = spread(hashes.getInt(4L * id)) & mask;
+    while (table.getInt(4L * slot) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table.putInt(4L * slot, id + 1);
+  }
+
+
+  private void rehash(int capacity) {
+    // the old table is freed when it is garbage collected
+    tableLength = capacity;
+    table = new OffHeapBuffer();
+    table.ensureCapacity(4L * tableLength);
+    for (int id = 0 ; id < size ; id++) {
+      insert(id);
+    }
+  }
+
+
+  private int labelIndex(String label) {
+    Integer index = labelIndex.get(label);
+    if (index == null) {
+      if (labelList.size() > 0xFFFF) {
+        throw new IllegalStateException("Too many languages and types: " + labelList.size());
+      }
+      index = labelList.size();
+      labelList.add(label);
+      labelIndex.put(label, index);
+    }
+    return index;
+  }
+
+
+  private long getStart(int id) {
+    return (id == 0) ? 0L : ends.getLong(8L * (id - 1));
+  }
+
+
+  private String getTermString(int id) {
+    long start = getStart(id);
+    byte[] bytes = new byte[(int) (ends.getLong(8L * id) - start)];
+    strings.getBytes(start, bytes, 0, bytes.length);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+
+  /* Serialize a copy on the heap, with the same ids   */
+  private Object writeReplace() {
+    TermDictionary copy = new TermDictionary();
+    for (int id = 0 ; id < size ; id++) {
+      copy.intern(getTerm(id));
+    }
+    return copy;
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A read-only view of a termbank's postings as a map from each
+ * Term to the set of documents it occurs in.  Nothing is decoded
+ * until a set is iterated.
+ */
+public class TermDocumentsMap extends AbstractMap<Term, Set<DocumentIdentifier>> {
+
+  private TermIdMap<PostingList> termPostings;
+  private DocumentTable documentTable;
+
+
+  public TermDocumentsMap(TermIdMap<PostingList> termPostings, DocumentTable documentTable) {
+    this.termPostings = termPostings;
+    this.documentTable = documentTable;
+  }
+
+
+  @Override
+  public Set<DocumentIdentifier> get(Object key) {
+    PostingList postings = termPostings.get(key);
+    if (postings == null) {
+      return null;
+    }
+    return new PostingSet(postings, documentTable);
+  }
+
+
+  @Override
+  public boolean containsKey(Object key) {
+    return termPostings.containsKey(key);
+  }
+
+
+  @Override
+  public int size() {
+    return termPostings.size();
+  }
+
+
+  @Override
+  public Set<Map.Entry<Term, Set<DocumentIdentifier>>> entrySet() {
+    return new AbstractSet<Map.Entry<Term, Set<DocumentIdentifier>>>() {
+      @Override
+      public Iterator<Map.Entry<Term, Set<DocumentIdentifier>>> iterator() {
+        final Iterator<Map.Entry<Term, PostingList>> entries = termPostings.entrySet().iterator();
+        return new Iterator<Map.Entry<Term, Set<DocumentIdentifier>>>() {
+          @Override
+          public boolean hasNext() {
+            return entries.hasNext();
+          }
+
+          @Override
+          public Map.Entry<Term, Set<DocumentIdentifier>> next() {
+            Map.Entry<Term, PostingList> entry = entries.next();
+            Set<DocumentIdentifier> documents = new PostingSet(entry.getValue(), documentTable);
+            return new AbstractMap.SimpleImmutableEntry<Term, Set<DocumentIdentifier>>(entry.getKey(), documents);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return termPostings.size();
+      }
+    };
+  }
+
+}
@@ -0,0 +1,221 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * A Map from Term keyed internally by the terms' ids in a
+ * TermDictionary, so the values sit in a list indexed by id instead
+ * of in hash entries.  Putting a new Term adds it to the dictionary.
+ * Null values are treated as absent.
+ * 
+ * The map can be backed by a read-only Source (such as a snapshot
+ * file): values are fetched from it on demand and values put into
+ * the map override it.  A value fetched from the Source is not kept,
+ * so after changing it, put it back.
+ */
+public class TermIdMap<V> extends AbstractMap<Term, V> implements Serializable {
+
+  private static final long serialVersionUID = 6107646617616286567L;
+
+  private TermDictionary dictionary;
+  private ArrayList<V> values;
+  // ids whose entries in values override the source
+  private BitSet overridden;
+  private transient Source<V> source;
+  private int count;
+
+
+  public TermIdMap(TermDictionary dictionary) {
+    this(dictionary, null);
+  }
+
+
+  public TermIdMap(TermDictionary dictionary, Source<V> source) {
+    this.dictionary = dictionary;
+    this.values = new ArrayList<V>();
+    this.overridden = new BitSet();
+    this.source = source;
+    this.count = (source == null) ? 0 : source.count();
+  }
+
+
+  public TermDictionary getDictionary() {
+    return this.dictionary;
+  }
+
+
+  public V get(int id) {
+    if (id < 0) {
+      return null;
+    }
+    if (overridden.get(id)) {
+      return values.get(id);
+    }
+    if ( (source != null) && (id < source.size()) ) {
+      return source.get(id);
+    }
+    return null;
+  }
+
+
+  public V put(int id, V value) {
+    V previous = get(id);
+    while (values.size() <= id) {
+      values.add(null);
+    }
+    values.set(id, value);
+    overridden.set(id);
+    if (previous == null && value != null) {
+      count++;
+    }
+    else if (previous != null && value == null) {
+      count--;
+    }
+    return previous;
+  }
+
+
+  @Override
+  public V get(Object key) {
+    if (key instanceof Term) {
+      return get(dictionary.getId((Term) key));
+    }
+    return null;
+  }
+
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+
+  @Override
+  public V put(Term key, V value) {
+    return put(dictionary.intern(key), value);
+  }
+
+
+  @Override
+  public V remove(Object key) {
+    if (key instanceof Term) {
+      int id = dictionary.getId((Term) key);
+      if (id >= 0) {
+        return put(id, null);
+      }
+    }
+    return null;
+  }
+
+
+  @Override
+  public int size() {
+    return this.count;
+  }
+
+
+  @Override
+  public Set<Map.Entry<Term, V>> entrySet() {
+    return new AbstractSet<Map.Entry<Term, V>>() {
+      @Override
+      public Iterator<Map.Entry<Term, V>> iterator() {
+        return new Iterator<Map.Entry<Term, V>>() {
+          private int next = nextId(0);
+
+          @Override
+          public boolean hasNext() {
+            return next >= 0;
+          }
+
+          @Override
+          public Map.Entry<Term, V> next() {
+            if (next < 0) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<Term, V> entry =
+                new AbstractMap.SimpleImmutableEntry<Term, V>(dictionary.getTerm(next), get(next));
+            next = nextId(next + 1);
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
+  }
+
+
+  private int nextId(int from) {
+    int limit = values.size();
+    if ( (source != null) && (source.size() > limit) ) {
+      limit = source.size();
+    }
+    for (int id = from ; id < limit ; id++) {
+      if (get(id) != null) {
+        return id;
+      }
+    }
+    return -1;
+  }
+
+
+  /* Copy everything from the source before serializing   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    if (source != null) {
+      for (int id = 0 ; id < source.size() ; id++) {
+        if (! overridden.get(id)) {
+          while (values.size() <= id) {
+            values.add(null);
+          }
+          values.set(id, source.get(id));
+          overridden.set(id);
+        }
+      }
+      source = null;
+    }
+    out.defaultWriteObject();
+  }
+
+
+  /**
+   * Read-only values for the ids below size().
+   */
+  public interface Source<V> {
+    
+    int size();
+    
+    /**
+     * @return the number of ids that have values
+     */
+    int count();
+    
+    /**
+     * @return the value, or null if there is none
+     */
+    V get(int id);
+  }
+
+}
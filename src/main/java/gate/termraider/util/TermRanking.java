@@ -0,0 +1,239 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+
+/**
+ * Ranks the term ids in one score column by descending score,
+ * working on primitive arrays.  Equal scores stay in ascending id
+ * order, which is the order a stable sort of the terms by
+ * TermComparatorByDescendingScore gives.
+ */
+public class TermRanking {
+
+  private int[] ids;
+  private double[] values;
+  private int size;
+
+
+  /**
+   * Collect the ids (in ascending order) and values of the column,
+   * optionally only those with scores &gt;= threshold.
+   */
+  private TermRanking(ScoreStore scores, ScoreType type, boolean filter, double threshold) {
+    int capacity = 0;
+    for (int id = 0 ; id < scores.size() ; id++) {
+      if (scores.hasScore(type, id)) {
+        capacity++;
+      }
+    }
+    this.ids = new int[capacity];
+    this.values = new double[capacity];
+    for (int id = 0 ; id < scores.size() ; id++) {
+      if (scores.hasScore(type, id)) {
+        double value = scores.getDouble(type, id);
+        if ( (! filter) || (value >= threshold) ) {
+          ids[size] = id;
+          values[size] = value;
+          size++;
+        }
+      }
+    }
+  }
+
+
+  private TermRanking(int[] ids, double[] values, int size) {
+    this.ids = ids;
+    this.values = values;
+    this.size = size;
+  }
+
+
+  /**
+   * Sort the first size keys and their values together in place, by
+   * value descending and then key ascending; the keys (such as term
+   * ids) must be distinct.
+   */
+  public static void rank(int[] keys, double[] values, int size) {
+    new TermRanking(keys, values, size).sort(0, size);
+  }
+
+
+  /**
+   * @return all the ids that have a score of this type, ranked
+   */
+  public static int[] rankAll(ScoreStore scores, ScoreType type) {
+    TermRanking ranking = new TermRanking(scores, type, false, 0.0);
+    ranking.sort(0, ranking.size);
+    return Arrays.copyOf(ranking.ids, ranking.size);
+  }
+
+
+  /**
+   * @return the ids with scores &gt;= threshold, ranked
+   */
+  public static int[] rankAbove(ScoreStore scores, ScoreType type, double threshold) {
+    TermRanking ranking = new TermRanking(scores, type, true, threshold);
+    ranking.sort(0, ranking.size);
+    return Arrays.copyOf(ranking.ids, ranking.size);
+  }
+
+
+  /**
+   * @return the k (or fewer) best ids, ranked; this keeps a heap
+   * of the best k seen so far instead of sorting all of them
+   */
+  public static int[] rankTop(ScoreStore scores, ScoreType type, int k) {
+    TermRanking ranking = new TermRanking(scores, type, false, 0.0);
+    if (k >= ranking.size) {
+      ranking.sort(0, ranking.size);
+      return Arrays.copyOf(ranking.ids, ranking.size);
+    }
+    if (k <= 0) {
+      return new int[0];
+    }
+
+    // min-heap (worst at the root) in the first k slots
+    for (int i = k / 2 - 1 ; i >= 0 ; i--) {
+      ranking.siftDown(i, k);
+    }
+    for (int i = k ; i < ranking.size ; i++) {
+      if (ranking.better(i, 0)) {
+        ranking.swap(i, 0);
+        ranking.siftDown(0, k);
+      }
+    }
+    ranking.sort(0, k);
+    return Arrays.copyOf(ranking.ids, k);
+  }
+
+
+  /**
+   * @return a read-only view of the terms for the first size ids
+   */
+  public static List<Term> asTerms(ScoreStore scores, int[] ids, int size) {
+    return new RankedTerms(scores, ids, size);
+  }
+
+
+  /**
+   * @return true if the entry at i ranks before the one at j
+   */
+  private boolean better(int i, int j) {
+    return (values[i] > values[j])
+            || ( (values[i] == values[j]) && (ids[i] < ids[j]) );
+  }
+
+
+  private void siftDown(int i, int heapSize) {
+    while (true) {
+      int worst = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if ( (left < heapSize) && better(worst, left) ) {
+        worst = left;
+      }
+      if ( (right < heapSize) && better(worst, right) ) {
+        worst = right;
+      }
+      if (worst == i) {
+        return;
+      }
+      swap(i, worst);
+      i = worst;
+    }
+  }
+
+
+  /**
+   * Quicksort of [from, to) by rank, with insertion sort for short
+   * ranges.  The ids are distinct, so there are no ties and the
+   * result does not depend on the algorithm's stability.
+   */
+  private void sort(int from, int to) {
+    while (to - from > 16) {
+      int middle = (from + to) >>> 1;
+      // median of three as the pivot, moved to the end
+      if (better(middle, from)) {
+        swap(middle, from);
+      }
+      if (better(to - 1, from)) {
+        swap(to - 1, from);
+      }
+      if (better(middle, to - 1)) {
+        swap(middle, to - 1);
+      }
+      int pivot = to - 1;
+      int store = from;
+      for (int i = from ; i < pivot ; i++) {
+        if (better(i, pivot)) {
+          swap(i, store++);
+        }
+      }
+      swap(store, pivot);
+
+      // recurse into the smaller side
+      if (store - from < to - store - 1) {
+        sort(from, store);
+        from = store + 1;
+      }
+      else {
+        sort(store + 1, to);
+        to = store;
+      }
+    }
+
+    for (int i = from + 1 ; i < to ; i++) {
+      for (int j = i ; (j > from) && better(j, j - 1) ; j--) {
+        swap(j, j - 1);
+      }
+    }
+  }
+
+
+  private void swap(int i, int j) {
+    int id = ids[i];
+    ids[i] = ids[j];
+    ids[j] = id;
+    double value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+
+}
+
+
+class RankedTerms extends AbstractList<Term> implements RandomAccess {
+  private ScoreStore scores;
+  private int[] ids;
+  private int size;
+
+  RankedTerms(ScoreStore scores, int[] ids, int size) {
+    this.scores = scores;
+    this.ids = ids;
+    this.size = size;
+  }
+
+  public Term get(int index) {
+    if ( (index < 0) || (index >= size) ) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+    return scores.getTerm(ids[index]);
+  }
+
+  public int size() {
+    return size;
+  }
+}
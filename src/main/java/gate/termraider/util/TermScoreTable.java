@@ -0,0 +1,93 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gate.Annotation;
+import gate.Document;
+import gate.FeatureMap;
+
+
+/**
+ * An immutable copy of a termbank's scores for copying them back
+ * onto annotations: one row of boxed scores (null where the term has
+ * no score of that type) per term id, flattened into one array, and
+ * the feature names in the order the termbank's score maps give
+ * them.  Terms are looked up in the termbank's dictionary without
+ * making Term instances.
+ *
+ * Several threads can use one table as long as nothing adds terms
+ * to the termbank meanwhile.
+ */
+public final class TermScoreTable {
+
+  private final TermDictionary dictionary;
+  private final String[] featureNames;
+  private final Number[] values;
+  private final int width;
+  private final int size;
+
+
+  public TermScoreTable(ScoreStore scores, List<ScoreType> scoreTypes) {
+    // the order of the keys of AbstractTermbank.getScoreMap(term)
+    Map<ScoreType, Integer> order = new HashMap<ScoreType, Integer>();
+    for (ScoreType type : scoreTypes) {
+      order.put(type, order.size());
+    }
+    ScoreType[] types = order.keySet().toArray(new ScoreType[order.size()]);
+
+    this.dictionary = scores.getDictionary();
+    this.size = scores.size();
+    this.width = types.length;
+    this.featureNames = new String[width];
+    for (int i = 0 ; i < width ; i++) {
+      featureNames[i] = types[i].toString();
+    }
+
+    this.values = new Number[size * width];
+    for (int i = 0 ; i < width ; i++) {
+      boolean isDouble = scores.isDouble(types[i]);
+      for (int id = 0 ; id < size ; id++) {
+        if (scores.hasScore(types[i], id)) {
+          values[id * width + i] = isDouble ? (Number) scores.getDouble(types[i], id)
+                  : (Number) scores.getInt(types[i], id);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * @return the id of the annotation's term, or -1 if the termbank
+   * does not have it
+   */
+  public int getTermId(Annotation annotation, Document document,
+          String languageFeature, String stringFeature) {
+    String termString = Term.getFeatureOrString(document, annotation, stringFeature);
+    String languageCode = Term.getLanguage(annotation, languageFeature);
+    int id = dictionary.getId(termString, languageCode, annotation.getType());
+    return (id < size) ? id : -1;
+  }
+
+
+  /**
+   * Put all the scores of the term (null for missing ones, or all
+   * null if id is -1) into the features.
+   */
+  public void copyScores(int id, FeatureMap features) {
+    for (int i = 0 ; i < width ; i++) {
+      features.put(featureNames[i], (id < 0) ? null : values[id * width + i]);
+    }
+  }
+
+}
@@ -29,6 +29,7 @@ import org.apache.commons.lang.WordUtils;
 public class Utilities implements ANNIEConstants {
 
   public static final String EXTENSION_CSV = "csv";
+  public static final String EXTENSION_SNAPSHOT = "trsnap";
 
   private static double log10of2;
   
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.apply;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import gate.Controller;
+import gate.Factory;
+import gate.ProcessingResource;
+import gate.test.GATEPluginTestCase;
+import gate.util.persistence.PersistenceManager;
+
+
+/**
+ * Load the TermRaider PRs saved in each of the plugin's applications.
+ * GappLoadingTest loads the whole applications, but that needs the
+ * other plugins they use; this only needs TermRaider.
+ */
+public class ApplicationsTest extends GATEPluginTestCase {
+
+  private static final String PR_START = "<gate.util.persistence.PRPersistence>";
+  private static final String PR_END = "</gate.util.persistence.PRPersistence>";
+
+
+  public void testEnglish() throws Exception {
+    checkApplication("termraider-eng.gapp", 5);
+  }
+
+  public void testMultilingual() throws Exception {
+    checkApplication("termraider-multilingual.gapp", 6);
+  }
+
+
+  private void checkApplication(String gapp, int expectedPRs) throws Exception {
+    String xml = read("/resources/applications/" + gapp);
+    List<String> prs = termRaiderPRs(xml);
+    assertEquals(gapp, expectedPRs, prs.size());
+
+    File file = File.createTempFile("termraider", ".gapp");
+    try {
+      Files.write(file.toPath(), wrap(prs).getBytes(StandardCharsets.UTF_8));
+      Controller controller = (Controller) PersistenceManager.loadObjectFromFile(file);
+      assertEquals(gapp, expectedPRs, controller.getPRs().size());
+      String script = xml.substring(xml.indexOf("<controlScript"), xml.indexOf("</controlScript>"));
+      for (ProcessingResource pr : controller.getPRs()) {
+        assertTrue(gapp + " " + pr.getName(), pr.getClass().getName().startsWith("gate.termraider."));
+        // the control script still runs the PR under its old name
+        assertTrue(gapp + " " + pr.getName(), script.contains(pr.getName() + "("));
+      }
+      Factory.deleteResource(controller);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+
+  /**
+   * @return the saved PRs whose resource type is in TermRaider
+   */
+  private static List<String> termRaiderPRs(String xml) {
+    List<String> prs = new ArrayList<String>();
+    int end = xml.indexOf(PR_END);
+    while (end >= 0) {
+      String pr = xml.substring(xml.lastIndexOf(PR_START, end), end + PR_END.length());
+      if (pr.contains("<resourceType>gate.termraider.")) {
+        prs.add(pr);
+      }
+      end = xml.indexOf(PR_END, end + PR_END.length());
+    }
+    return prs;
+  }
+
+
+  /**
+   * @return an application with no plugins to load, running the
+   * given saved PRs in a plain serial controller
+   */
+  private static String wrap(List<String> prs) {
+    StringBuilder xml = new StringBuilder();
+    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    xml.append("<gate.util.persistence.GateApplication>\n");
+    xml.append("<urlList class=\"gate.util.persistence.CollectionPersistence\">\n");
+    xml.append("<localList />\n");
+    xml.append("<collectionType>java.util.ArrayList</collectionType>\n");
+    xml.append("</urlList>\n");
+    xml.append("<application class=\"gate.util.persistence.ControllerPersistence\">\n");
+    xml.append("<prList class=\"gate.util.persistence.CollectionPersistence\">\n");
+    xml.append("<localList>\n");
+    for (String pr : prs) {
+      xml.append(pr).append('\n');
+    }
+    xml.append("</localList>\n");
+    xml.append("<collectionType>java.util.ArrayList</collectionType>\n");
+    xml.append("</prList>\n");
+    xml.append("<resourceType>gate.creole.SerialController</resourceType>\n");
+    xml.append("<resourceName>test</resourceName>\n");
+    xml.append("<initParams class=\"gate.util.persistence.MapPersistence\">\n");
+    xml.append("<mapType>gate.util.SimpleFeatureMapImpl</mapType>\n");
+    xml.append("<localMap />\n");
+    xml.append("</initParams>\n");
+    xml.append("<features class=\"gate.util.persistence.MapPersistence\">\n");
+    xml.append("<mapType>gate.util.SimpleFeatureMapImpl</mapType>\n");
+    xml.append("<localMap />\n");
+    xml.append("</features>\n");
+    xml.append("</application>\n");
+    xml.append("</gate.util.persistence.GateApplication>\n");
+    return xml.toString();
+  }
+
+
+  private static String read(String resource) throws Exception {
+    URL url = ApplicationsTest.class.getResource(resource);
+    assertNotNull(resource, url);
+    return new String(Files.readAllBytes(Paths.get(url.toURI())), StandardCharsets.UTF_8);
+  }
+
+}
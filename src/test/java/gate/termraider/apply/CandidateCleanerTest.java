@@ -0,0 +1,120 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.apply;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.LanguageAnalyser;
+import gate.test.GATEPluginTestCase;
+import gate.util.OffsetComparator;
+
+
+/**
+ * Check the CandidateCleaner against DeduplicateMultiWord.groovy on
+ * random, heavily overlapping annotations.
+ */
+public class CandidateCleanerTest extends GATEPluginTestCase {
+
+  private static final String[] TYPES = {"SingleWord", "MultiWord", "MultiWord", "Person",
+    "Date", "Number", "StrongStop", "Token"};
+
+
+  public void testSameAsScript() throws Exception {
+    Random random = new Random(23L);
+    LanguageAnalyser cleaner = (LanguageAnalyser) Factory.createResource(CandidateCleaner.class.getName());
+    int duplicates = 0, excluded = 0, stopped = 0;
+    for (int d = 0 ; d < 40 ; d++) {
+      TestDocuments documents = new TestDocuments(random, 100 + random.nextInt(200));
+      for (int i = 0 ; i < 150 ; i++) {
+        FeatureMap features = Factory.newFeatureMap();
+        features.put("k", i);
+        documents.add(documents.span(8), TYPES[random.nextInt(TYPES.length)], features);
+      }
+
+      int before = documents.original.getAnnotations().size();
+      script(documents.original);
+      duplicates += before - documents.original.getAnnotations().size();
+      excluded += documents.original.getAnnotations().get("deleted_NE_SingleWord").size();
+      stopped += documents.original.getAnnotations().get("deleted_SS_MultiWord").size();
+      cleaner.setDocument(documents.replacement);
+      cleaner.execute();
+      assertEquals(TestDocuments.dump(documents.original), TestDocuments.dump(documents.replacement));
+      documents.delete();
+    }
+    // every step of the script has something to do
+    assertTrue(duplicates > 0);
+    assertTrue(excluded > 0);
+    assertTrue(stopped > 0);
+    Factory.deleteResource(cleaner);
+  }
+
+
+  /**
+   * DeduplicateMultiWord.groovy, with inputAS bound to the document's
+   * default annotation set.
+   */
+  private static void script(Document document) throws Exception {
+    AnnotationSet inputAS = document.getAnnotations();
+
+    List<Annotation> mwList = new ArrayList<Annotation>(inputAS.get("MultiWord"));
+    Collections.sort(mwList, new OffsetComparator());
+
+    for (int i = 0 ; i < mwList.size() - 1 ; i++) {
+      Annotation mwi = mwList.get(i);
+      for (int j = i + 1 ; j < mwList.size() ; j++) {
+        Annotation mwj = mwList.get(j);
+        if (mwj.getStartNode().getOffset() > mwi.getStartNode().getOffset()) {
+          break;
+        }
+        if (mwj.getStartNode().getOffset().equals(mwi.getStartNode().getOffset())
+                && mwj.getEndNode().getOffset().equals(mwi.getEndNode().getOffset()) ) {
+          inputAS.remove(mwi);
+        }
+      }
+    }
+
+    Set<String> termTypes = new HashSet<String>(Arrays.asList("SingleWord", "MultiWord"));
+    Set<String> exclusionTypes = new HashSet<String>(Arrays.asList("Person", "Organization",
+            "Location", "Date", "Money", "Percent", "Address", "UserID", "Number"));
+
+    AnnotationSet candidates = inputAS.get(termTypes);
+    AnnotationSet excluded = inputAS.get(exclusionTypes);
+    AnnotationSet strongStop = inputAS.get("StrongStop");
+
+    for (Annotation candidate : candidates) {
+      if (! gate.Utils.getCoveringAnnotations(excluded, candidate).isEmpty()) {
+        FeatureMap newf = Factory.newFeatureMap();
+        newf.putAll(candidate.getFeatures());
+        String newType = "deleted_NE_" + candidate.getType();
+        inputAS.add(candidate.getStartNode(), candidate.getEndNode(), newType, newf);
+        inputAS.remove(candidate);
+      }
+      else if (! gate.Utils.getContainedAnnotations(strongStop, candidate).isEmpty()) {
+        FeatureMap newf = Factory.newFeatureMap();
+        newf.putAll(candidate.getFeatures());
+        String newType = "deleted_SS_" + candidate.getType();
+        inputAS.add(candidate.getStartNode(), candidate.getEndNode(), newType, newf);
+        inputAS.remove(candidate);
+      }
+    }
+  }
+
+}
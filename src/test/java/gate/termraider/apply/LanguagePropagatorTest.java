@@ -0,0 +1,122 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.apply;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.LanguageAnalyser;
+import gate.test.GATEPluginTestCase;
+
+
+/**
+ * Check the LanguagePropagator against ApplyLanguage.groovy, with the
+ * script's choice among several covering sentences replaced by the
+ * PR's rule, on random candidates covered by overlapping sentences.
+ */
+public class LanguagePropagatorTest extends GATEPluginTestCase {
+
+  private static final String[] TYPES = {"SingleWord", "MultiWord", "Entity", "VG", "Verb", "Token"};
+
+
+  /**
+   * Latest start first, then earliest end, then highest id.
+   */
+  private static final Comparator<Annotation> INNERMOST = new Comparator<Annotation>() {
+    public int compare(Annotation a0, Annotation a1) {
+      int result = a1.getStartNode().getOffset().compareTo(a0.getStartNode().getOffset());
+      if (result == 0) {
+        result = a0.getEndNode().getOffset().compareTo(a1.getEndNode().getOffset());
+      }
+      if (result == 0) {
+        result = a1.getId().compareTo(a0.getId());
+      }
+      return result;
+    }
+  };
+
+
+  public void testSameAsScript() throws Exception {
+    Random random = new Random(24L);
+    LanguageAnalyser propagator = (LanguageAnalyser) Factory.createResource(LanguagePropagator.class.getName());
+    int severalLanguages = 0;
+    for (int d = 0 ; d < 40 ; d++) {
+      TestDocuments documents = new TestDocuments(random, 100 + random.nextInt(200));
+      for (int i = 0 ; i < 150 ; i++) {
+        boolean sentence = random.nextInt(5) == 0;
+        FeatureMap features = Factory.newFeatureMap();
+        features.put("k", i);
+        if (random.nextInt(4) > 0) {
+          features.put("lang", sentence ? "l" + random.nextInt(5) : "orig");
+        }
+        String type = sentence ? "Sentence" : TYPES[random.nextInt(TYPES.length)];
+        documents.add(documents.span(sentence ? 60 : 8), type, features);
+      }
+
+      severalLanguages += script(documents.original);
+      propagator.setDocument(documents.replacement);
+      propagator.execute();
+      assertEquals(TestDocuments.dump(documents.original), TestDocuments.dump(documents.replacement));
+      documents.delete();
+    }
+    // make sure the choice of sentence matters
+    assertTrue(severalLanguages > 100);
+    Factory.deleteResource(propagator);
+  }
+
+
+  /**
+   * ApplyLanguage.groovy, with inputAS bound to the document's default
+   * annotation set, except that when several covering sentences have a
+   * language the innermost one wins, as documented in the PR.
+   * @return the number of candidates covered by more than one sentence
+   * with a language
+   */
+  private static int script(Document document) {
+    AnnotationSet inputAS = document.getAnnotations();
+    Set<String> termTypes = new HashSet<String>(Arrays.asList("Entity", "Verb", "VG",
+            "SingleWord", "MultiWord"));
+    int severalLanguages = 0;
+
+    AnnotationSet candidates = inputAS.get(termTypes);
+    for (Annotation candidate : candidates) {
+      AnnotationSet sentences = gate.Utils.getCoveringAnnotations(inputAS, candidate, "Sentence");
+      Annotation innermost = null;
+      int languages = 0;
+      if (sentences != null) {
+        for (Annotation sentence : sentences) {
+          if (sentence.getFeatures().containsKey("lang")) {
+            languages++;
+            if ( (innermost == null) || (INNERMOST.compare(sentence, innermost) < 0) ) {
+              innermost = sentence;
+            }
+          }
+        }
+      }
+      if (innermost != null) {
+        String language = innermost.getFeatures().get("lang").toString();
+        candidate.getFeatures().put("lang", language);
+      }
+      if (languages > 1) {
+        severalLanguages++;
+      }
+    }
+    return severalLanguages;
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.apply;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.LanguageAnalyser;
+import gate.test.GATEPluginTestCase;
+
+
+/**
+ * Check the ScoreAugmenter against the right-hand side of
+ * augmentation.jape on random, heavily overlapping candidates.  The
+ * two add the covering scores in different orders, so the augmented
+ * scores may differ by rounding.
+ */
+public class ScoreAugmenterTest extends GATEPluginTestCase {
+
+  private static final String[] HEADS = {"h0", "h1", "h2", ""};
+
+  private static final String[] TYPES = {"SingleWord", "MultiWord"};
+
+
+  public void testSameAsJape() throws Exception {
+    Random random = new Random(22L);
+    LanguageAnalyser augmenter = (LanguageAnalyser) Factory.createResource(ScoreAugmenter.class.getName());
+    int augmented = 0;
+    for (int d = 0 ; d < 40 ; d++) {
+      TestDocuments documents = new TestDocuments(random, 100 + random.nextInt(200));
+      for (int i = 0 ; i < 150 ; i++) {
+        FeatureMap features = Factory.newFeatureMap();
+        // the JAPE needs a head on every candidate
+        features.put("head", HEADS[random.nextInt(HEADS.length)]);
+        if (random.nextInt(8) > 0) {
+          features.put("tfIdf.raw", random.nextDouble() * 10.0);
+        }
+        int maxLength = random.nextBoolean() ? 6 : 40;
+        documents.add(documents.span(maxLength), TYPES[random.nextInt(TYPES.length)], features);
+      }
+
+      Map<Integer, Integer> added = new HashMap<Integer, Integer>();
+      augmented += jape(documents.original, added);
+      augmenter.setDocument(documents.replacement);
+      augmenter.execute();
+
+      for (Annotation expected : documents.original.getAnnotations()) {
+        Annotation actual = documents.replacement.getAnnotations().get(expected.getId());
+        double expectedScore = (Double) expected.getFeatures().remove("localAugTfIdf");
+        double actualScore = (Double) actual.getFeatures().remove("localAugTfIdf");
+        // one rounding for each covering score added
+        double tolerance = added.get(expected.getId()) * Math.ulp(expectedScore);
+        assertEquals(expected.toString(), expectedScore, actualScore, tolerance);
+      }
+      assertEquals(TestDocuments.dump(documents.original), TestDocuments.dump(documents.replacement));
+      documents.delete();
+    }
+    // make sure the test adds up several scores for many candidates
+    assertTrue(augmented > 1000);
+    Factory.deleteResource(augmenter);
+  }
+
+
+  /**
+   * The right-hand side of augmentation.jape, applied to each
+   * candidate in turn.
+   * @param added filled with the number of covering scores added to
+   * each candidate, by id
+   * @return the number of candidates with more than one covering score
+   */
+  private static int jape(Document document, Map<Integer, Integer> added) {
+    AnnotationSet inputAS = document.getAnnotations();
+    int augmented = 0;
+    for (Annotation inner : inputAS.get(new HashSet<String>(Arrays.asList(TYPES)))) {
+      Long start = inner.getStartNode().getOffset();
+      Long end = inner.getEndNode().getOffset();
+      String head = inner.getFeatures().get("head").toString();
+      long innerLength = end - start;
+
+      double score = 0.0F;
+      if (inner.getFeatures().containsKey("tfIdf.raw")) {
+        score = ((Double) inner.getFeatures().get("tfIdf.raw")).doubleValue();
+      }
+
+      AnnotationSet outers0 = inputAS.getCovering("SingleWord", start, end);
+      AnnotationSet outers1 = inputAS.getCovering("MultiWord", start, end);
+      Set<Annotation> outers = new HashSet<Annotation>();
+      outers.addAll(outers0);
+      outers.addAll(outers1);
+
+      int count = 0;
+      for (Annotation outer : outers) {
+        if ( (gate.Utils.lengthLong(outer) > innerLength) &&
+                outer.getFeatures().containsKey("head") &&
+                outer.getFeatures().get("head").equals(head) &&
+                outer.getFeatures().containsKey("tfIdf.raw")) {
+          score += ((Double) outer.getFeatures().get("tfIdf.raw")).doubleValue();
+          count++;
+        }
+      }
+
+      inner.getFeatures().put("localAugTfIdf", score);
+      added.put(inner.getId(), count);
+      if (count > 1) {
+        augmented++;
+      }
+    }
+    return augmented;
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.apply;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import gate.Annotation;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+
+
+/**
+ * Pairs of identical random documents, one for the original script
+ * and one for the PR that replaces it.
+ */
+class TestDocuments {
+
+  private final Random random;
+  private final int length;
+  private final List<long[]> spans;
+  final Document original, replacement;
+
+  TestDocuments(Random random, int length) throws Exception {
+    this.random = random;
+    this.length = length;
+    this.spans = new ArrayList<long[]>();
+    StringBuilder text = new StringBuilder();
+    for (int i = 0 ; i < length ; i++) {
+      text.append('x');
+    }
+    original = Factory.newDocument(text.toString());
+    replacement = Factory.newDocument(text.toString());
+  }
+
+
+  /**
+   * @return a random span of up to maxLength characters; some spans
+   * are empty and some repeat the start or the whole span of an
+   * earlier one
+   */
+  long[] span(int maxLength) {
+    long start, end;
+    if ( (! spans.isEmpty()) && (random.nextInt(3) == 0) ) {
+      long[] earlier = spans.get(random.nextInt(spans.size()));
+      start = earlier[0];
+      end = random.nextBoolean() ? earlier[1] : randomEnd(start, maxLength);
+    }
+    else {
+      start = random.nextInt(length);
+      end = randomEnd(start, maxLength);
+    }
+    long[] span = {start, end};
+    spans.add(span);
+    return span;
+  }
+
+
+  private long randomEnd(long start, int maxLength) {
+    if (random.nextInt(10) == 0) {
+      return start;
+    }
+    // implied else
+    return Math.min(length, start + 1 + random.nextInt(maxLength));
+  }
+
+
+  /**
+   * Add the same annotation, with the same id and a copy of the
+   * features, to both documents.
+   */
+  void add(long[] span, String type, FeatureMap features) throws Exception {
+    Integer id = original.getAnnotations().add(span[0], span[1], type, features);
+    FeatureMap copy = Factory.newFeatureMap();
+    copy.putAll(features);
+    replacement.getAnnotations().add(id, span[0], span[1], type, copy);
+  }
+
+
+  void delete() {
+    Factory.deleteResource(original);
+    Factory.deleteResource(replacement);
+  }
+
+
+  /**
+   * @return every annotation in the default set, in id order, with its
+   * type, offsets and features
+   */
+  static String dump(Document document) {
+    List<Annotation> annotations = new ArrayList<Annotation>(document.getAnnotations());
+    Collections.sort(annotations, new Comparator<Annotation>() {
+      public int compare(Annotation a0, Annotation a1) {
+        return a0.getId().compareTo(a1.getId());
+      }
+    });
+    StringBuilder dump = new StringBuilder();
+    for (Annotation annotation : annotations) {
+      dump.append(annotation.getId()).append(' ').append(annotation.getType()).append(' ');
+      dump.append(annotation.getStartNode().getOffset()).append('-');
+      dump.append(annotation.getEndNode().getOffset()).append(' ');
+      dump.append(annotation.getFeatures()).append('\n');
+    }
+    return dump.toString();
+  }
+
+}
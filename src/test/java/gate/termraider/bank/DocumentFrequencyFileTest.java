@@ -0,0 +1,185 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import gate.Corpus;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.test.GATEPluginTestCase;
+import gate.termraider.util.Term;
+
+
+/**
+ * Build document frequency files from shards of a corpus, merge them
+ * and compare the result with a bank built from the whole corpus.
+ */
+public class DocumentFrequencyFileTest extends GATEPluginTestCase {
+
+  private Corpus corpus;
+  private List<File> files;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    corpus = TestCorpora.makeCorpus(9L, 31);
+    files = new ArrayList<File>();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    for (File file : files) {
+      file.delete();
+    }
+    Factory.deleteResource(corpus);
+    super.tearDown();
+  }
+
+
+  public void testMergeShards() throws Exception {
+    DocumentFrequencyBank whole = (DocumentFrequencyBank) TestCorpora.createTermbank(
+            DocumentFrequencyBank.class, TestCorpora.parameters(DocumentFrequencyBank.class, corpus));
+    File wholeFile = tempFile(".dfq");
+    whole.saveDocumentFrequencies(wholeFile);
+
+    // the shards as DocumentFrequencyBatch builds them, one compressed
+    List<File> shards = new ArrayList<File>();
+    String[] suffixes = {".dfq", ".dfq.gz", ".dfq"};
+    for (int shard = 0 ; shard < suffixes.length ; shard++) {
+      int first = corpus.size() * shard / suffixes.length;
+      int end = corpus.size() * (shard + 1) / suffixes.length;
+      DocumentFrequencyBank bank = (DocumentFrequencyBank) TestCorpora.createTermbank(
+              DocumentFrequencyBank.class, Factory.newFeatureMap());
+      bank.addDocuments(new ArrayList<Document>(corpus.subList(first, end)), first);
+      File file = tempFile(suffixes[shard]);
+      bank.saveDocumentFrequencies(file);
+      shards.add(file);
+      Factory.deleteResource(bank);
+    }
+
+    // the merged file, compressed or not, reads back as the whole
+    for (String suffix : new String[] {".dfq", ".dfq.gz"}) {
+      File merged = tempFile(suffix);
+      DocumentFrequencyFile.Reader reader = DocumentFrequencyFile.open(shards);
+      try {
+        assertEquals(whole.getTerms().size(), DocumentFrequencyFile.write(reader, merged));
+      }
+      finally {
+        reader.close();
+      }
+      File copy = tempFile(".dfq");
+      reader = DocumentFrequencyFile.open(merged);
+      try {
+        DocumentFrequencyFile.write(reader, copy);
+      }
+      finally {
+        reader.close();
+      }
+      assertTrue(suffix, Arrays.equals(Files.readAllBytes(wholeFile.toPath()),
+              Files.readAllBytes(copy.toPath())));
+    }
+
+    // and so does a bank built from the shards
+    List<URL> urls = new ArrayList<URL>();
+    for (File shard : shards) {
+      urls.add(shard.toURI().toURL());
+    }
+    FeatureMap parameters = Factory.newFeatureMap();
+    parameters.put("inputFrequencyFiles", urls);
+    DocumentFrequencyBank merged = (DocumentFrequencyBank) TestCorpora.createTermbank(
+            DocumentFrequencyBank.class, parameters);
+    assertEquals(whole.getDocumentCount(), merged.getDocumentCount());
+    assertEquals(whole.getTerms(), merged.getTerms());
+    for (Term term : whole.getTerms()) {
+      assertEquals(term.toString(), whole.getFrequencyStrict(term), merged.getFrequencyStrict(term));
+    }
+    File mergedFile = tempFile(".dfq");
+    merged.saveDocumentFrequencies(mergedFile);
+    assertTrue(Arrays.equals(Files.readAllBytes(wholeFile.toPath()),
+            Files.readAllBytes(mergedFile.toPath())));
+
+    Factory.deleteResource(merged);
+    Factory.deleteResource(whole);
+  }
+
+
+  public void testOutOfOrder() throws Exception {
+    File file = tempFile(".dfq");
+    DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+    try {
+      output.write("TRDFRQ01".getBytes(StandardCharsets.US_ASCII));
+      output.writeInt(2);
+      writeTerm(output, "b");
+      writeTerm(output, "a");
+      output.writeByte(0);
+    }
+    finally {
+      output.close();
+    }
+
+    DocumentFrequencyFile.Reader reader = DocumentFrequencyFile.open(file);
+    try {
+      assertEquals(2, reader.getDocumentCount());
+      assertTrue(reader.next());
+      assertEquals("b", reader.getTerm().getTermString());
+      reader.next();
+      fail("The terms are not in order");
+    }
+    catch (IOException expected) {
+      assertTrue(expected.getMessage().contains("not in order"));
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+
+  public void testNotAFrequencyFile() throws Exception {
+    File file = tempFile(".dfq");
+    Files.write(file.toPath(), "not a frequency file".getBytes(StandardCharsets.US_ASCII));
+    try {
+      DocumentFrequencyFile.open(file).close();
+      fail("The file has no magic string");
+    }
+    catch (IOException expected) {
+      assertTrue(expected.getMessage().contains("not a document frequency file"));
+    }
+  }
+
+
+  private static void writeTerm(DataOutputStream output, String string) throws IOException {
+    output.writeByte(1);
+    for (String part : new String[] {string, "en", "SingleWord"}) {
+      byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+    output.writeInt(1);
+  }
+
+
+  private File tempFile(String suffix) throws IOException {
+    File file = File.createTempFile("frequencies", suffix);
+    files.add(file);
+    return file;
+  }
+
+}
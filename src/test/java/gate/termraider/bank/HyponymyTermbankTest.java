@@ -0,0 +1,119 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import gate.AnnotationSet;
+import gate.Corpus;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.test.GATEPluginTestCase;
+import gate.termraider.util.Term;
+
+
+/**
+ * Check the hyponyms found through the substring index against
+ * comparing every pair of terms.
+ */
+public class HyponymyTermbankTest extends GATEPluginTestCase {
+
+  // overlapping, repeated and nested substrings
+  private static final String[] STRINGS = {"a", "aa", "aaa", "aaaa", "ab", "ba", "bab", "abab",
+    "ababab", "b", "abc", "c", "cab", "abcab", "x", "été", "étés", "ét"};
+
+  private static final String[] HEADS = {"a", "b", "ab", "bab", "c", "é", ""};
+
+
+  public void testRandomTerms() throws Exception {
+    Random random = new Random(7L);
+    Corpus corpus = Factory.newCorpus("hyponyms");
+    for (int d = 0 ; d < 5 ; d++) {
+      corpus.add(makeDocument(random, 60));
+    }
+    HyponymyTermbank termbank = (HyponymyTermbank) TestCorpora.createTermbank(HyponymyTermbank.class,
+            TestCorpora.parameters(HyponymyTermbank.class, corpus));
+
+    Map<Term, Set<String>> heads = termbank.getTermHeads();
+    Map<Term, Set<String>> hyponyms = termbank.getTermHyponyms();
+    assertEquals(termbank.getTerms().size(), heads.size());
+    int nonEmpty = 0;
+    for (Term termI : heads.keySet()) {
+      Set<String> expected = new HashSet<String>();
+      for (Term termJ : heads.keySet()) {
+        if ( (! termJ.equals(termI))
+                && termJ.getTermString().contains(termI.getTermString())
+                && endsWithAny(heads.get(termI), heads.get(termJ)) ) {
+          expected.add(termJ.getTermString());
+        }
+      }
+      // every term has a set, even if it is empty
+      assertEquals(termI.toString(), expected, hyponyms.get(termI));
+      if (! expected.isEmpty()) {
+        nonEmpty++;
+      }
+    }
+    assertTrue(nonEmpty > 0);
+
+    Factory.deleteResource(termbank);
+    Factory.deleteResource(corpus);
+  }
+
+
+  private static boolean endsWithAny(Set<String> headsI, Set<String> headsJ) {
+    for (String headI : headsI) {
+      for (String headJ : headsJ) {
+        if (headI.endsWith(headJ)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Each candidate is one character of the text, with a random term
+   * string, head, language and type in its features.
+   */
+  private static Document makeDocument(Random random, int nbrCandidates) throws Exception {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0 ; i < nbrCandidates ; i++) {
+      text.append("x ");
+    }
+    Document document = Factory.newDocument(text.toString());
+    AnnotationSet annotations = document.getAnnotations();
+    Map<String, String> firstHeads = new HashMap<String, String>();
+    for (int i = 0 ; i < nbrCandidates ; i++) {
+      String string = STRINGS[random.nextInt(STRINGS.length)];
+      FeatureMap features = Factory.newFeatureMap();
+      features.put("canonical", string);
+      // most strings keep one head, but some get several
+      String head = firstHeads.get(string);
+      if ( (head == null) || (random.nextInt(4) == 0) ) {
+        head = HEADS[random.nextInt(HEADS.length)];
+        firstHeads.put(string, head);
+      }
+      features.put("head", head);
+      if (random.nextBoolean()) {
+        features.put("lang", random.nextBoolean() ? "en" : "de");
+      }
+      String type = random.nextInt(3) == 0 ? "MultiWord" : "SingleWord";
+      annotations.add(2L * i, 2L * i + 1, type, features);
+    }
+    return document;
+  }
+
+}
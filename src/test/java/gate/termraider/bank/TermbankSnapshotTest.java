@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.io.File;
+import java.util.Arrays;
+
+import gate.Corpus;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.test.GATEPluginTestCase;
+
+
+/**
+ * Save each type of termbank as a snapshot, load it back and check
+ * that the CSV output has not changed.
+ */
+public class TermbankSnapshotTest extends GATEPluginTestCase {
+
+  private Corpus corpus;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    corpus = TestCorpora.makeCorpus(6L, 40);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    Factory.deleteResource(corpus);
+    super.tearDown();
+  }
+
+
+  public void testDocumentFrequencyBank() throws Exception {
+    checkRoundTrip(DocumentFrequencyBank.class, null, false);
+  }
+
+  public void testSegmentDocumentFrequencyBank() throws Exception {
+    checkRoundTrip(DocumentFrequencyBank.class, "Sentence", false);
+  }
+
+  public void testTfIdfTermbank() throws Exception {
+    checkRoundTrip(TfIdfTermbank.class, null, false);
+  }
+
+  public void testAnnotationTermbank() throws Exception {
+    checkRoundTrip(AnnotationTermbank.class, null, false);
+  }
+
+  public void testHyponymyTermbank() throws Exception {
+    checkRoundTrip(HyponymyTermbank.class, null, false);
+  }
+
+  public void testOffHeapTermbanks() throws Exception {
+    for (Class<? extends AbstractTermbank> bankClass : Arrays.asList(DocumentFrequencyBank.class,
+            TfIdfTermbank.class, AnnotationTermbank.class, HyponymyTermbank.class)) {
+      checkRoundTrip(bankClass, null, true);
+    }
+  }
+
+
+  private void checkRoundTrip(Class<? extends AbstractTermbank> bankClass, String segmentType,
+          boolean offHeap) throws Exception {
+    FeatureMap parameters = TestCorpora.parameters(bankClass, corpus);
+    parameters.put("offHeapStorage", offHeap);
+    if (segmentType != null) {
+      parameters.put("segmentAnnotationType", segmentType);
+    }
+    AbstractTermbank original = TestCorpora.createTermbank(bankClass, parameters);
+    assertTrue(original.getTerms().size() > 0);
+    String expected = TestCorpora.csv(original, false);
+    String expectedDocuments = TestCorpora.csv(original, true);
+
+    File snapshot = File.createTempFile("termbank", ".trsnap");
+    try {
+      original.saveSnapshot(snapshot);
+      Factory.deleteResource(original);
+
+      parameters.remove("corpora");
+      parameters.put("snapshotURL", snapshot.toURI().toURL());
+      AbstractTermbank loaded = TestCorpora.createTermbank(bankClass, parameters);
+      assertEquals(bankClass.getSimpleName(), expected, TestCorpora.csv(loaded, false));
+      assertEquals(bankClass.getSimpleName(), expectedDocuments, TestCorpora.csv(loaded, true));
+      Factory.deleteResource(loaded);
+    }
+    finally {
+      snapshot.delete();
+    }
+  }
+
+}
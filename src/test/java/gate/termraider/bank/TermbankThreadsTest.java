@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gate.Corpus;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.test.GATEPluginTestCase;
+import gate.termraider.modes.MergingMode;
+import gate.termraider.util.ScoreStore;
+import gate.termraider.util.ScoreType;
+import gate.termraider.util.Term;
+
+
+/**
+ * Check that processing the documents in parallel gives exactly the
+ * same termbank as processing them one by one.
+ */
+public class TermbankThreadsTest extends GATEPluginTestCase {
+
+  private static final int[] THREADS = {2, 3, 7, 64};
+
+  private Corpus corpus;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    corpus = TestCorpora.makeCorpus(1L, 50);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    Factory.deleteResource(corpus);
+    super.tearDown();
+  }
+
+
+  public void testDocumentFrequencyBank() throws Exception {
+    checkThreads(DocumentFrequencyBank.class, null);
+  }
+
+  public void testSegmentDocumentFrequencyBank() throws Exception {
+    FeatureMap extra = Factory.newFeatureMap();
+    extra.put("segmentAnnotationType", "Sentence");
+    checkThreads(DocumentFrequencyBank.class, extra);
+  }
+
+  public void testTfIdfTermbank() throws Exception {
+    checkThreads(TfIdfTermbank.class, null);
+  }
+
+  public void testAnnotationTermbank() throws Exception {
+    for (MergingMode mode : MergingMode.values()) {
+      FeatureMap extra = Factory.newFeatureMap();
+      extra.put("mergingMode", mode);
+      if (mode == MergingMode.MEAN) {
+        // partial sums are added together, so allow for rounding
+        checkThreadsWithinUlp(AnnotationTermbank.class, extra);
+      }
+      else {
+        checkThreads(AnnotationTermbank.class, extra);
+      }
+    }
+  }
+
+  public void testHyponymyTermbank() throws Exception {
+    checkThreads(HyponymyTermbank.class, null);
+  }
+
+
+  private void checkThreads(Class<? extends AbstractTermbank> bankClass, FeatureMap extra) throws Exception {
+    AbstractTermbank sequential = create(bankClass, extra, 1);
+    List<Term> expectedIds = termsById(sequential);
+    String expected = TestCorpora.csv(sequential, false);
+    String expectedDocuments = TestCorpora.csv(sequential, true);
+    int expectedDocumentCount = sequential.getDocumentCount();
+    Factory.deleteResource(sequential);
+
+    for (int threads : THREADS) {
+      String message = bankClass.getSimpleName() + " " + extra + " with " + threads + " threads";
+      AbstractTermbank parallel = create(bankClass, extra, threads);
+      assertEquals(message, expectedIds, termsById(parallel));
+      assertEquals(message, expected, TestCorpora.csv(parallel, false));
+      assertEquals(message, expectedDocuments, TestCorpora.csv(parallel, true));
+      assertEquals(message, expectedDocumentCount, parallel.getDocumentCount());
+      Factory.deleteResource(parallel);
+    }
+  }
+
+
+  /**
+   * Check the term ids, documents and integer scores exactly, and the
+   * double scores to within one unit in the last place.
+   */
+  private void checkThreadsWithinUlp(Class<? extends AbstractTermbank> bankClass, FeatureMap extra)
+          throws Exception {
+    AbstractTermbank sequential = create(bankClass, extra, 1);
+    List<Term> expectedIds = termsById(sequential);
+
+    for (int threads : THREADS) {
+      String message = bankClass.getSimpleName() + " " + extra + " with " + threads + " threads";
+      AbstractTermbank parallel = create(bankClass, extra, threads);
+      assertEquals(message, expectedIds, termsById(parallel));
+      assertEquals(message, sequential.getDocumentCount(), parallel.getDocumentCount());
+      for (Term term : expectedIds) {
+        assertEquals(message, sequential.getDocumentsForTerm(term), parallel.getDocumentsForTerm(term));
+        for (ScoreType type : sequential.getScoreTypes()) {
+          Number expected = sequential.getScore(type, term);
+          Number actual = parallel.getScore(type, term);
+          if ( (expected instanceof Double) && (actual instanceof Double) ) {
+            double value = expected.doubleValue();
+            assertEquals(message + " " + term + " " + type, value, actual.doubleValue(), Math.ulp(value));
+          }
+          else {
+            assertEquals(message + " " + term + " " + type, expected, actual);
+          }
+        }
+      }
+      Factory.deleteResource(parallel);
+    }
+    Factory.deleteResource(sequential);
+  }
+
+
+  private AbstractTermbank create(Class<? extends AbstractTermbank> bankClass, FeatureMap extra,
+          int threads) throws Exception {
+    FeatureMap parameters = TestCorpora.parameters(bankClass, corpus);
+    if (extra != null) {
+      parameters.putAll(extra);
+    }
+    parameters.put("numberOfThreads", threads);
+    return TestCorpora.createTermbank(bankClass, parameters);
+  }
+
+
+  private static List<Term> termsById(AbstractTermbank termbank) {
+    ScoreStore scores = termbank.scores;
+    List<Term> terms = new ArrayList<Term>();
+    for (int id = 0 ; id < scores.size() ; id++) {
+      terms.add(scores.getTerm(id));
+    }
+    return terms;
+  }
+
+}
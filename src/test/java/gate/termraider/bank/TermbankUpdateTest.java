@@ -0,0 +1,96 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import gate.Corpus;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+import gate.test.GATEPluginTestCase;
+import gate.termraider.util.DocumentIdentifier;
+import gate.termraider.util.Term;
+
+
+/**
+ * Add and remove documents after a termbank has been built.
+ */
+public class TermbankUpdateTest extends GATEPluginTestCase {
+
+  private Corpus corpus;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    corpus = TestCorpora.makeCorpus(5L, 4);
+    // documents are told apart by their index as well as their name
+    for (Document document : corpus) {
+      document.setName("same");
+    }
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    Factory.deleteResource(corpus);
+    super.tearDown();
+  }
+
+
+  public void testAddAfterRemove() throws Exception {
+    FeatureMap parameters = TestCorpora.parameters(TfIdfTermbank.class, corpus);
+    parameters.put("keepDocumentTerms", true);
+    TfIdfTermbank termbank = (TfIdfTermbank) TestCorpora.createTermbank(TfIdfTermbank.class, parameters);
+    assertEquals(4, documents(termbank).size());
+
+    assertTrue(termbank.removeDocument(new DocumentIdentifier("same", 1)));
+    assertEquals(3, documents(termbank).size());
+
+    // the new document must not be numbered like one still there
+    Corpus more = TestCorpora.makeCorpus(6L, 1);
+    Document added = more.get(0);
+    added.setName("same");
+    termbank.addDocuments(Collections.singletonList(added));
+    Factory.deleteResource(more);
+    Set<DocumentIdentifier> documents = documents(termbank);
+    assertEquals(4, documents.size());
+    assertTrue(documents.contains(new DocumentIdentifier("same", 4)));
+    assertFalse(documents.contains(new DocumentIdentifier("same", 1)));
+    assertEquals(4, termbank.getDocumentCount());
+    Factory.deleteResource(termbank);
+  }
+
+
+  public void testRemoveWithoutDocumentTerms() throws Exception {
+    TfIdfTermbank termbank = (TfIdfTermbank) TestCorpora.createTermbank(TfIdfTermbank.class,
+            TestCorpora.parameters(TfIdfTermbank.class, corpus));
+    try {
+      termbank.removeDocument(new DocumentIdentifier("same", 0));
+      fail("The document's terms were not kept");
+    }
+    catch (IllegalStateException expected) {
+      // the termbank is unchanged
+    }
+    assertEquals(4, documents(termbank).size());
+    Factory.deleteResource(termbank);
+  }
+
+
+  private static Set<DocumentIdentifier> documents(AbstractTermbank termbank) {
+    Set<DocumentIdentifier> documents = new HashSet<DocumentIdentifier>();
+    for (Term term : termbank.getTerms()) {
+      documents.addAll(termbank.getDocumentsForTerm(term));
+    }
+    return documents;
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.bank;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+
+import gate.AnnotationSet;
+import gate.Corpus;
+import gate.Document;
+import gate.Factory;
+import gate.FeatureMap;
+
+
+/**
+ * Random corpora of term candidates (as the TermRaider applications
+ * produce them) and helpers for building termbanks from them.
+ */
+class TestCorpora {
+
+  private static final String[] LANGUAGES = {"en", "de", ""};
+
+  /**
+   * @return a corpus of documents with Sentence, SingleWord and
+   * MultiWord annotations carrying the canonical, head, lang and
+   * localAugTfIdf features
+   */
+  static Corpus makeCorpus(long seed, int nbrDocuments) throws Exception {
+    Random random = new Random(seed);
+    String[] vocabulary = new String[200];
+    for (int i = 0 ; i < vocabulary.length ; i++) {
+      StringBuilder word = new StringBuilder();
+      int length = 2 + random.nextInt(6);
+      for (int k = 0 ; k < length ; k++) {
+        word.append("abcdeé".charAt(random.nextInt(6)));
+      }
+      vocabulary[i] = word.toString();
+    }
+
+    Corpus corpus = Factory.newCorpus("test" + seed);
+    for (int d = 0 ; d < nbrDocuments ; d++) {
+      corpus.add(makeDocument(random, vocabulary, "doc" + d));
+    }
+    return corpus;
+  }
+
+
+  private static Document makeDocument(Random random, String[] vocabulary, String name) throws Exception {
+    StringBuilder text = new StringBuilder();
+    int nbrSentences = 3 + random.nextInt(5);
+    int[][] sentences = new int[nbrSentences][];
+    String[][] sentenceWords = new String[nbrSentences][];
+    int[][] wordStarts = new int[nbrSentences][];
+    for (int s = 0 ; s < nbrSentences ; s++) {
+      int nbrWords = 3 + random.nextInt(8);
+      sentenceWords[s] = new String[nbrWords];
+      wordStarts[s] = new int[nbrWords + 1];
+      int sentenceStart = text.length();
+      for (int w = 0 ; w < nbrWords ; w++) {
+        // a few words are much more frequent than the rest
+        String word = vocabulary[(int) (Math.pow(random.nextDouble(), 3) * vocabulary.length)];
+        sentenceWords[s][w] = word;
+        wordStarts[s][w] = text.length();
+        text.append(word).append(' ');
+      }
+      wordStarts[s][nbrWords] = text.length();
+      text.append(". ");
+      sentences[s] = new int[] {sentenceStart, text.length() - 1};
+    }
+
+    Document document = Factory.newDocument(text.toString());
+    document.setName(name);
+    AnnotationSet annotations = document.getAnnotations();
+    for (int s = 0 ; s < nbrSentences ; s++) {
+      FeatureMap sentenceFeatures = Factory.newFeatureMap();
+      sentenceFeatures.put("lang", LANGUAGES[random.nextInt(LANGUAGES.length)]);
+      annotations.add((long) sentences[s][0], (long) sentences[s][1], "Sentence", sentenceFeatures);
+
+      String[] words = sentenceWords[s];
+      for (int w = 0 ; w < words.length ; w++) {
+        long start = wordStarts[s][w];
+        long end = start + words[w].length();
+        annotations.add(start, end, "SingleWord", candidateFeatures(random, words[w], words[w]));
+        if ( (w + 1 < words.length) && (random.nextInt(3) == 0) ) {
+          String multiWord = words[w] + " " + words[w + 1];
+          long multiEnd = wordStarts[s][w + 1] + words[w + 1].length();
+          annotations.add(start, multiEnd, "MultiWord", candidateFeatures(random, multiWord, words[w + 1]));
+        }
+      }
+    }
+    return document;
+  }
+
+
+  private static FeatureMap candidateFeatures(Random random, String canonical, String head) {
+    FeatureMap features = Factory.newFeatureMap();
+    features.put("canonical", canonical);
+    features.put("head", head.substring(Math.max(0, head.length() - 3)));
+    features.put("localAugTfIdf", random.nextDouble() * 10.0);
+    if (random.nextInt(4) > 0) {
+      features.put("lang", LANGUAGES[random.nextInt(2)]);
+    }
+    return features;
+  }
+
+
+  /**
+   * @return the init parameters for building a termbank of the given
+   * class from the corpus
+   */
+  static FeatureMap parameters(Class<? extends AbstractTermbank> bankClass, Corpus corpus) {
+    FeatureMap parameters = Factory.newFeatureMap();
+    parameters.put("corpora", new HashSet<Corpus>(Collections.singleton(corpus)));
+    if (bankClass == HyponymyTermbank.class) {
+      parameters.put("inputHeadFeatures", Arrays.asList("head"));
+    }
+    return parameters;
+  }
+
+
+  static AbstractTermbank createTermbank(Class<? extends AbstractTermbank> bankClass,
+          FeatureMap parameters) throws Exception {
+    return (AbstractTermbank) Factory.createResource(bankClass.getName(), parameters);
+  }
+
+
+  /**
+   * @return the termbank's CSV output, with or without the documents
+   */
+  static String csv(AbstractTermbank termbank, boolean documentDetails) throws Exception {
+    File file = File.createTempFile("termbank", ".csv");
+    try {
+      termbank.saveAsCsv(file, documentDetails);
+      return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.output;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import gate.termraider.util.Term;
+import junit.framework.TestCase;
+
+
+/**
+ * Check the indexed CloudGenerator against the terms and sizes the
+ * generator used to find by scanning every term on each change.
+ */
+public class CloudGeneratorTest extends TestCase {
+
+  private static final String[] LANGUAGES = {"en", "de", "fr", ""};
+
+  private static final String[] TYPES = {"SingleWord", "MultiWord", "Entity"};
+
+  // markup to escape and whitespace to replace
+  private static final String[] WORDS = {"a", "b", "a b", "x\ty", "<c>", "d&e", "\"f\"", "été"};
+
+
+  public void testSameAsScanning() {
+    Random random = new Random(25L);
+    for (int round = 0 ; round < 200 ; round++) {
+      Map<Term, Number> scores = randomScores(random);
+      CloudGenerator generator = new CloudGenerator(scores);
+      ScanningCloud expected = new ScanningCloud(scores);
+
+      for (int step = 0 ; step < 30 ; step++) {
+        int change = random.nextInt(6);
+        if (change == 0) {
+          Set<String> languages = random.nextInt(4) == 0 ? null : randomSubset(random, LANGUAGES);
+          generator.setLanguages(copy(languages));
+          expected.languages = copy(languages);
+        }
+        else if (change == 1) {
+          Set<String> types = random.nextInt(4) == 0 ? null : randomSubset(random, TYPES);
+          generator.setTermTypes(copy(types));
+          expected.types = copy(types);
+        }
+        else if ( (change == 2) && (expected.languages != null) ) {
+          String language = LANGUAGES[random.nextInt(LANGUAGES.length)];
+          boolean show = random.nextBoolean();
+          generator.includeLanguage(language, show);
+          include(expected.languages, language, show);
+        }
+        else if ( (change == 3) && (expected.types != null) ) {
+          String type = TYPES[random.nextInt(TYPES.length)];
+          boolean show = random.nextBoolean();
+          generator.includeTermType(type, show);
+          include(expected.types, type, show);
+        }
+        else if (change == 4) {
+          // another score type
+          scores = randomScores(random);
+          generator.setTerms(scores);
+          expected.termNumbers = scores;
+        }
+
+        int percentage = random.nextInt(4) == 0 ? 100 * random.nextInt(2) : random.nextInt(101);
+        String html = generator.getHTML(percentage);
+        String message = "round " + round + " step " + step + " " + expected.languages + " "
+                + expected.types + " " + percentage + "%";
+        assertEquals(message, expected.getCloud(percentage), html.substring(html.indexOf("<div id='cloud'>")));
+      }
+    }
+  }
+
+
+  /**
+   * Doubles or integers, with ties, zero and negative scores, and
+   * some NaNs.
+   */
+  private static Map<Term, Number> randomScores(Random random) {
+    Map<Term, Number> scores = new HashMap<Term, Number>();
+    int n = random.nextInt(60);
+    boolean integers = random.nextInt(3) == 0;
+    for (int i = 0 ; i < n ; i++) {
+      String string = WORDS[random.nextInt(WORDS.length)] + random.nextInt(20);
+      Term term = new Term(string, LANGUAGES[random.nextInt(LANGUAGES.length)], TYPES[random.nextInt(TYPES.length)]);
+      if (integers) {
+        scores.put(term, random.nextInt(10) - 2);
+      }
+      else if (random.nextInt(15) == 0) {
+        scores.put(term, Double.NaN);
+      }
+      else {
+        scores.put(term, random.nextBoolean() ? random.nextInt(5) * 0.5 : random.nextDouble() * 20.0 - 5.0);
+      }
+    }
+    return scores;
+  }
+
+
+  private static Set<String> randomSubset(Random random, String[] values) {
+    Set<String> subset = new HashSet<String>();
+    for (String value : values) {
+      if (random.nextBoolean()) {
+        subset.add(value);
+      }
+    }
+    return subset;
+  }
+
+
+  private static Set<String> copy(Set<String> set) {
+    return (set == null) ? null : new HashSet<String>(set);
+  }
+
+
+  private static void include(Set<String> set, String value, boolean show) {
+    if (show) {
+      set.add(value);
+    }
+    else {
+      set.remove(value);
+    }
+  }
+
+
+  /**
+   * How CloudGenerator picked and sized the terms before they were
+   * indexed: the score range is found by scanning all the terms, and
+   * so are the terms to show.
+   */
+  private static class ScanningCloud {
+    Map<Term, ? extends Number> termNumbers;
+    Set<String> languages = null;
+    Set<String> types = null;
+
+    ScanningCloud(Map<Term, ? extends Number> termNumbers) {
+      this.termNumbers = termNumbers;
+    }
+
+    String getCloud(int percentage) {
+      double min = Double.MAX_VALUE;
+      double max = Double.MIN_VALUE;
+
+      for(Map.Entry<Term, ? extends Number> entry : termNumbers.entrySet()) {
+        if((languages == null || languages.contains(entry.getKey()
+          .getLanguageCode()) &&
+          (types == null || types.contains(entry.getKey().getType())))) {
+          max = Math.max(max, entry.getValue().doubleValue());
+          min = Math.min(min, entry.getValue().doubleValue());
+        }
+      }
+
+      double cutoff =
+        min + ((max - min) * ((100d - (double)percentage) / 100));
+
+      StringBuilder html = new StringBuilder();
+      html.append("<div id='cloud'>\n");
+
+      Set<Term> terms = new TreeSet<Term>(termNumbers.keySet());
+
+      double scaler = 10d / (max - cutoff);
+
+      for(Term term : terms) {
+        double score = termNumbers.get(term).doubleValue();
+        if(score >= cutoff &&
+          (languages == null || languages.contains(term.getLanguageCode()) &&
+            (types == null || types.contains(term.getType())))) {
+          int size = (int)((score - cutoff) * scaler);
+
+          html.append("\t\t<span class=\"term cloud").append(size).append("\">")
+            .append(StringEscapeUtils.escapeXml(term.getTermString()).replaceAll("\\s+", "&#160;"))
+            .append("</span>\n");
+        }
+      }
+
+      html.append("\t</div>\n</body>\n</html>");
+
+      return html.toString();
+    }
+  }
+
+}
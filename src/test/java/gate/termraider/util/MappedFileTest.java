@@ -0,0 +1,86 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+
+public class MappedFileTest extends TestCase {
+
+  // 16-byte chunks, so that plenty of values cross a boundary
+  private static final int CHUNK_BITS = 4;
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    file = File.createTempFile("termraider", ".snapshot");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    file.delete();
+  }
+
+
+  public void testValuesAcrossChunks() throws Exception {
+    // write each value at every offset in a chunk
+    SnapshotOutput output = new SnapshotOutput(file);
+    for (int shift = 0 ; shift < 16 ; shift++) {
+      for (int i = 0 ; i < shift ; i++) {
+        output.writeByte(i);
+      }
+      output.writeInt(0x89ABCDEF + shift);
+      output.writeLong(0x0123456789ABCDEFL * (shift + 1));
+      output.writeDouble(-1.5 / (shift + 1));
+      output.writeBoolean(shift % 2 == 0);
+      output.writeString("été " + shift);
+      output.writeString(null);
+    }
+    output.close();
+
+    MappedFile mapped = new MappedFile(file, CHUNK_BITS);
+    assertEquals(file.length(), mapped.length());
+    MappedFile.Input input = mapped.input(0L);
+    for (int shift = 0 ; shift < 16 ; shift++) {
+      for (int i = 0 ; i < shift ; i++) {
+        assertEquals(i, input.readByte());
+      }
+      assertEquals(0x89ABCDEF + shift, input.readInt());
+      assertEquals(0x0123456789ABCDEFL * (shift + 1), input.readLong());
+      assertEquals(-1.5 / (shift + 1), input.readDouble());
+      assertEquals(shift % 2 == 0, input.readBoolean());
+      assertEquals("été " + shift, input.readString());
+      assertNull(input.readString());
+    }
+    assertEquals(mapped.length(), input.position());
+  }
+
+
+  public void testIntAtEndOfChunk() throws Exception {
+    SnapshotOutput output = new SnapshotOutput(file);
+    for (int i = 0 ; i < 14 ; i++) {
+      output.writeByte(0);
+    }
+    // bytes 14-17 are split between the first two chunks
+    output.writeInt(-2);
+    output.writeByte(0);
+    output.writeByte(0);
+    output.close();
+
+    MappedFile mapped = new MappedFile(file, CHUNK_BITS);
+    assertEquals(-2, mapped.getInt(14L));
+    assertEquals(0xFFFF, mapped.getInt(12L));
+    assertEquals(0xFFFE0000, mapped.getInt(16L));
+  }
+
+}
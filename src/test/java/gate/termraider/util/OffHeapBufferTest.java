@@ -0,0 +1,55 @@
+/*
+ *  Copyright (c) 2008--2021, The University of Sheffield. See the file
+ *  COPYRIGHT.txt in the software or at http://gate.ac.uk/gate/COPYRIGHT.txt
+ *
+ *  This file is part of GATE (see http://gate.ac.uk/), and is free
+ *  software, licenced under the GNU Library General Public License,
+ *  Version 2, June 1991 (in the distribution as file licence.html,
+ *  and also available at http://gate.ac.uk/gate/licence.html).
+ */
+package gate.termraider.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+public class OffHeapBufferTest extends TestCase {
+
+  // one, two, three and four UTF-8 bytes, and unpaired surrogates
+  private static final char[] CHARS = {'a', 'z', '?', 'é', 'ß', '€', '中',
+    '\uD83D', '\uDE00', '\uDBFF', '\uDFFF'};
+
+
+  public void testUtf8Equals() {
+    Random random = new Random(14L);
+    List<String> strings = new ArrayList<String>();
+    strings.add("");
+    for (int i = 0 ; i < 400 ; i++) {
+      StringBuilder string = new StringBuilder();
+      int length = random.nextInt(6);
+      for (int k = 0 ; k < length ; k++) {
+        string.append(CHARS[random.nextInt(CHARS.length)]);
+      }
+      strings.add(string.toString());
+    }
+
+    OffHeapBuffer buffer = new OffHeapBuffer();
+    // store them across a chunk boundary
+    long position = (1L << 20) - 7;
+    for (String stored : strings) {
+      byte[] bytes = stored.getBytes(StandardCharsets.UTF_8);
+      buffer.ensureCapacity(position + bytes.length);
+      buffer.putBytes(position, bytes, 0, bytes.length);
+      for (String string : strings) {
+        boolean expected = Arrays.equals(bytes, string.getBytes(StandardCharsets.UTF_8));
+        assertEquals(stored + " / " + string, expected, buffer.utf8Equals(position, bytes.length, string));
+      }
+    }
+  }
+
+}